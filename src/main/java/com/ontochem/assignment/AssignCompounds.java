@@ -27,8 +27,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -71,6 +71,9 @@ public class AssignCompounds {
 	    private String  smilesFilename;
 	    private String  outFilename;
 	    private String  statisticsFilename;
+	    private String  screenReportFilename;
+	    private String  profileFilename;
+	    private String  snapshotFilename;
 	    private int     nThreads = 1;	//number of threads
 	    private int 	max = 0;    	//maximum number of evaluated smiles in a partition, for testing
 	    private int 	startI = 1;    	//start compound no, 0 if all from list to be processed
@@ -78,6 +81,11 @@ public class AssignCompounds {
 	    private boolean appendModuleInfoToFilename = false;
 	    private boolean writeToStandardOut = false;
 	    private boolean writeLeavesOnly = true;
+	    private boolean useQueryNetwork = false;
+	    private boolean useMappingSeeds = false;
+	    private int     maxCompiledAtoms = 0;	//largest query compiled to a primitive array matcher, 0 for none
+	    private boolean crossCheck = false;
+	    private boolean useBackboneIndex = false;
     
 	    // ---- getter/setter -----------------------------------------
 	    public String getModule() { return module; }
@@ -135,11 +143,51 @@ public class AssignCompounds {
 	    	statisticsFilename = trimWithEmptyAsNull( _statisticsFilename ); return this;
 	    }
     
+	    public String getScreenReportFilename() { return screenReportFilename; }
+	    public AssignmentParameters setScreenReportFilename( String _screenReportFilename ) {
+	    	screenReportFilename = trimWithEmptyAsNull( _screenReportFilename ); return this;
+	    }
+    
+	    public String getProfileFilename() { return profileFilename; }
+	    public AssignmentParameters setProfileFilename( String _profileFilename ) {
+	    	profileFilename = trimWithEmptyAsNull( _profileFilename ); return this;
+	    }
+    
+	    public String getSnapshotFilename() { return snapshotFilename; }
+	    public AssignmentParameters setSnapshotFilename( String _snapshotFilename ) {
+	    	snapshotFilename = trimWithEmptyAsNull( _snapshotFilename ); return this;
+	    }
+    
 	    public boolean isWriteToStandardOut() { return writeToStandardOut; }
 	    public AssignmentParameters setWriteToStandardOut( boolean _writeToStandardOut ) {
 	    	writeToStandardOut = _writeToStandardOut; return this;
 	    }
 	    
+	    public boolean isUseQueryNetwork() { return useQueryNetwork; }
+	    public AssignmentParameters setUseQueryNetwork( boolean _useQueryNetwork ) {
+	    	useQueryNetwork = _useQueryNetwork; return this;
+	    }
+	    
+	    public boolean isUseMappingSeeds() { return useMappingSeeds; }
+	    public AssignmentParameters setUseMappingSeeds( boolean _useMappingSeeds ) {
+	    	useMappingSeeds = _useMappingSeeds; return this;
+	    }
+	    
+	    public int getMaxCompiledAtoms() { return maxCompiledAtoms; }
+	    public AssignmentParameters setMaxCompiledAtoms( int _maxCompiledAtoms ) {
+	    	maxCompiledAtoms = _maxCompiledAtoms; return this;
+	    }
+	    
+	    public boolean isCrossCheck() { return crossCheck; }
+	    public AssignmentParameters setCrossCheck( boolean _crossCheck ) {
+	    	crossCheck = _crossCheck; return this;
+	    }
+	    
+	    public boolean isUseBackboneIndex() { return useBackboneIndex; }
+	    public AssignmentParameters setUseBackboneIndex( boolean _useBackboneIndex ) {
+	    	useBackboneIndex = _useBackboneIndex; return this;
+	    }
+	    
 	    public boolean isWriteLeavesOnly() { return writeLeavesOnly; }
 	    public AssignmentParameters setWriteLeavesOnly( boolean _writeLeavesOnly ) {
 	    	writeLeavesOnly = _writeLeavesOnly; return this;
@@ -202,50 +250,48 @@ public class AssignCompounds {
 		boolean verbose = false;
 
 	    /*
-	     * step 1: read chemistry ontology with smarts
+	     * step 1: read chemistry ontology with smarts, from its compiled snapshot if that is current
 	     */
-	    OntologyData ontData = OntologyLoader.readObo( _parameters.getOntologyFilename(), _parameters.getModule(), aromatic );
+	    final String                   ontologyKey					= _parameters.getProfileFilename() != null || _parameters.getSnapshotFilename() != null
+	    		? OntologyLoader.checksum( _parameters.getOntologyFilename() ) : null;
+	    final OntologySnapshot         snapshot						= _parameters.getSnapshotFilename() != null 
+	    		? OntologyLoader.openSnapshot( _parameters.getSnapshotFilename(), ontologyKey, _parameters.getModule(), aromatic ) : null;
+	    OntologyData ontData = snapshot != null 
+	    		? snapshot.ontologyData() : OntologyLoader.readObo( _parameters.getOntologyFilename(), _parameters.getModule(), aromatic );
 	    final Map<String,Set<String>>  ocidClass2childMap   		= ontData.getOcidChildMap();
 	    final Map<String,Set<String>>  ocidClass2parentMap  		= ontData.getOcidParentMap();
-	    final Map<String,List<String>> ocidClass2smartsList			= ontData.getOcidSmartsMap();
+	    final Map<String,ClassExpression> ocidClass2expressionMap	= ontData.getOcidExpressionMap();
 	    final Map<String,String>       ocidClass2nameMap  			= ontData.getOcidNameMap();
-	    final Map<String,Set<String>>  ocidClass2offspringsMap 	    = new HashMap<String,Set<String>>();
 	    final Map<String,Set<String>>  ocid2ancestorsMap 			= new HashMap<String,Set<String>>();
 	    
-	    if ( ocidClass2childMap.size() == 0 ) {
-			LOG.info("generating ocidClass2childMap as has_a relationship was not found in the OBO ...");
-			final List<String> idList1 = new ArrayList<>();
-	   		ocidClass2parentMap.forEach( ( key, value )->{ idList1.addAll( value ); } );
-			for ( String id : idList1 ) {
-				List<String> list1 = new ArrayList<>();
-				Iterator<String> itre = ocidClass2parentMap.keySet().iterator();
-				while ( itre.hasNext() ) {
-					String key = itre.next();
-					Set<String> parents = ocidClass2parentMap.get(key);
-					if( parents.contains( id ) ) list1.add( key );
-				}
-				HashSet<String> hsList1 = new HashSet<String>( list1 );
-				ocidClass2childMap.put( id, hsList1 );
-			}
-		}
+	    final QueryProfile             queryProfile					= _parameters.getProfileFilename() != null 
+	    		? QueryProfile.read( _parameters.getProfileFilename(), ontologyKey ) : null;
+	    if ( queryProfile != null ) {
+	    	// cheap and decisive queries first, results do not change
+	    	ocidClass2expressionMap.replaceAll( ( ocid, expression ) -> expression.ordered( queryProfile ) );
+	    }
+	    final QueryNetwork             queryNetwork					= _parameters.isUseQueryNetwork()
+	    		? QueryNetwork.compile( ocidClass2expressionMap, ocidClass2parentMap, ontData.getSmartsTable() ) : null;
+	    if ( _parameters.isUseMappingSeeds() && !ChemLib.CHEMLIB_CDK.equals( _parameters.getModule() ) ) {
+	    	LOG.info( "seeding from parent mappings is only available with the cdk module, ignored" );
+	    }
+	    final MappingSeeds             mappingSeeds					= _parameters.isUseMappingSeeds() && ChemLib.CHEMLIB_CDK.equals( _parameters.getModule() )
+	    		? MappingSeeds.compile( ocidClass2expressionMap, ocidClass2parentMap, ontData.getSmartsTable() ) : null;
+	    final CompiledQueryRegistry    queryRegistry				= CompiledQueryRegistry.compile( ontData.getSmartsTable(), queryNetwork, mappingSeeds,
+	    																						 _parameters.getModule(), _parameters.getMaxCompiledAtoms(),
+	    																						 _parameters.isCrossCheck() );
 	    
 	    /* 
-		 * step 2: identify root class id 
+		 * step 2: index the class hierarchy, check it for cycles and identify the root class id,
+		 * a snapshot was checked when it was compiled
 		 */
-	   	String rootId = null;
-	    int countRoots = 0;
-	    for ( String ocid : ocidClass2parentMap.keySet() ) {
-	    	if ( ocidClass2parentMap.get( ocid ).isEmpty() ) {
-	    		rootId = ocid;
-	    		LOG.info( "root: " + rootId );
-	    		countRoots++;
-	    	}
+	    final ClassHierarchy hierarchy = snapshot == null 
+	    		? ClassHierarchy.build( ocidClass2parentMap, ocidClass2childMap, ocidClass2nameMap ) : null;
+	    final String rootId = snapshot != null ? snapshot.rootId() : hierarchy.root();
+	    if ( snapshot == null && hierarchy.isChildMapDerived() ) {
+	    	LOG.info( "generating ocidClass2childMap as has_a relationship was not found in the OBO ..." );
+	    	ocidClass2childMap.putAll( hierarchy.childMap() );
 	    }
-	    if ( countRoots > 1 ) {
-	    	throw new IOException( "error - more than 1 root concept found in compound classes OBO: " + countRoots );
-	    } else if ( rootId == null ) {
-	    	throw new IOException( "no root concept found in compound classes OBO" );
-	    } 
 	    
 	    /*
 	     * step 3: read and load smiles
@@ -265,22 +311,10 @@ public class AssignCompounds {
 	    } else toProcessPartOcidList = toProcessOcidList;
 	    
 	    /*
-	     * step 4: calculate ancestorMap and offspringMap
+	     * step 4: calculate ancestor and offspring closures
 	     */
-	    final Map<String,Set<String>>  ocidClass2AllAncestorsMap  = new HashMap<String, Set<String>>();
-	    int ocidClassC = 0; //6723 classes
-	    for ( String ocidClass : ocidClass2nameMap.keySet() ) {
-	    	Set<String> ancestorSet = ancestors( ocidClass, ocidClass2parentMap );
-	    	ocidClass2AllAncestorsMap.put( ocidClass, ancestorSet );
-	    	//LOG.info( "class: " + ocidClass + " " + ancestorSet );
-	    }
-	    for ( String ocidClass : ocidClass2nameMap.keySet() ) {
-	    	ocidClassC++;
-	    	//LOG.info( "class: "+ocidClassC+" "+ocidClass+" "+ocidClass2nameMap.get(ocidClass) );
-	    	Set<String> offspringSet = offsprings( ocidClass, ocidClass2childMap );
-	    	ocidClass2offspringsMap.put( ocidClass, offspringSet );
-	    	//if ( offspringSet.size() > 0 ) LOG.info( ocidClassC +" "+ ocidClass + " offsprings: " + offspringSet.size() );
-	    }
+	    final ClosureIndex closureIndex = snapshot != null 
+	    		? snapshot.closureIndex() : hierarchy.closureIndex( _parameters.getnThreads() );
 	   
 	    /* 
 	     * step 5: follow hierarchy of class id top down and check assignment, write into ocidAssignmentMap
@@ -294,14 +328,32 @@ public class AssignCompounds {
 	    if ( _parameters.isAppendModuleInfoToFilename() ) 
 	    	outfile = outfile + "_" + _parameters.getModule()+"_"+startI+"-"+endI+".tsv";
 	    
-	    final Map<String,Set<String>> ocidAssignmentMap = 
-	    		AssignmentUtils.hierarchicalParallelClassAssignment( rootId, _parameters.getModule(), aromatic, verbose,
+	    // fewer parents to check per class, ancestors are unchanged. The query network, the mapping
+	    // seeds and the class maps keep the declared is_a relations, a snapshot holds the compiled graph.
+	    final OntologyGraph graph = snapshot != null
+	    		? snapshot.ontologyGraph( ocidClass2expressionMap )
+	    		: OntologyGraph.compile( rootId, OntologyLoader.reducedParentMap( ontData ), ocidClass2childMap, ocidClass2expressionMap );
+	    if ( snapshot == null && _parameters.getSnapshotFilename() != null ) {
+	    	// compiled for the next runs
+	    	OntologySnapshot.write( _parameters.getSnapshotFilename(), ontologyKey, _parameters.getModule(), aromatic, 
+	    							ontData, rootId, closureIndex, graph );
+	    }
+	    final BackboneIndex backboneIndex = _parameters.isUseBackboneIndex() 
+	    		? BackboneIndex.compile( graph, ontData.getOcidBackboneSmilesMap() ) : null;
+	    // backbone classes are found by structure, they are assigned like classes with SMARTS
+	    final Set<String> backboneClasses = _parameters.isUseBackboneIndex() 
+	    		? ontData.getOcidBackboneSmilesMap().keySet() : Collections.<String>emptySet();
+	    final LeafSelector leafSelector = LeafSelector.compile( closureIndex, graph, ontData, backboneClasses );
+	    
+	    final Map<String,LeafSelector.Selection> ocidAssignmentMap = 
+	    		AssignmentUtils.hierarchicalParallelClassAssignment( _parameters.getModule(), aromatic, verbose,
                                                               		 _parameters.getnThreads(), 
                                                               		 toProcessPartOcidList, 
                                                               		 toProcessOcid2SmilesMap, 
-                                                              		 ocidClass2smartsList, 
-                                                              		 ocidClass2parentMap,
-                                                              		 ocidClass2childMap 	);
+                                                              		 graph,
+                                                              		 queryRegistry,
+                                                              		 backboneIndex,
+                                                              		 leafSelector 	);
 	    
 	    try ( Writer out = new OutputStreamWriter(
                              new BufferedOutputStream(
@@ -309,64 +361,11 @@ public class AssignCompounds {
                              ),
                            StandardCharsets.UTF_8 ); ) {
 
-	    	Set<String> ocidClassSet1 = new HashSet<String>();
-	    	Set<String> ocidClassSet2 = new HashSet<String>();
-      
 		    for ( String ocid : ocidAssignmentMap.keySet() ) {
 		    	
-		    	ocidClassSet1.clear();
-		        ocidClassSet2.clear();
-		        
-		        final Set<String> ocidClassSet = ocidAssignmentMap.get( ocid );
-		        
-		        // check ancestors, omit concept if a parent is missing
-		        for ( String ocidClass : ocidClassSet ) {
-		        	
-		        	final Set<String> classAllAncestorsSet = ocidClass2AllAncestorsMap.get( ocidClass );
-  
-		        	// leave out if a concept has no parents
-		        	if ( ocidClass2parentMap.get( ocidClass ).isEmpty() ) continue;
-  
-		        	// leave out if a ancestor concept is missing
-		        	//final boolean missingParent = classAllAncestorsSet.stream()
-                    //                         .anyMatch( ancestor -> ! ocidClassSet.contains( ancestor ) );
-		        	boolean missingParent = false;
-					for ( String ancestor : classAllAncestorsSet ) {
-						if ( !ocidClassSet.contains( ancestor ) ) {
-							//System.out.println( ocidClass+" missing parent: "+ancestor);
-							missingParent = true;
-							continue;
-						}
-	    			}
-					
-		        	if ( missingParent || ( ocidClass2smartsList.get( ocidClass ).isEmpty() ) ) {
-		        		continue;
-		        	} else {
-		        		ocidClassSet1.add( ocidClass );
-		        	}
-		        }
-		        
-		        // check for children present, omit concept if valid child with smarts has been found
-		        for ( String ocidClass : ocidClassSet1 ) {
-		        	//System.out.println( ocid + " assigned to 1: "+ocidClass );
-		        	boolean validChild = false;
-		        	final Set<String> classAllOffspringsSet = ocidClass2offspringsMap.get( ocidClass );
-		  
-		        	// leave out if offspring with smarts is present, one is enough
-		        	if ( classAllOffspringsSet != null ) {
-		        		for ( String offspring : classAllOffspringsSet ) {
-		        			if ( ocidClassSet1.contains( offspring ) && ocidClass2smartsList.containsKey( offspring ) ) {
-		        				validChild = true;
-		        				break;
-		        			}
-		        		}
-		        	}
-		        	if ( validChild ) {
-		        		continue;
-		        	} else {
-		        		ocidClassSet2.add( ocidClass );
-		        	}
-		        }
+		        // valid classes have all ancestors assigned, leaves have no valid offspring
+		        final Set<String> ocidClassSet1 = ocidAssignmentMap.get( ocid ).getClasses();
+		        final Set<String> ocidClassSet2 = ocidAssignmentMap.get( ocid ).getLeaves();
 		        
 		        if ( _parameters.isWriteToStandardOut() ) {
 		        	System.out.print( toProcessOcid2SmilesMap.get( ocid )+ "\t" + ocid );
@@ -399,8 +398,6 @@ public class AssignCompounds {
 		        out.write( "\n" );
 		        System.out.print("\n" );
 		        ocid2ancestorsMap.put( ocid, ocidClassSet1 );
-		        ocidClassSet1 = new HashSet<String>();
-		        ocidClassSet2 = new HashSet<String>();
 		    }  
 		    
 		    if ( _parameters.getStatisticsFilename() != null ) {
@@ -429,6 +426,20 @@ public class AssignCompounds {
 	    	
 		    } else LOG.info( "no statistics file written.");
 	    }
+	    
+	    if ( _parameters.isCrossCheck() ) {
+	    	final long[] crossCheck = queryRegistry.crossCheckStatistics();
+	    	LOG.info( "cross-check of compiled matchers: " + crossCheck[ 0 ] + " searches, " + crossCheck[ 1 ] + " mismatches" );
+	    }
+	    
+	    if ( _parameters.getProfileFilename() != null ) {
+	    	QueryProfile.write( _parameters.getProfileFilename(), ontologyKey, ontData.getSmartsTable(), queryRegistry, queryProfile );
+	    }
+	    
+	    if ( _parameters.getScreenReportFilename() != null ) {
+	    	LOG.info( "screen report file name: " + _parameters.getScreenReportFilename() );
+	    	writeScreenReport( _parameters.getScreenReportFilename(), ocidClass2expressionMap, ocidClass2nameMap, queryRegistry );
+	    }
 	    long duration = System.nanoTime() - startTime;
     
 	    LOG.info( "Elapsed time (s): " + TimeUnit.NANOSECONDS.toSeconds( duration ) );
@@ -437,74 +448,56 @@ public class AssignCompounds {
 	// ------------------------------------------------------------------------
 	
 	/**
-	 * Get all ancestor IDs for provided compound class concept id.
+	 * Writes per class how many searches of its SMARTS were screened out before the
+	 * atom by atom search, see {@link CompiledQuery#passesScreens(PreparedMolecule)}.
+	 * A SMARTS shared by several classes is counted for each of them.
 	 * 
-	 * @param _classId
-	 * @param _parentMap
+	 * @param _filename
+	 * @param _ocidClass2expressionMap
+	 * @param _ocidClass2nameMap
+	 * @param _queryRegistry
 	 * 
-	 * @return
+	 * @throws IOException
 	 */
-	private static Set<String> ancestors( String _classId, Map<String,Set<String>> _parentMap ) {
-		
-		final Set<String> ancestorList = new HashSet<>();
+	private static void writeScreenReport( String _filename, 
+										   Map<String,ClassExpression> _ocidClass2expressionMap,
+										   Map<String,String> _ocidClass2nameMap,
+										   CompiledQueryRegistry _queryRegistry ) throws IOException {
 		
-		Set<String> idList = Collections.singleton( _classId );
-		
-		while ( ! idList.isEmpty() ) {
-	    final Set<String> newIdList = new HashSet<>();  //list of all ids for one hierarchy level
-			for ( String id : idList ) {
-			  final Set<String> parentList = _parentMap.get( id );
-				if ( ( parentList != null ) && ( ! parentList.isEmpty() ) ) {
-				  newIdList.addAll( parentList );
-				}
-			}
-			idList = newIdList;
-			ancestorList.addAll( newIdList ); //list of all ids for down of classId
-		}
-		return ancestorList;
-	}
-	
-	// ------------------------------------------------------------------------
-	
-	/**
-	 * Returns all descendants of provided compound class concept.
-	 * 
-	 * @param _classId
-	 * @param _childMap
-	 * 
-	 * @return
-	 */
-	private static Set<String> offsprings( String _classId, Map<String,Set<String>> _childMap ){
-		
-		Set<String> idList 			= new HashSet<String>();
-		Set<String> childList  		= new HashSet<String>();
-		Set<String> offspringList	= new HashSet<String>();
-		Set<String> parsedList		= new HashSet<String>();
-		
-		idList.add( _classId );
-		//System.out.println("ocid: "+_classId);
-		String flag = "toContinue";
-		
-		while ( flag.equals( "toContinue" ) ) {
-			HashSet<String> newIdList = new HashSet<String>(); 	//list of all ids for one hierarchy level
-			flag = "Stop" ;
-			for ( String id : idList ) {
-				if ( parsedList.contains( id ) ) continue;
-				parsedList.add(id);
-				childList = _childMap.get( id );
-				if ( childList != null ) {
-					newIdList.addAll( childList );
-					flag = new String("toContinue");
+		try ( Writer out = new OutputStreamWriter(
+                             new BufferedOutputStream(
+                               new FileOutputStream( new File( _filename ) ) 
+                             ), StandardCharsets.UTF_8 ); ) {
+			
+			out.append( "class\tname\tsearches\tscreened by features\tscreened by paths\tscreen-out rate\n" );
+			long totalSearches = 0;
+			long totalScreened = 0;
+			for ( Map.Entry<String,ClassExpression> entry : _ocidClass2expressionMap.entrySet() ) {
+				final Set<String> smartsSet = new HashSet<>();
+				entry.getValue().collectSmarts( smartsSet );
+				long nSearches           = 0;
+				long nSignatureScreened  = 0;
+				long nPathScreened       = 0;
+				for ( String smarts : smartsSet ) {
+					final long[] statistics = _queryRegistry.get( smarts ).screenStatistics();
+					nSearches          += statistics[ 0 ];
+					nSignatureScreened += statistics[ 1 ];
+					nPathScreened      += statistics[ 2 ];
 				}
+				if ( nSearches == 0 ) continue;
+				totalSearches += nSearches;
+				totalScreened += nSignatureScreened + nPathScreened;
+				out.append( entry.getKey() ).append( "\t" ).append( _ocidClass2nameMap.get( entry.getKey() ) )
+				   .append( "\t" ).append( String.valueOf( nSearches ) )
+				   .append( "\t" ).append( String.valueOf( nSignatureScreened ) )
+				   .append( "\t" ).append( String.valueOf( nPathScreened ) )
+				   .append( "\t" ).append( String.format( Locale.ROOT, "%.3f", ( nSignatureScreened + nPathScreened ) / (double) nSearches ) )
+				   .append( "\n" );
 			}
-			idList = newIdList;
-			offspringList.addAll( newIdList ); //list of all ids for down of classId
+			LOG.info( "screened out " + totalScreened + " of " + totalSearches + " class searches" );
 		}
-		//System.out.println("\t"+idList.size()+" childList: "+offspringList);
-		return offspringList;
 	}
 	
-	
 	// ==== command line usage ================================================
 	// ------------------------------------------------------------------------
 	
@@ -526,6 +519,8 @@ public class AssignCompounds {
                         "                            Cdk\n" +
                         "                            Ambit\n" +
                         "                            ChemAxon\n" +
+                        "                            Vf2 (primitive array matcher, falls back to Ambit)\n" +
+                        "                            Ocl (OpenChemLib for idcodes of the backbones ontology, SMARTS with Ambit)\n" +
                         "   -c    --obo          FILENAME\n" +
                         "                          name of OBO file with chemical classes\n" +
                         "   -s    --smiles-id    FILENAME\n" +
@@ -537,6 +532,18 @@ public class AssignCompounds {
                         "                          parents - creates output with assigned parent classes\n" + 
                         "   -sta  --statistics   FILENAME\n" +
                         "                          creates output with all assigned compounds to classes\n" + 
+                        "   -scr  --screen-report FILENAME\n" +
+                        "                          creates output with the screen-out rate of the SMARTS of each class\n" + 
+                        "   -prof --profile      FILENAME\n" +
+                        "                          query statistics profile, read to order evaluation and updated after the run\n" + 
+                        "   -snap --snapshot     FILENAME\n" +
+                        "                          compiled ontology, used if compiled from the current OBO and otherwise written\n" + 
+                        "   -qn   --query-network  match shared cores of sibling class SMARTS first\n" +
+                        "   -seed --seed-mappings  seed child SMARTS with the atom mappings of parent SMARTS, cdk only\n" +
+                        "   -cq   --compile-queries MAXATOMS\n" +
+                        "                          search SMARTS of up to MAXATOMS atoms with the VF2 matcher\n" +
+                        "   -xc   --cross-check    search VF2 matched SMARTS also with Ambit and report mismatches\n" +
+                        "   -bb   --backbones      find classes without SMARTS by the canonical SMILES of the compound ring systems\n" +
                         "   -ter  --terminal       write also to standard out\n" +
                         "   -app  --append-module  append module name to output-file\n" +
                         "   -h    --help           print this help and exit\n" 
@@ -589,6 +596,31 @@ public class AssignCompounds {
 				}
 			} else if ( "-sta".equals( arg ) || "--statistics".equals( arg ) ) {
 				parameters.setStatisticsFilename( nextArg );
+			} else if ( "-scr".equals( arg ) || "--screen-report".equals( arg ) ) {
+				parameters.setScreenReportFilename( nextArg );
+			} else if ( "-prof".equals( arg ) || "--profile".equals( arg ) ) {
+				parameters.setProfileFilename( nextArg );
+			} else if ( "-snap".equals( arg ) || "--snapshot".equals( arg ) ) {
+				parameters.setSnapshotFilename( nextArg );
+			} else if ( "-qn".equals( arg ) || "--query-network".equals( arg ) ) {
+				parameters.setUseQueryNetwork( true );
+				argIdx = argIdx - 1;
+			} else if ( "-seed".equals( arg ) || "--seed-mappings".equals( arg ) ) {
+				parameters.setUseMappingSeeds( true );
+				argIdx = argIdx - 1;
+			} else if ( "-cq".equals( arg ) || "--compile-queries".equals( arg ) ) {
+		        try {
+		        	parameters.setMaxCompiledAtoms( Integer.parseInt( nextArg ) );
+		        } catch ( NumberFormatException nfe ) {
+		        	System.err.println( "Atom count is not an integer: '" + nextArg + "'" );
+		        	usage( 1 );
+		        }
+			} else if ( "-xc".equals( arg ) || "--cross-check".equals( arg ) ) {
+				parameters.setCrossCheck( true );
+				argIdx = argIdx - 1;
+			} else if ( "-bb".equals( arg ) || "--backbones".equals( arg ) ) {
+				parameters.setUseBackboneIndex( true );
+				argIdx = argIdx - 1;
 			} else if ( "-ter".equals( arg ) || "--terminal".equals( arg ) ) {
 				parameters.setWriteToStandardOut( true );
 				argIdx = argIdx - 1;
@@ -1,14 +1,15 @@
 package com.ontochem.assignment;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntPredicate;
 import java.util.logging.Logger;
 
 import com.google.common.base.Splitter;
@@ -24,6 +25,11 @@ import com.google.common.collect.Lists;
  *       <li>initial version</li>
  *     </ul>
  *   </li>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>valid classes and leaves are selected by the worker threads, see {@link LeafSelector}</li>
+ *     </ul>
+ *   </li>
  * </ul>
  * 
  * @author Shadrack Jabes., B
@@ -32,32 +38,46 @@ import com.google.common.collect.Lists;
 public class AssignmentUtils {
 	
 	private final static Logger LOG = Logger.getLogger( AssignmentUtils.class.getName() );
+	
+	/** class status during the hierarchy walk of one molecule */
+	private final static byte UNKNOWN = 0;
+	private final static byte PASS    = 1;
+	private final static byte FAIL    = 2;
   
 	/**
-	 * @param rootClassId
 	 * @param _module
 	 * @param _nThreads
 	 * @param _ocidListIn
 	 * @param _ocid2smilesMap
-	 * @param _ocidClass2smartsList
-	 * @param _ocidClass2parentMap
-	 * @param _ocidClass2childMap
+	 * @param _graph          compiled ontology, see {@link OntologyGraph}
+	 * @param _queryRegistry  all class SMARTS compiled at ontology load
+	 * @param _backboneIndex  backbone classes found by lookup instead of the walk, 
+	 *                        <code>null</code> to walk all classes
+	 * @param _leafSelector   selects the reported classes from the classes that passed
 	 * 
-	 * @return
+	 * @return  valid classes and leaves of every compound
 	 * 
 	 * @throws IOException
 	 */
-	public final static Map<String,Set<String>> 
-	hierarchicalParallelClassAssignment( String rootClassId, String _module, boolean _aromatic, boolean _verbose,
+	public final static Map<String,LeafSelector.Selection> 
+	hierarchicalParallelClassAssignment( String _module, boolean _aromatic, boolean _verbose,
 											int _nThreads, 
 											List<String> _ocidListIn, 
 											Map<String,String> _ocid2smilesMap, 
-											Map<String,List<String>> _ocidClass2smartsList, 
-											Map<String,Set<String>> _ocidClass2parentMap,
-											Map<String,Set<String>> _ocidClass2childMap ) throws IOException {
+											OntologyGraph _graph,
+											CompiledQueryRegistry _queryRegistry,
+											BackboneIndex _backboneIndex,
+											LeafSelector _leafSelector ) throws IOException {
     	
-		final Map<String,Set<String>> ocid2classMap = new ConcurrentHashMap<>();
-		final ForkJoinPool            forkJoinPool  = new ForkJoinPool( _nThreads );
+		final Map<String,LeafSelector.Selection> ocid2classMap = new ConcurrentHashMap<>();
+		final ForkJoinPool               forkJoinPool  = new ForkJoinPool( _nThreads );
+		final ThreadLocal<TraversalState> states       = ThreadLocal.withInitial( () -> new TraversalState( _graph.size(), _queryRegistry.idCount(), _leafSelector ) );
+		final LongAdder                  nVisited      = new LongAdder();
+		final LongAdder                  nEvaluated    = new LongAdder();
+		final LongAdder                  nPruned       = new LongAdder();
+		final LongAdder                  nScreened     = new LongAdder();
+		final LongAdder                  nReused       = new LongAdder();
+		final LongAdder                  nBackbones    = new LongAdder();
 		
 		try {
 			
@@ -66,60 +86,31 @@ public class AssignmentUtils {
 				_ocidListIn.parallelStream().forEach( ocid -> {
 					
 					String smiles = _ocid2smilesMap.get( ocid );
-					Set<String> classIdList = new HashSet();
-					classIdList.add( rootClassId );
+					PreparedMolecule molecule = PreparedMolecule.parse( smiles, _aromatic );
+					final TraversalState state = states.get();
+					state.clear();
+					MatchContext context = new MatchContext( molecule, _queryRegistry, _module, _verbose, state.memo );
+					if ( _backboneIndex != null ) nBackbones.add( _backboneIndex.seed( molecule, state.candidates ) );
+					walk( _graph, state, moleculeFeatures( molecule ), 
+						  classIdx -> assign( _graph.expression( classIdx ), context, _module ) );
+					nVisited.add( state.visited );
+					nEvaluated.add( state.evaluated );
+					nPruned.add( state.skipped );
+					nScreened.add( state.screened );
+					nReused.add( state.memo.takeReused() );
 					
-					Set<String> childrenSet = new HashSet<String>();
-					Set<String> assignedSet = new HashSet<>();
-					
-					int count    = 0;
-					int countAss = 0;
-					int countAll = 0;
-					
-					while ( !classIdList.isEmpty() ) {
-					  
-						final Set<String> newIdList = new HashSet<String>(); 	//list of all ids for one hierarchy level
-						
-						for ( String classId : classIdList ) {
-							
-							if ( assignedSet.contains( classId ) ) continue;
-							
-							boolean parentNotAssigned = false;
-							Set<String> classParents = _ocidClass2parentMap.get( classId );
-							if ( classParents != null ) {
-								for ( String parent : classParents ) {
-									if ( parentNotAssigned ) break;
-									if ( !assignedSet.contains( parent ) ) parentNotAssigned = true;
-								}
-							}
-							if ( parentNotAssigned ) continue;
-							
-							List<String> smartsList = _ocidClass2smartsList.get( classId );
-							if ( ( smartsList != null ) && !smartsList.isEmpty() ) {
-								count++;
-								if ( assign( smiles, smartsList, _module, _aromatic, _verbose ) ) {
-									countAss++;
-									assignedSet.add( classId );
-									countAll++;
-								} 
-							} else {
-								if ( !_ocidClass2childMap.isEmpty() ) assignedSet.add( classId );
-								countAll++;
-							}
-							
-							childrenSet = _ocidClass2childMap.get( classId );
-							if ( ( childrenSet != null ) && !childrenSet.isEmpty() ){
-								newIdList.addAll( childrenSet );
-							}
-						}
-						classIdList = newIdList;
-					}
-					ocid2classMap.put( ocid, assignedSet );
-					if ( _verbose ) System.out.println( ocid + " " + assignedSet.size() );
+					final LeafSelector.Selection selection = select( _leafSelector, state );
+					ocid2classMap.put( ocid, selection );
+					if ( _verbose ) System.out.println( ocid + " " + selection.getClasses().size() );
 				});
 			}).get();
 			
 			forkJoinPool.shutdown();
+			LOG.info( "hierarchy walk of " + _ocidListIn.size() + " compounds: " + nVisited.sum() + " classes visited, "
+					+ nEvaluated.sum() + " class SMARTS evaluated, " + nScreened.sum() + " classes failed by required features, "
+					+ nPruned.sum() + " candidate classes skipped below failed classes, "
+					+ nReused.sum() + " query results reused"
+					+ ( _backboneIndex != null ? ", " + nBackbones.sum() + " backbone classes found by lookup" : "" ) );
 		
 		} catch ( Exception e ) {
 			throw new IOException( "Error in parallel hierarchical class assignment: " + e.getMessage(), e );
@@ -127,17 +118,159 @@ public class AssignmentUtils {
 		
 		return ocid2classMap;
   }
+	
+	/**
+	 * Decides the classes of one molecule. Classes are indexed in topological order of is_a,
+	 * all parents of a class are decided before the class itself is visited. Only the root,
+	 * classes with SMARTS and candidates seeded before the walk are visited, over evaluation
+	 * edges.
+	 * 
+	 * @param _graph      compiled ontology
+	 * @param _state      cleared state, candidates may be seeded, see {@link BackboneIndex#seed}
+	 * @param _features   elements and features of the molecule, see {@link FeatureSignature#mask()}
+	 * @param _evaluator  evaluates the SMARTS of a class by its index
+	 */
+	static void walk( OntologyGraph _graph, TraversalState _state, long _features, IntPredicate _evaluator ) {
+		
+		final long[] candidates = _state.candidates;
+		final long[] pruned     = _state.pruned;
+		final byte[] status     = _state.status;
+		Bits.set( candidates, _graph.root() );
+		
+		for ( int classIdx = Bits.nextSetBit( candidates, 0 ); classIdx >= 0; 
+				  classIdx = Bits.nextSetBit( candidates, classIdx + 1 ) ) {
+			
+			if ( status[ classIdx ] != UNKNOWN ) continue;
+			
+			_state.visited++;
+			byte parentStatus = PASS;
+			for ( int edge = _graph.evalParentStart( classIdx ); edge < _graph.evalParentEnd( classIdx ); edge++ ) {
+				byte status1 = status[ _graph.evalParent( edge ) ];
+				if ( status1 == FAIL ) {
+					parentStatus = FAIL;
+					break;
+				}
+				if ( status1 == UNKNOWN ) parentStatus = UNKNOWN;
+			}
+			if ( parentStatus == FAIL ) {
+				status[ classIdx ] = FAIL;
+				continue;
+			}
+			// a parent not reached, the class can not be assigned
+			if ( parentStatus == UNKNOWN ) continue;
+			
+			if ( ( _graph.requiredFeatures( classIdx ) & ~_features ) != 0 ) {
+				// molecule lacks an element or feature required by the class or an ancestor
+				_state.screened++;
+				status[ classIdx ] = FAIL;
+				CompressedBitmap subtree = _graph.descendants( classIdx );
+				_state.skipped += subtree.andNotInto( candidates );
+				subtree.orInto( pruned );
+			} else if ( _graph.expression( classIdx ) != null ) {
+				_state.evaluated++;
+				if ( _evaluator.test( classIdx ) ) {
+					status[ classIdx ] = PASS;
+				} else {
+					// no descendant can be assigned any more, drop the whole subtree
+					status[ classIdx ] = FAIL;
+					CompressedBitmap subtree = _graph.descendants( classIdx );
+					_state.skipped += subtree.andNotInto( candidates );
+					subtree.orInto( pruned );
+				}
+			} else {
+				status[ classIdx ] = _graph.hasChildEdges() ? PASS : FAIL;
+			}
+			
+			for ( int edge = _graph.evalChildStart( classIdx ); edge < _graph.evalChildEnd( classIdx ); edge++ ) {
+				int childIdx = _graph.evalChild( edge );
+				if ( Bits.get( pruned, childIdx ) ) {
+					_state.skipped++;
+				} else {
+					Bits.set( candidates, childIdx );
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return  valid classes and leaves of the classes that passed the walk
+	 */
+	static LeafSelector.Selection select( LeafSelector _leafSelector, TraversalState _state ) {
+		_leafSelector.reset( _state.assigned );
+		for ( int classIdx = Bits.nextSetBit( _state.candidates, 0 ); classIdx >= 0; 
+				  classIdx = Bits.nextSetBit( _state.candidates, classIdx + 1 ) ) {
+			if ( _state.status[ classIdx ] == PASS ) _leafSelector.assign( _state.assigned, classIdx );
+		}
+		return _leafSelector.select( _state.assigned, _state.valid, _state.leaves );
+	}
+	
+	/**
+	 * @return  elements and features of provided molecule, all bits set if they can not
+	 *          be determined so that no class is screened out
+	 */
+	private static long moleculeFeatures( PreparedMolecule _molecule ) {
+		if ( !_molecule.isValid() ) return ~0L;
+		try {
+			return _molecule.getSignature().mask();
+		} catch ( Exception e ) {
+			LOG.info( "ERROR: could not compute features of: " + _molecule + " " + e );
+			return ~0L;
+		}
+	}
+	
+	// ==== class TraversalState ==============================================
+	/**
+	 * Candidate bitset, descendants of failed classes, tri-state class status and query
+	 * results of the hierarchy walk and the bitsets of the leaf selection, allocated once 
+	 * per worker thread and reused for every molecule.
+	 */
+	final static class TraversalState {
+		
+		private final long[]            candidates;
+		private final long[]            pruned;
+		private final byte[]            status;
+		private final MatchContext.Memo memo;
+		private final long[]            assigned;
+		private final long[]            valid;
+		private final long[]            leaves;
+		/** classes visited, SMARTS evaluated, classes skipped below failed classes, classes failed by required features */
+		private int visited;
+		private int evaluated;
+		private int skipped;
+		private int screened;
+		
+		TraversalState( int _nClasses, int _nQueries, LeafSelector _leafSelector ) {
+			candidates = Bits.create( _nClasses );
+			pruned     = Bits.create( _nClasses );
+			status     = new byte[ _nClasses ];
+			memo       = new MatchContext.Memo( _nQueries );
+			assigned   = _leafSelector.newBitset();
+			valid      = _leafSelector.newBitset();
+			leaves     = _leafSelector.newBitset();
+		}
+		
+		void clear() {
+			Bits.clearAll( candidates );
+			Bits.clearAll( pruned );
+			Arrays.fill( status, UNKNOWN );
+			memo.clear();
+			visited   = 0;
+			evaluated = 0;
+			skipped   = 0;
+			screened  = 0;
+		}
+	}
+	// ========================================================================
     
 	/**
-	 * @param _smiles
-	 * @param _smartsList
+	 * @param _expression  parsed SMARTS list of the class
+	 * @param _context     molecule to assign
 	 * @param _module  lower case name of chemical library used (e.g. cdk, ambit,
 	 *                 chemaxon, see {@link ChemLib})
 	 * 
 	 * @return
 	 */
-	public static boolean assign( String _smiles, List<String> _smartsList, String _module, 
-															boolean _aromatic, boolean _verbose ) {
+	public static boolean assign( ClassExpression _expression, MatchContext _context, String _module ) {
 		  
 		if ( ChemLib.CHEMLIB_CA.equals( _module ) ) {
 			LOG.info("ChemAxon is not implemented in public version...stopping");
@@ -145,9 +278,11 @@ public class AssignmentUtils {
 			//return assignChemaxon( _smiles, _smartsList, _module );
 		  
 		} else if ( ChemLib.CHEMLIB_CDK.equals( _module ) || 
-		            ChemLib.CHEMLIB_AMBIT.equals( _module ) ) {
+		            ChemLib.CHEMLIB_AMBIT.equals( _module ) ||
+		            ChemLib.CHEMLIB_VF2.equals( _module ) ||
+		            ChemLib.CHEMLIB_OCL.equals( _module ) ) {
 		  
-			return assignCdkOrAmbit( _smiles, _smartsList, _module, _aromatic, _verbose );
+			return assignCdkOrAmbit( _expression, _context );
 		  
 		} else {
 			LOG.severe( "Unexpected chemical library module: '" + _module + "'" );
@@ -156,203 +291,17 @@ public class AssignmentUtils {
 	}
 	
 	/**
-	 * handle logical operators in smarts and uses atom by atom search (ABAS) to assign a compound. 
+	 * handle logical operators in smarts and uses atom by atom search (ABAS) to assign a compound,
+	 * see {@link ClassExpression} for the logic of the smarts set.
 	 */
-	public static boolean assignCdkOrAmbit( String _smiles, List<String> _smartsList, String _module, 
-																boolean _aromatic, boolean _verbose ) {
+	public static boolean assignCdkOrAmbit( ClassExpression _expression, MatchContext _context ) {
 		try {
-			List<String> ORResponse = new ArrayList<String>();
-			List<String> NOTResponse = new ArrayList<String>();
-			
-			boolean isORstructure 	= false;
-			boolean isNOTstructure 	= false;
-			String  trueResponse 	= new String( "true" );
-			int size = _smartsList.size();
-		
-			/*
-			 * A class consists of smarts set.
-			 * Smarts set is a collection of smarts query or smarts structures with logical operators
-			 * the following additional logic has been added to for CDK smarts:
-			 * 
-			 * AND structures: query1XXXquery2, query1.query2. Both dots or XXX separated smarts are taken apart and we check each of them individually and only when all are ok then the whole expression is considered as AND connected structure.
-			 * POLY structures: 3ZZZquery2 query 2 must occor 3 times
-			 * NOT structures: !query, !query1XXXquery2, !query1.query2
-			 * OR structures: queries without NOT symol, and AND structures after resolving XXX, WWW, dots.
-			 */
-			for ( int i=0; i < _smartsList.size(); i++ ) {
-				
-				String Qry = _smartsList.get( i );
-				String Qry2 = Qry.replaceAll( "^!", "" );
-				
-	    		if ( Qry2.equals( Qry ) ) {								//OR smarts
-	    			isORstructure = true;
-	    			
-	    			String Qry1 = Qry.replaceAll("XXX", "");
-	    			
-	    			if ( Qry1.equals( Qry ) ) {							//OR smarts
-	    				
-	    				String Qry3 = Qry.replace(".", "");
-		    			
-	    				if ( Qry3.equals( Qry ) ) {						//OR smarts, potential EXACT and MORE
-			    			int rspd = checkQueryMultiplicity( _smiles, Qry, _module, _aromatic, _verbose );
-			    			if ( rspd >0 ) ORResponse.add( "true" ); else ORResponse.add("false");
-		    				//System.out.println("checkQueryMultiplicity: " + " OR " + rspd + " " + Qry);
-			    			
-	    				} else {										//OR + ANDdot smarts, potential EXACT and MORE										
- 		    				List<String> newQryList = Segmenter( Qry, "." );
-		    				List<String> AndConnectedList = new ArrayList<String>();
-		    				for ( int j = 0; j<newQryList.size(); j++) { 
-		    					String newQry = newQryList.get(j);
-		    					int rspd = SubStructureSearchEngine( _smiles, newQry, _module, _aromatic, _verbose );
-		    					//System.out.println("sss: " + rspd + " " + newQry);
-		    					if ( rspd >0 ) AndConnectedList.add("true"); else AndConnectedList.add("false");
-		    				}
-		    				if ( IsAndConnected( AndConnectedList ) ) { 
-		    					String rspdS = AndConnectedList.get( 0 );
-		    					ORResponse.add( rspdS );
-		    					//System.out.println("AND with dots " + rspd + " " + Qry);
-		    				}
-		    			}
-	    				
-		    		} else {											//OR + AND smarts
-		    			List<String> newQryList = Segmenter( Qry, "XXX" );
-	    				List<String> AndConnectedList= new ArrayList<String>();
-	    				
-	    				String newQry = newQryList.get(0);				//stereospecific query preceeds before XXX
-	    				int rspd = checkQueryStereoSpecificity( _smiles, newQry, _module, _aromatic, _verbose );
-	    				if ( rspd >0 ) AndConnectedList.add( "true" ); else AndConnectedList.add( "false" );
-	    				//System.out.println("stereo: " + rspd + " " + newQry );
-	    				
-	    				newQry = newQryList.get( 1 );					//non-stereospecific query follows after XXX
-	    				////rspd = SubStructureSearchEngine( _smiles, newQry, _module, _aromatic, _verbose );
-	    				rspd = checkQueryMultiplicity( _smiles, newQry, _module, _aromatic, _verbose );
-	    				if ( rspd >0 ) AndConnectedList.add( "true" ); else AndConnectedList.add( "false" );
-	    				//System.out.println("sss: " + rspd + " " + newQry );
-	    				
-	    				if ( IsAndConnected( AndConnectedList ) ) { 
-	    					String rspdS = AndConnectedList.get(0);		//only true if both part1 and part2 are true
-	    					ORResponse.add( rspdS );
-	    					//System.out.println("AND with XXX " + rspd + " " + Qry);
-	    				}
-	    			}
-	    			
-	    		} else {												//NOT smarts
-	    			
-	    			isNOTstructure = true;
-	    			
-	    			String Qry1 = Qry2.replaceAll("XXX", "");
-	    			
-	    			if( Qry1.equals( Qry2 ) ) {							//NOT smarts
-	    				
-	    				String Qry3 = Qry2.replace(".", "");
-		    			
-	    				if( Qry3.equals( Qry2 ) ) {						//NOT as simple smarts
-	    					
-		    				// no patterns found, OR structure preceeded by NOT
-		    				int rspd1 = checkQueryMultiplicity( _smiles, Qry2, _module, _aromatic, _verbose );
-		    				if ( rspd1 >0 ) NOTResponse.add("false");
-	    					else NOTResponse.add("true");
-			    			
-		    			} else {										//NOT+AND smarts
-		    				
- 		    				List<String> newQryList = Segmenter( Qry2,"." );
-		    				List<String> AndConnectedList= new ArrayList<String>();
-		    				
-		    				for (int j = 0; j<newQryList.size(); j++) {
-		    					String newQry = newQryList.get(j);
-		    					int rspd = SubStructureSearchEngine( _smiles, newQry, _module, _aromatic, _verbose );
-		    					//System.out.println("sss: " + rspd + " " + newQry);
-		    					if ( rspd >0 ) AndConnectedList.add("true");
-		    					else AndConnectedList.add("false");
-		    				}
-		    				if ( IsAndConnected( AndConnectedList ) ) { 
-		    					String rspd1 = AndConnectedList.get(0);
-		    					if( rspd1.equals("true") ) NOTResponse.add("false"); else NOTResponse.add("true");
-		    				}
-		    			}
-	    				
-	    			} else { 											//NOT + AND smarts
-	    				List<String> newQryList = Segmenter( Qry2, "XXX" );
-	    				List<String> AndConnectedList= new ArrayList<String>();
-	    				
-	    				for ( int j = 0; j<newQryList.size(); j++ ) {
-	    					String newQry = newQryList.get(j);
-	    					int rspd = 0;
-	    					if ( j==0 ) {
-		    					//stereospecific query preceeds before XXX
-	    						rspd = checkQueryStereoSpecificity( _smiles, newQry, _module, _aromatic, _verbose );
-	    					} else {
-		    					//non-stereospecific query follows after XXX
-	    						rspd = SubStructureSearchEngine( _smiles, newQry, _module, _aromatic, _verbose );
-	    					}
-	    					if ( rspd >0 ) AndConnectedList.add( "true" ); else AndConnectedList.add( "false" );
-	    				}
-	    				if ( IsAndConnected(AndConnectedList ) ) { 
-	    					String rspd1 = AndConnectedList.get(0);
-	    					if ( rspd1.equals( "true" ) ) NOTResponse.add( "false" ); else NOTResponse.add( "true" );
-	    				}
-	    			}
-	    		}
-			}
-			
-			/*
-			 * a substructure match is considered, if at least one OR structure is a match in the smarts set
-			 * and all NOT structures in the smarts set did not match
-			 */
-			boolean asgn1 = IsOrConnected( ORResponse, "true") ;
-			
-			/*
-			 * two scenarios in NOT structures: 1. only NOT structure 2. both NOT and OR structures
-			 * scenario 1: only NOT
-			 */
-			if( isNOTstructure ) {
-				boolean asgn2 = false;
-				boolean check = IsAndConnected( NOTResponse );
-				if ( check ) asgn2 = Boolean.valueOf ( NOTResponse.get(0) );
-				
-				if ( !isORstructure ) {
-					if( asgn2 ) return true;
-					else return false;
-				}
-				
-				/*
-				 * two scenarios in NOT structures: 1. only NOT structure 2. both NOT and OR structures
-				 * scenario 2: both NOT and OR
-				 */
-				if ( isORstructure ) {
-		    		if ( asgn2 ) {
-		    			if ( asgn1 ) return true;
-		    			else return false;
-		    		}
-		    	}
-			}
-			
-			/*
-			 * scenario 3: no NOT structures, only OR structures
-			 */
-			else if ( isORstructure ) {
-		    	//System.out.println("found OR structures");
-		    	if ( asgn1 ) return true;
-		    	else return false;
-		    }
-				
+			return _expression.evaluate( _context );
 		} catch (Exception e) {
 			System.out.println("assigner subroutine error" + e );
 		}
 		return false;
 	}
-		
-	/**
-	 * @param smi
-	 * @param sma
-	 * @param module
-	 * @return true or false. 
-	 */     
-    public static int checkQueryStereoSpecificity( String _smi, String _sma, String _module, 
-    															boolean _aromatic, boolean _verbose ) {
-    	// stereochemistry is implemented in cdk and not in ambit
-    	return SubStructureSearchEngine( _smi, _sma, "cdk", _aromatic, _verbose );
-    }
 
 	/**
 	 * Handle logical operators in a smarts class and uses atom by atom search (ABAS) to assign a compound.
@@ -551,49 +500,6 @@ public class AssignmentUtils {
 		return null;
 	}
     
-	/**
-	 * @param smi
-	 * @param sma
-	 * @param module
-	 * @return true or false after processing POLY structures with keywords such as 1. EXACT, 2. MORE and 3. queries containing no keywords. 
-	 * @throws EmptyMoleculeException
-	 * @throws Exception
-	 */
-	public static int checkQueryMultiplicity( String _smi, String _sma, String _module, boolean _aromatic,  boolean _verbose ) throws Exception {
-		try  {
-			// multiplicity keywords are only used for Cdk or Ambit handling.
-			String exact = _sma.replaceAll( "EXACT", "" );
-			String more = _sma.replaceAll( "MORE", "" );
-			
-			if ( exact.equals( _sma ) ) {
-				//does not contain EXACT keyword
-				if ( more.equals( _sma ) ) {
-					//does not contain MORE keyword
-	 				return StructureSearchEngine.searchBySubstructure( _smi, _sma, _module, _aromatic, _verbose );
-				} else {
-					//contains keyword MORE
-					List<String> listSmarts = Segmenter( _sma, "MORE" );
-					String query = listSmarts.get(1);
-					String threshold = listSmarts.get(0);
-					int cnt = StructureSearchEngine.searchBySubstructureAmbitAllInstances( _smi, query, _verbose );
-					if (cnt >= Integer.parseInt( threshold ) ) return 1;
-					else  return 0;
-				}
-	 		} else {
-				//contains keyword EXACT
-				List<String> listSmarts = Segmenter( _sma, "EXACT" );
-				String query = listSmarts.get(1);
-				String threshold = listSmarts.get(0);
-				int cnt = StructureSearchEngine.searchBySubstructureAmbitAllInstances( _smi, query, _verbose );
-				if ( cnt == Integer.parseInt(threshold) ) return 1;
-				else return 0;
-			}
-		} catch ( Exception e ) {
-			LOG.info( "ERROR: error in processing smarts multiplicity: " + e ) ;
-			return -1;
-		}
-	}
-	
 	/**
 	 * perform atom-by-atom-search (ABAS) given a query and a target 
 	 */
@@ -607,4 +513,4 @@ public class AssignmentUtils {
 		return -1;
 	}
     
-}
+}
\ No newline at end of file
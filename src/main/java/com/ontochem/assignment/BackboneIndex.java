@@ -0,0 +1,233 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+import org.openscience.cdk.aromaticity.Aromaticity;
+import org.openscience.cdk.aromaticity.ElectronDonation;
+import org.openscience.cdk.aromaticity.Kekulization;
+import org.openscience.cdk.graph.ConnectivityChecker;
+import org.openscience.cdk.graph.Cycles;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmiFlavor;
+import org.openscience.cdk.smiles.SmilesGenerator;
+import org.openscience.cdk.smiles.SmilesParser;
+
+/**
+ * Backbone classes of an ontology indexed by canonical structure.
+ * <p>
+ * Most terms of the backbones ontology carry a ring system as <code>smiles:</code> but
+ * no SMARTS. In the hierarchy walk they are pass-through classes whose children are
+ * enqueued for every molecule. Instead, the backbones of a molecule, its ring systems
+ * together with the atoms double bonded to them, are computed once (see
+ * {@link PreparedMolecule#getBackbones()}) and the backbone classes are found by a
+ * hash lookup of their canonical SMILES. The classes found seed the walk and are
+ * assigned if their nearest ancestors with SMARTS are, see
+ * {@link OntologyGraph#evalParentStart(int)}. Backbone classes are never evaluation
+ * children, they are not reached otherwise.
+ * <p>
+ * The index is immutable and shared by all worker threads.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public final class BackboneIndex {
+
+	private final static Logger LOG = Logger.getLogger( BackboneIndex.class.getName() );
+
+	/** same model as the Ambit view of {@link PreparedMolecule} */
+	private final static Aromaticity AROMATICITY =
+			new Aromaticity( ElectronDonation.daylight(), Cycles.or( Cycles.all(), Cycles.all( 6 ) ) );
+
+	private final Map<String,int[]> classesByBackbone;
+
+	private BackboneIndex( Map<String,int[]> _classesByBackbone ) {
+		classesByBackbone = _classesByBackbone;
+	}
+
+	/**
+	 * Indexes every class of provided graph that has a SMILES but no expression.
+	 *
+	 * @param _graph
+	 * @param _ocidClass2smilesMap  structures of the classes as read from the OBO
+	 *
+	 * @return
+	 */
+	public static BackboneIndex compile( OntologyGraph _graph, Map<String,String> _ocidClass2smilesMap ) {
+
+		final Map<String,List<Integer>> classLists = new HashMap<>();
+		final AtomicInteger nFailed   = new AtomicInteger();
+		int                 nIndexed  = 0;
+
+		final List<Integer> classes   = new ArrayList<>();
+		final List<String>  smiles    = new ArrayList<>();
+		for ( Map.Entry<String,String> entry : _ocidClass2smilesMap.entrySet() ) {
+			final int classIdx;
+			try {
+				classIdx = _graph.indexOf( OntologyGraph.parseOcid( entry.getKey() ) );
+			} catch ( Exception e ) {
+				continue;
+			}
+			if ( classIdx < 0 || _graph.expression( classIdx ) != null ) continue;
+			classes.add( classIdx );
+			smiles.add( entry.getValue() );
+		}
+
+		// parsing and canonicalisation dominate, done in parallel
+		final String[] keys = new String[ smiles.size() ];
+		IntStream.range( 0, keys.length ).parallel().forEach( i -> {
+			try {
+				keys[ i ] = canonical( new SmilesParser( SilentChemObjectBuilder.getInstance() ).parseSmiles( smiles.get( i ) ) );
+			} catch ( Exception e ) {
+				nFailed.incrementAndGet();
+			}
+		});
+
+		for ( int i = 0; i < keys.length; i++ ) {
+			if ( keys[ i ] == null ) continue;
+			classLists.computeIfAbsent( keys[ i ], key -> new ArrayList<>() ).add( classes.get( i ) );
+			nIndexed++;
+		}
+		final Map<String,int[]> classesByBackbone = new HashMap<>();
+		for ( Map.Entry<String,List<Integer>> entry : classLists.entrySet() ) {
+			classesByBackbone.put( entry.getKey(), entry.getValue().stream().mapToInt( Integer::intValue ).toArray() );
+		}
+
+		LOG.info( "indexed backbone classes: " + nIndexed + " classes, "
+				+ classesByBackbone.size() + " distinct backbones, " + nFailed.get() + " SMILES not parsed" );
+		return new BackboneIndex( classesByBackbone );
+	}
+
+	/**
+	 * Sets the backbone classes of provided molecule as candidates of the hierarchy walk.
+	 *
+	 * @param _molecule
+	 * @param _candidates  candidate bitset of the walk
+	 *
+	 * @return  number of backbone classes found
+	 */
+	public int seed( PreparedMolecule _molecule, long[] _candidates ) {
+		int nFound = 0;
+		for ( String backbone : _molecule.getBackbones() ) {
+			final int[] classes = classesByBackbone.get( backbone );
+			if ( classes == null ) continue;
+			nFound += classes.length;
+			for ( int classIdx : classes ) Bits.set( _candidates, classIdx );
+		}
+		return nFound;
+	}
+
+	// ---- canonical backbones -----------------------------------------------
+
+	/**
+	 * Cuts provided molecule into its backbones: ring systems, connected by ring bonds and
+	 * spiro atoms, each with the atoms double bonded to it. Substituents are replaced by
+	 * hydrogens.
+	 *
+	 * @param _molecule  not modified
+	 *
+	 * @return  canonical SMILES of the backbones
+	 *
+	 * @throws Exception
+	 */
+	public static Set<String> backbonesOf( IAtomContainer _molecule ) throws Exception {
+
+		final IAtomContainer mol = _molecule.clone();
+		Cycles.markRingAtomsAndBonds( mol );
+		boolean hasRing = false;
+		for ( IAtom atom : mol.atoms() ) {
+			if ( atom.isInRing() ) {
+				hasRing = true;
+				break;
+			}
+		}
+		if ( !hasRing ) return new HashSet<>();
+		kekulize( mol );
+
+		final int       nAtoms = mol.getAtomCount();
+		final boolean[] kept   = new boolean[ nAtoms ];
+		for ( int i = 0; i < nAtoms; i++ ) {
+			if ( mol.getAtom( i ).isInRing() ) kept[ i ] = true;
+		}
+		for ( IBond bond : mol.bonds() ) {
+			if ( bond.isInRing() || bond.getOrder() != IBond.Order.DOUBLE ) continue;
+			if ( bond.getBegin().isInRing() ) kept[ mol.indexOf( bond.getEnd() ) ]   = true;
+			if ( bond.getEnd().isInRing() )   kept[ mol.indexOf( bond.getBegin() ) ] = true;
+		}
+
+		// cut all other bonds, each cut bond order becomes hydrogens
+		final List<IBond> cut = new ArrayList<>();
+		for ( IBond bond : mol.bonds() ) {
+			final boolean beginKept = kept[ mol.indexOf( bond.getBegin() ) ];
+			final boolean endKept   = kept[ mol.indexOf( bond.getEnd() ) ];
+			final boolean exocyclic = bond.getOrder() == IBond.Order.DOUBLE
+					&& ( bond.getBegin().isInRing() || bond.getEnd().isInRing() );
+			if ( bond.isInRing() || ( beginKept && endKept && exocyclic ) ) continue;
+			cut.add( bond );
+			final int nHydrogens = bond.getOrder().numeric();
+			if ( beginKept ) addHydrogens( bond.getBegin(), nHydrogens );
+			if ( endKept )   addHydrogens( bond.getEnd(), nHydrogens );
+		}
+		final List<IAtom> removed = new ArrayList<>();
+		for ( int i = 0; i < nAtoms; i++ ) {
+			if ( !kept[ i ] ) removed.add( mol.getAtom( i ) );
+		}
+		mol.setStereoElements( new ArrayList<>() );
+		for ( IBond bond : cut )     mol.removeBond( bond );
+		for ( IAtom atom : removed ) mol.removeAtom( atom );
+
+		final Set<String> backbones = new HashSet<>();
+		for ( IAtomContainer part : ConnectivityChecker.partitionIntoMolecules( mol ).atomContainers() ) {
+			backbones.add( canonical( part ) );
+		}
+		return backbones;
+	}
+
+	/**
+	 * @param _backbone  kekulised or aromatic structure, aromaticity is perceived again
+	 *
+	 * @return  canonical SMILES without stereo and isotopes
+	 *
+	 * @throws Exception
+	 */
+	private static String canonical( IAtomContainer _backbone ) throws Exception {
+		kekulize( _backbone );
+		AROMATICITY.apply( _backbone );
+		return new SmilesGenerator( SmiFlavor.Unique | SmiFlavor.UseAromaticSymbols ).create( _backbone );
+	}
+
+	private static void kekulize( IAtomContainer _mol ) throws Exception {
+		for ( IBond bond : _mol.bonds() ) {
+			if ( bond.getOrder() == null || bond.getOrder() == IBond.Order.UNSET ) {
+				Kekulization.kekulize( _mol );
+				return;
+			}
+		}
+	}
+
+	private static void addHydrogens( IAtom _atom, int _nHydrogens ) {
+		final Integer nImplicit = _atom.getImplicitHydrogenCount();
+		_atom.setImplicitHydrogenCount( ( nImplicit != null ? nImplicit : 0 ) + _nHydrogens );
+	}
+}
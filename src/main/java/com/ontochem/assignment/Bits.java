@@ -0,0 +1,81 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.Arrays;
+
+/**
+ * Helpers for plain <code>long[]</code> bitsets over dense class indices. The arrays
+ * are allocated once per worker thread and reused for every molecule.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public final class Bits {
+
+	private Bits() {}
+
+	/**
+	 * @param _nBits
+	 *
+	 * @return  empty bitset able to hold provided number of bits
+	 */
+	public static long[] create( int _nBits ) {
+		return new long[ ( _nBits + 63 ) >>> 6 ];
+	}
+
+	public static void set( long[] _bits, int _idx ) {
+		_bits[ _idx >>> 6 ] |= 1L << _idx;
+	}
+
+	public static void clear( long[] _bits, int _idx ) {
+		_bits[ _idx >>> 6 ] &= ~( 1L << _idx );
+	}
+
+	public static boolean get( long[] _bits, int _idx ) {
+		return ( _bits[ _idx >>> 6 ] & ( 1L << _idx ) ) != 0;
+	}
+
+	public static void clearAll( long[] _bits ) {
+		Arrays.fill( _bits, 0L );
+	}
+
+	public static boolean isEmpty( long[] _bits ) {
+		for ( long word : _bits ) {
+			if ( word != 0 ) return false;
+		}
+		return true;
+	}
+
+	public static int cardinality( long[] _bits ) {
+		int count = 0;
+		for ( long word : _bits ) count += Long.bitCount( word );
+		return count;
+	}
+
+	/**
+	 * @param _bits
+	 * @param _fromIdx
+	 *
+	 * @return  index of the next set bit at or after provided index, -1 if there is none
+	 */
+	public static int nextSetBit( long[] _bits, int _fromIdx ) {
+		int wordIdx = _fromIdx >>> 6;
+		if ( wordIdx >= _bits.length ) return -1;
+		long word = _bits[ wordIdx ] & ( -1L << _fromIdx );
+		while ( true ) {
+			if ( word != 0 ) return ( wordIdx << 6 ) + Long.numberOfTrailingZeros( word );
+			if ( ++wordIdx == _bits.length ) return -1;
+			word = _bits[ wordIdx ];
+		}
+	}
+}
@@ -16,6 +16,11 @@ import java.util.Locale;
  *       <li>second version</li>
  *     </ul>
  *   </li>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>vf2 engine on primitive arrays</li>
+ *     </ul>
+ *   </li>
  * </ul>
  */
 public class ChemLib {
@@ -24,12 +29,14 @@ public class ChemLib {
 	public final static String CHEMLIB_CDK   = "cdk";
 	public final static String CHEMLIB_CA    = "chemaxon";
 	public final static String CHEMLIB_OCL   = "ocl";
+	public final static String CHEMLIB_VF2   = "vf2";
 
 	private final static String[] KNOWN_CHEMLIBS = new String[] {
 		CHEMLIB_AMBIT,
 		CHEMLIB_CA,
 		CHEMLIB_CDK,
-		CHEMLIB_OCL
+		CHEMLIB_OCL,
+		CHEMLIB_VF2
 	};
   
   	/**
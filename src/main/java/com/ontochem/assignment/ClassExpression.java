@@ -0,0 +1,539 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable expression tree of a class SMARTS list, parsed once at ontology load.
+ * <p>
+ * A class consists of a SMARTS set, a collection of SMARTS queries with logical operators:
+ * <ul>
+ *   <li>OR structures: each entry without leading <code>!</code>, at least one must match</li>
+ *   <li>NOT structures: <code>!query</code>, <code>!query1.query2</code>, <code>!query1XXX!query2</code>,
+ *       none of them may be found as a whole; a partly found entry does not exclude the molecule.
+ *       The <code>!</code> before query2 is removed, the stereo pair is found if both halves are.
+ *       The original assignment searched query2 with its <code>!</code>, never found it, and a
+ *       partly found entry made the class fail unless another NOT entry passed</li>
+ *   <li>AND structures: <code>query1.query2</code>, all dot separated queries must match</li>
+ *   <li>stereo AND structures: <code>query1XXXquery2</code>, stereospecific query1 is checked with CDK,
+ *       non-stereospecific query2 with the selected chemistry module</li>
+ *   <li>POLY structures: <code>3EXACTquery</code>, <code>2MOREquery</code>, query must occur
+ *       exactly 3 times or at least 2 times</li>
+ * </ul>
+ * Evaluation short-circuits, an OR stops at the first hit and an AND at the first miss.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *       <li>required features for hereditary pruning</li>
+ *       <li>plain SMARTS are interned to ids of a {@link SmartsTable}</li>
+ *       <li>operands ordered by a {@link QueryProfile}</li>
+ *       <li>OCL idcode fragments as match leaves</li>
+ *       <li>NOT entries keep the semantics of the original assignment</li>
+ *       <li>NOT entries are negated as a whole, the second half of <code>!query1XXX!query2</code> is searched</li>
+ *       <li>leaves restored from an {@link OntologySnapshot} with their SMARTS ids</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public abstract class ClassExpression {
+
+	private final static String XXX  = "XXX";
+	private final static String NOT  = "!";
+	private final static String DOT  = ".";
+
+	/**
+	 * Evaluates this expression for the molecule of provided context.
+	 *
+	 * @param _context
+	 *
+	 * @return
+	 */
+	public abstract boolean evaluate( MatchContext _context );
+
+	/**
+	 * Adds all plain SMARTS used in this expression to provided collection.
+	 *
+	 * @param _smarts
+	 */
+	public abstract void collectSmarts( Collection<String> _smarts );
+
+	/**
+	 * @return  elements and features, see {@link FeatureSignature#mask()}, every molecule
+	 *          passing this expression has
+	 */
+	public abstract long requiredFeatures();
+
+	/**
+	 * Returns an equivalent expression whose OR operands are ordered by decreasing hit
+	 * rate per cost and whose AND operands by decreasing miss rate per cost, so that
+	 * short-circuit evaluation stops as early and as cheaply as possible. Operands with
+	 * equal estimates keep their order.
+	 *
+	 * @param _profile
+	 *
+	 * @return
+	 */
+	public abstract ClassExpression ordered( QueryProfile _profile );
+
+	/**
+	 * @return  estimated probability this expression is true, see {@link QueryProfile}
+	 */
+	public abstract double probability( QueryProfile _profile );
+
+	/**
+	 * @return  estimated time to evaluate this expression in nanoseconds
+	 */
+	public abstract double cost( QueryProfile _profile );
+
+	private static List<ClassExpression> orderedOperands( ClassExpression[] _operands, QueryProfile _profile, boolean _byHit ) {
+		final List<ClassExpression> ordered = new ArrayList<>();
+		for ( ClassExpression operand : _operands ) ordered.add( operand.ordered( _profile ) );
+		// stable sort, decisive probability per nanosecond
+		ordered.sort( Comparator.comparingDouble( ( ClassExpression operand ) -> 
+				-( _byHit ? operand.probability( _profile ) : 1.0 - operand.probability( _profile ) ) / operand.cost( _profile ) ) );
+		return ordered;
+	}
+
+	private static long requiredFeatures( String _smarts ) {
+		if ( OclFragments.isIdcode( _smarts ) ) return 0L;
+		return FeatureSignature.ofQuery( _smarts ).mask();
+	}
+
+	/**
+	 * Adds the OCL idcode of a class as a further match, see {@link OclFragments}.
+	 *
+	 * @param _expression   expression of the class SMARTS or <code>null</code>
+	 * @param _idcode
+	 * @param _smartsTable  ontology wide table the tagged idcode is interned to
+	 *
+	 * @return
+	 */
+	public static ClassExpression withFragment( ClassExpression _expression, String _idcode, SmartsTable _smartsTable ) {
+		final Match fragment = new Match( OclFragments.IDCODE_PREFIX + _idcode, _smartsTable );
+		return _expression == null ? fragment : new And( Arrays.asList( _expression, fragment ) );
+	}
+
+	/**
+	 * Parses the SMARTS list of a class.
+	 *
+	 * @param _smartsList  SMARTS as read from the OBO
+	 * @param _smartsTable  ontology wide table the plain SMARTS are interned to
+	 *
+	 * @return  expression or <code>null</code> for an empty list
+	 */
+	public static ClassExpression parse( List<String> _smartsList, SmartsTable _smartsTable ) {
+
+		if ( ( _smartsList == null ) || _smartsList.isEmpty() ) return null;
+
+		final List<ClassExpression> orList  = new ArrayList<>();
+		final List<ClassExpression> notList = new ArrayList<>();
+
+		for ( String smarts : _smartsList ) {
+			if ( smarts.startsWith( NOT ) ) {
+				notList.add( new Not( parseEntry( smarts.substring( 1 ), true, _smartsTable ) ) );
+			} else {
+				orList.add( parseEntry( smarts, false, _smartsTable ) );
+			}
+		}
+
+		final List<ClassExpression> andList = new ArrayList<>();
+		if ( !orList.isEmpty() ) andList.add( orList.size() == 1 ? orList.get( 0 ) : new Or( orList ) );
+		andList.addAll( notList );
+
+		return andList.size() == 1 ? andList.get( 0 ) : new And( andList );
+	}
+
+	/**
+	 * Parses one entry of the SMARTS list, leading <code>!</code> already removed.
+	 */
+	private static ClassExpression parseEntry( String _smarts, boolean _negated, SmartsTable _smartsTable ) {
+
+		if ( _smarts.contains( XXX ) ) {
+			final List<String> parts = AssignmentUtils.Segmenter( _smarts, XXX );
+			final Match stereo = new Match( parts.get( 0 ), _smartsTable );			//stereospecific query preceeds before XXX
+			if ( !_negated ) {
+				//non-stereospecific query follows after XXX, potential EXACT and MORE
+				return new StereoAnd( stereo, parseLeaf( parts.get( 1 ), _smartsTable ) );
+			}
+			final List<ClassExpression> plain = new ArrayList<>();
+			for ( int i = 1; i < parts.size(); i++ ) {
+				String part = parts.get( i );
+				if ( part.startsWith( NOT ) ) part = part.substring( 1 );		//!query1XXX!query2
+				plain.add( new Match( part, _smartsTable ) );
+			}
+			return new StereoAnd( stereo, plain.size() == 1 ? plain.get( 0 ) : new And( plain ) );
+
+		} else if ( _smarts.contains( DOT ) ) {
+			final List<ClassExpression> parts = new ArrayList<>();
+			for ( String part : AssignmentUtils.Segmenter( _smarts, DOT ) ) {
+				parts.add( new Match( part, _smartsTable ) );
+			}
+			return new And( parts );
+		}
+		return parseLeaf( _smarts, _smartsTable );
+	}
+
+	/**
+	 * Parses a single query with optional multiplicity prefix.
+	 */
+	private static ClassExpression parseLeaf( String _smarts, SmartsTable _smartsTable ) {
+		for ( Count.Mode mode : Count.Mode.values() ) {
+			final int keywordOff = _smarts.indexOf( mode.name() );
+			if ( keywordOff > 0 ) {
+				try {
+					final int threshold = Integer.parseInt( _smarts.substring( 0, keywordOff ).trim() );
+					return new Count( mode, threshold, _smarts.substring( keywordOff + mode.name().length() ).trim(), _smartsTable );
+				} catch ( NumberFormatException nfe ) {
+					break;
+				}
+			}
+		}
+		return new Match( _smarts, _smartsTable );
+	}
+
+	// ==== class Or ==========================================================
+	/**
+	 * True if any operand is true.
+	 */
+	public final static class Or extends ClassExpression {
+
+		private final ClassExpression[] operands;
+
+		public Or( List<ClassExpression> _operands ) {
+			operands = _operands.toArray( new ClassExpression[0] );
+		}
+
+		public List<ClassExpression> getOperands() { return Collections.unmodifiableList( Arrays.asList( operands ) ); }
+
+		@Override
+		public boolean evaluate( MatchContext _context ) {
+			for ( ClassExpression operand : operands ) {
+				if ( operand.evaluate( _context ) ) return true;
+			}
+			return false;
+		}
+
+		@Override
+		public void collectSmarts( Collection<String> _smarts ) {
+			for ( ClassExpression operand : operands ) operand.collectSmarts( _smarts );
+		}
+
+		@Override
+		public long requiredFeatures() {
+			long features = ~0L;
+			for ( ClassExpression operand : operands ) features &= operand.requiredFeatures();
+			return features;
+		}
+
+		@Override
+		public ClassExpression ordered( QueryProfile _profile ) {
+			return new Or( orderedOperands( operands, _profile, true ) );
+		}
+
+		@Override
+		public double probability( QueryProfile _profile ) {
+			double pFalse = 1.0;
+			for ( ClassExpression operand : operands ) pFalse *= 1.0 - operand.probability( _profile );
+			return 1.0 - pFalse;
+		}
+
+		@Override
+		public double cost( QueryProfile _profile ) {
+			// later operands are only evaluated if all before are false
+			double cost   = 0.0;
+			double pReach = 1.0;
+			for ( ClassExpression operand : operands ) {
+				cost   += pReach * operand.cost( _profile );
+				pReach *= 1.0 - operand.probability( _profile );
+			}
+			return cost;
+		}
+	}
+
+	// ==== class And =========================================================
+	/**
+	 * True if all operands are true.
+	 */
+	public final static class And extends ClassExpression {
+
+		private final ClassExpression[] operands;
+
+		public And( List<ClassExpression> _operands ) {
+			operands = _operands.toArray( new ClassExpression[0] );
+		}
+
+		public List<ClassExpression> getOperands() { return Collections.unmodifiableList( Arrays.asList( operands ) ); }
+
+		@Override
+		public boolean evaluate( MatchContext _context ) {
+			for ( ClassExpression operand : operands ) {
+				if ( !operand.evaluate( _context ) ) return false;
+			}
+			return true;
+		}
+
+		@Override
+		public void collectSmarts( Collection<String> _smarts ) {
+			for ( ClassExpression operand : operands ) operand.collectSmarts( _smarts );
+		}
+
+		@Override
+		public long requiredFeatures() {
+			long features = 0L;
+			for ( ClassExpression operand : operands ) features |= operand.requiredFeatures();
+			return features;
+		}
+
+		@Override
+		public ClassExpression ordered( QueryProfile _profile ) {
+			return new And( orderedOperands( operands, _profile, false ) );
+		}
+
+		@Override
+		public double probability( QueryProfile _profile ) {
+			double pTrue = 1.0;
+			for ( ClassExpression operand : operands ) pTrue *= operand.probability( _profile );
+			return pTrue;
+		}
+
+		@Override
+		public double cost( QueryProfile _profile ) {
+			// later operands are only evaluated if all before are true
+			double cost   = 0.0;
+			double pReach = 1.0;
+			for ( ClassExpression operand : operands ) {
+				cost   += pReach * operand.cost( _profile );
+				pReach *= operand.probability( _profile );
+			}
+			return cost;
+		}
+	}
+
+	// ==== class Not =========================================================
+	/**
+	 * True if the operand is false.
+	 */
+	public final static class Not extends ClassExpression {
+
+		private final ClassExpression operand;
+
+		public Not( ClassExpression _operand ) {
+			operand = _operand;
+		}
+
+		public ClassExpression getOperand() { return operand; }
+
+		@Override
+		public boolean evaluate( MatchContext _context ) {
+			return !operand.evaluate( _context );
+		}
+
+		@Override
+		public void collectSmarts( Collection<String> _smarts ) {
+			operand.collectSmarts( _smarts );
+		}
+
+		@Override
+		public long requiredFeatures() {
+			return 0L;
+		}
+
+		@Override
+		public ClassExpression ordered( QueryProfile _profile ) {
+			return new Not( operand.ordered( _profile ) );
+		}
+
+		@Override
+		public double probability( QueryProfile _profile ) {
+			return 1.0 - operand.probability( _profile );
+		}
+
+		@Override
+		public double cost( QueryProfile _profile ) {
+			return operand.cost( _profile );
+		}
+	}
+
+	// ==== class StereoAnd ===================================================
+	/**
+	 * True if the stereospecific query (checked with CDK) and the non-stereospecific
+	 * part (checked with the selected module) are true. The cheaper non-stereospecific
+	 * part is checked first.
+	 */
+	public final static class StereoAnd extends ClassExpression {
+
+		private final Match           stereo;
+		private final ClassExpression plain;
+
+		public StereoAnd( Match _stereo, ClassExpression _plain ) {
+			stereo = _stereo;
+			plain  = _plain;
+		}
+
+		public Match           getStereo() { return stereo; }
+		public ClassExpression getPlain()  { return plain; }
+
+		@Override
+		public boolean evaluate( MatchContext _context ) {
+			return plain.evaluate( _context ) && _context.matchesStereo( stereo.getQueryId() );
+		}
+
+		@Override
+		public void collectSmarts( Collection<String> _smarts ) {
+			stereo.collectSmarts( _smarts );
+			plain.collectSmarts( _smarts );
+		}
+
+		@Override
+		public long requiredFeatures() {
+			return stereo.requiredFeatures() | plain.requiredFeatures();
+		}
+
+		@Override
+		public ClassExpression ordered( QueryProfile _profile ) {
+			return new StereoAnd( stereo, plain.ordered( _profile ) );
+		}
+
+		@Override
+		public double probability( QueryProfile _profile ) {
+			return plain.probability( _profile ) * stereo.probability( _profile );
+		}
+
+		@Override
+		public double cost( QueryProfile _profile ) {
+			return plain.cost( _profile ) + plain.probability( _profile ) * stereo.cost( _profile );
+		}
+	}
+
+	// ==== class Count =======================================================
+	/**
+	 * True if the query occurs exactly (EXACT) or at least (MORE) threshold times.
+	 */
+	public final static class Count extends ClassExpression {
+
+		public enum Mode { EXACT, MORE }
+
+		private final Mode   mode;
+		private final int    threshold;
+		private final String smarts;
+		private final int    queryId;
+
+		public Count( Mode _mode, int _threshold, String _smarts, SmartsTable _smartsTable ) {
+			this( _mode, _threshold, _smarts, _smartsTable.intern( _smarts ) );
+		}
+
+		/** with the id of a restored {@link SmartsTable} */
+		Count( Mode _mode, int _threshold, String _smarts, int _queryId ) {
+			mode      = _mode;
+			threshold = _threshold;
+			smarts    = _smarts;
+			queryId   = _queryId;
+		}
+
+		public Mode   getMode()      { return mode; }
+		public int    getThreshold() { return threshold; }
+		public String getSmarts()    { return smarts; }
+		public int    getQueryId()   { return queryId; }
+
+		@Override
+		public boolean evaluate( MatchContext _context ) {
+			// too few atoms for threshold occurrences
+			if ( _context.maxCount( queryId ) < threshold ) return false;
+			// counting beyond threshold + 1 can not change the result
+			final int count = _context.count( queryId, mode == Mode.EXACT ? threshold + 1 : threshold );
+			return mode == Mode.EXACT ? count == threshold : count >= threshold;
+		}
+
+		@Override
+		public void collectSmarts( Collection<String> _smarts ) {
+			_smarts.add( smarts );
+		}
+
+		@Override
+		public long requiredFeatures() {
+			return threshold > 0 ? ClassExpression.requiredFeatures( smarts ) : 0L;
+		}
+
+		@Override
+		public ClassExpression ordered( QueryProfile _profile ) {
+			return this;
+		}
+
+		@Override
+		public double probability( QueryProfile _profile ) {
+			// the profile knows how often the query was found, not how often it reached the threshold
+			return _profile.hitRate( smarts );
+		}
+
+		@Override
+		public double cost( QueryProfile _profile ) {
+			return _profile.cost( smarts );
+		}
+	}
+
+	// ==== class Match =======================================================
+	/**
+	 * True if the query is found in the molecule.
+	 */
+	public final static class Match extends ClassExpression {
+
+		private final String smarts;
+		private final int    queryId;
+
+		public Match( String _smarts, SmartsTable _smartsTable ) {
+			this( _smarts, _smartsTable.intern( _smarts ) );
+		}
+
+		/** with the id of a restored {@link SmartsTable} */
+		Match( String _smarts, int _queryId ) {
+			smarts  = _smarts;
+			queryId = _queryId;
+		}
+
+		public String getSmarts()  { return smarts; }
+		/** id of the SMARTS in the {@link SmartsTable} of the ontology */
+		public int    getQueryId() { return queryId; }
+
+		@Override
+		public boolean evaluate( MatchContext _context ) {
+			return _context.matches( queryId );
+		}
+
+		@Override
+		public void collectSmarts( Collection<String> _smarts ) {
+			_smarts.add( smarts );
+		}
+
+		@Override
+		public long requiredFeatures() {
+			return ClassExpression.requiredFeatures( smarts );
+		}
+
+		@Override
+		public ClassExpression ordered( QueryProfile _profile ) {
+			return this;
+		}
+
+		@Override
+		public double probability( QueryProfile _profile ) {
+			return _profile.hitRate( smarts );
+		}
+
+		@Override
+		public double cost( QueryProfile _profile ) {
+			return _profile.cost( smarts );
+		}
+	}
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Logger;
+
+/**
+ * is_a hierarchy of an ontology as read from the OBO, indexed once for the output side
+ * of the assignment: child relations, the root and the ancestor and offspring closures
+ * used to drop incomplete and non-leaf classes.
+ * <p>
+ * All relations are stored as compressed sparse rows over dense indices. Inverse is_a
+ * relations are derived in one pass over the parent rows if the OBO has no has_a relations
+ * at all. The hierarchy is checked to
+ * be acyclic and to have exactly one root, and violations are reported with the classes
+ * involved. Closures are computed in parallel with fork/join, every class on its own with
+ * a visited set, so that has_a cycles do not hang the offspring closure. The visited set
+ * and the stacks are allocated once per worker thread and reset after every class.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version, replaces the nested loops of the child map generation</li>
+ *       <li>child relations derived if there are no has_a relations at all, closure buffers per worker thread</li>
+ *       <li>closures as compressed bitmaps in depth first numbering, see {@link ClosureIndex}</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public final class ClassHierarchy {
+
+	private final static Logger LOG = Logger.getLogger( ClassHierarchy.class.getName() );
+
+	/** classes per fork/join task */
+	private final static int CLOSURE_BATCH = 256;
+
+	private final String[]            ids;
+	private final int[]               parentOffsets;
+	private final int[]               parents;
+	private final int[]               childOffsets;
+	private final int[]               children;
+	private final boolean             childMapDerived;
+	private final int                 root;
+
+	private ClassHierarchy( String[] _ids, int[][] _parentRows, int[][] _childRows, boolean _childMapDerived, int _root ) {
+		ids           = _ids;
+		parentOffsets = _parentRows[0];
+		parents       = _parentRows[1];
+		childOffsets  = _childRows[0];
+		children      = _childRows[1];
+		childMapDerived = _childMapDerived;
+		root          = _root;
+	}
+
+	/**
+	 * Indexes the is_a relations and checks them.
+	 *
+	 * @param _ocidClass2parentMap  is_a relations of all classes
+	 * @param _ocidClass2childMap   has_a relations, used as child relations unless there are none
+	 * @param _ocidClass2nameMap    names for diagnostics
+	 *
+	 * @return
+	 *
+	 * @throws IOException  if the is_a relations contain a cycle or there is not exactly one
+	 *                      class without parents
+	 */
+	public static ClassHierarchy build( Map<String,Set<String>> _ocidClass2parentMap,
+										Map<String,Set<String>> _ocidClass2childMap,
+										Map<String,String> _ocidClass2nameMap ) throws IOException {
+
+		final Map<String,Integer> indices = new HashMap<>();
+		final List<String>        idList  = new ArrayList<>();
+		addIds( indices, idList, _ocidClass2parentMap );
+		addIds( indices, idList, _ocidClass2childMap );
+		final String[] ids = idList.toArray( new String[ 0 ] );
+
+		final int[][] parentRows = rows( ids.length, indices, _ocidClass2parentMap );
+		// the OBO reader keeps an empty child set for every class
+		final boolean childMapDerived = !hasRelations( _ocidClass2childMap );
+		final int[][] childRows  = childMapDerived
+				? invert( parentRows, ids.length ) : rows( ids.length, indices, _ocidClass2childMap );
+
+		// referenced but never defined, such classes are roots of nothing
+		int nUndefined = 0;
+		for ( String id : ids ) {
+			if ( !_ocidClass2parentMap.containsKey( id ) ) nUndefined++;
+		}
+		if ( nUndefined > 0 ) LOG.warning( nUndefined + " classes are referenced by is_a or has_a but not defined" );
+
+		checkAcyclic( ids, parentRows, _ocidClass2nameMap );
+
+		final List<String> roots = new ArrayList<>();
+		for ( Map.Entry<String,Set<String>> entry : _ocidClass2parentMap.entrySet() ) {
+			if ( entry.getValue().isEmpty() ) roots.add( entry.getKey() );
+		}
+		if ( roots.isEmpty() ) {
+			throw new IOException( "no root concept found in compound classes OBO" );
+		} else if ( roots.size() > 1 ) {
+			throw new IOException( "error - more than 1 root concept found in compound classes OBO: " + roots.size()
+					+ " " + describe( roots, _ocidClass2nameMap ) );
+		}
+		LOG.info( "root: " + roots.get( 0 ) );
+
+		final ClassHierarchy hierarchy = new ClassHierarchy( ids, parentRows, childRows, childMapDerived, indices.get( roots.get( 0 ) ) );
+		LOG.info( "class hierarchy: " + ids.length + " classes, " + hierarchy.parents.length + " is_a relations, "
+				+ hierarchy.children.length + ( childMapDerived ? " inverse is_a" : " has_a" ) + " relations" );
+		return hierarchy;
+	}
+
+	// ---- accessors ---------------------------------------------------------
+
+	public String root() { return ids[ root ]; }
+
+	/**
+	 * @return  <code>true</code> if the OBO has no has_a relations and the child relations
+	 *          are the inverse is_a relations, see {@link #childMap()}
+	 */
+	public boolean isChildMapDerived() { return childMapDerived; }
+
+	/**
+	 * @return  child relations as used by the hierarchy, for every class with children
+	 */
+	public Map<String,Set<String>> childMap() {
+		final Map<String,Set<String>> childMap = new HashMap<>();
+		for ( int i = 0; i < ids.length; i++ ) {
+			if ( childOffsets[ i ] == childOffsets[ i + 1 ] ) continue;
+			final Set<String> childSet = new HashSet<>();
+			for ( int edge = childOffsets[ i ]; edge < childOffsets[ i + 1 ]; edge++ ) childSet.add( ids[ children[ edge ] ] );
+			childMap.put( ids[ i ], childSet );
+		}
+		return childMap;
+	}
+
+	/**
+	 * Computes the transitive ancestors and offsprings of every class in parallel. Classes
+	 * are renumbered in depth first preorder from the root over the child relations, so that
+	 * the offsprings of a class are mostly one run of indices and compress well.
+	 *
+	 * @param _nThreads
+	 *
+	 * @return  closures of all classes as compressed bitmaps
+	 */
+	public ClosureIndex closureIndex( int _nThreads ) {
+
+		final int   n     = ids.length;
+		final int[] order = preorder();
+		final int[] index = new int[ n ];
+		final String[] orderedIds = new String[ n ];
+		for ( int k = 0; k < n; k++ ) {
+			index[ order[ k ] ] = k;
+			orderedIds[ k ]     = ids[ order[ k ] ];
+		}
+		final CompressedBitmap[] ancestors  = new CompressedBitmap[ n ];
+		final CompressedBitmap[] offsprings = new CompressedBitmap[ n ];
+
+		final ThreadLocal<ClosureBuffers> buffers = ThreadLocal.withInitial( () -> new ClosureBuffers( n ) );
+		final ForkJoinPool forkJoinPool = new ForkJoinPool( _nThreads );
+		try {
+			forkJoinPool.invoke( new ClosureTask( 0, n, index, ancestors, offsprings, buffers ) );
+		} finally {
+			forkJoinPool.shutdown();
+		}
+		return new ClosureIndex( orderedIds, ancestors, offsprings );
+	}
+
+	/**
+	 * @return  class indices in depth first preorder from the root, classes not reached from
+	 *          the root appended in index order
+	 */
+	private int[] preorder() {
+		final int    n       = ids.length;
+		final int[]  order   = new int[ n ];
+		final long[] visited = Bits.create( n );
+		final int[]  stack   = new int[ n ];
+		int nOrdered = 0;
+		int top = 0;
+		stack[ top++ ] = root;
+		Bits.set( visited, root );
+		while ( top > 0 ) {
+			final int node = stack[ --top ];
+			order[ nOrdered++ ] = node;
+			// pushed in reverse so that the first child is numbered first
+			for ( int edge = childOffsets[ node + 1 ] - 1; edge >= childOffsets[ node ]; edge-- ) {
+				final int child = children[ edge ];
+				if ( Bits.get( visited, child ) ) continue;
+				Bits.set( visited, child );
+				stack[ top++ ] = child;
+			}
+		}
+		for ( int i = 0; i < n; i++ ) {
+			if ( !Bits.get( visited, i ) ) order[ nOrdered++ ] = i;
+		}
+		return order;
+	}
+
+	/**
+	 * @return  classes reached from provided class over provided rows in the numbering of
+	 *          <code>_index</code>, excluding the class itself unless it is on a cycle
+	 */
+	private static CompressedBitmap closure( int _idx, int[] _offsets, int[] _targets, int[] _index,
+											 long[] _visited, int[] _stack, int[] _reached ) {
+		int nReached = 0;
+		int top = 0;
+		_stack[ top++ ] = _idx;
+		while ( top > 0 ) {
+			final int node = _stack[ --top ];
+			for ( int edge = _offsets[ node ]; edge < _offsets[ node + 1 ]; edge++ ) {
+				final int target = _targets[ edge ];
+				if ( Bits.get( _visited, _index[ target ] ) ) continue;
+				Bits.set( _visited, _index[ target ] );
+				_reached[ nReached++ ] = _index[ target ];
+				_stack[ top++ ] = target;
+			}
+		}
+		final CompressedBitmap closure = CompressedBitmap.of( _visited );
+		// reset only what was touched
+		for ( int k = 0; k < nReached; k++ ) Bits.clear( _visited, _reached[ k ] );
+		return closure;
+	}
+
+	// ==== class ClosureTask =================================================
+	/**
+	 * Splits the class range until a batch is small enough to be closed by one thread.
+	 */
+	private final class ClosureTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int                from;
+		private final int                to;
+		private final int[]              index;
+		private final CompressedBitmap[] ancestors;
+		private final CompressedBitmap[] offsprings;
+		private final ThreadLocal<ClosureBuffers> buffers;
+
+		private ClosureTask( int _from, int _to, int[] _index, CompressedBitmap[] _ancestors, CompressedBitmap[] _offsprings,
+							 ThreadLocal<ClosureBuffers> _buffers ) {
+			from       = _from;
+			to         = _to;
+			index      = _index;
+			ancestors  = _ancestors;
+			offsprings = _offsprings;
+			buffers    = _buffers;
+		}
+
+		@Override
+		protected void compute() {
+			if ( to - from > CLOSURE_BATCH ) {
+				final int middle = ( from + to ) >>> 1;
+				invokeAll( new ClosureTask( from, middle, index, ancestors, offsprings, buffers ),
+						   new ClosureTask( middle, to, index, ancestors, offsprings, buffers ) );
+				return;
+			}
+			final ClosureBuffers buffer = buffers.get();
+			for ( int i = from; i < to; i++ ) {
+				ancestors[ index[ i ] ]  = closure( i, parentOffsets, parents, index, buffer.visited, buffer.stack, buffer.reached );
+				offsprings[ index[ i ] ] = closure( i, childOffsets, children, index, buffer.visited, buffer.stack, buffer.reached );
+			}
+		}
+	}
+	// ========================================================================
+
+	// ==== class ClosureBuffers ==============================================
+	/**
+	 * Buffers of one worker thread, {@link #closure} leaves the visited set cleared.
+	 */
+	private final static class ClosureBuffers {
+
+		private final long[] visited;
+		private final int[]  stack;
+		private final int[]  reached;
+
+		private ClosureBuffers( int _n ) {
+			visited = Bits.create( _n );
+			stack   = new int[ _n + 1 ];
+			reached = new int[ _n ];
+		}
+	}
+	// ========================================================================
+
+	// ---- build helpers -----------------------------------------------------
+
+	/**
+	 * @return  <code>true</code> if any class of provided relation map has a target
+	 */
+	private static boolean hasRelations( Map<String,Set<String>> _map ) {
+		for ( Set<String> targets : _map.values() ) {
+			if ( !targets.isEmpty() ) return true;
+		}
+		return false;
+	}
+
+	private static void addIds( Map<String,Integer> _indices, List<String> _idList, Map<String,Set<String>> _map ) {
+		for ( Map.Entry<String,Set<String>> entry : _map.entrySet() ) {
+			addId( _indices, _idList, entry.getKey() );
+			for ( String id : entry.getValue() ) addId( _indices, _idList, id );
+		}
+	}
+
+	private static void addId( Map<String,Integer> _indices, List<String> _idList, String _id ) {
+		if ( _indices.putIfAbsent( _id, _idList.size() ) == null ) _idList.add( _id );
+	}
+
+	/**
+	 * @return  CSR offsets and targets for provided relation map
+	 */
+	private static int[][] rows( int _n, Map<String,Integer> _indices, Map<String,Set<String>> _map ) {
+		final int[] offsets = new int[ _n + 1 ];
+		for ( Map.Entry<String,Set<String>> entry : _map.entrySet() ) {
+			offsets[ _indices.get( entry.getKey() ) + 1 ] = entry.getValue().size();
+		}
+		for ( int i = 0; i < _n; i++ ) offsets[ i + 1 ] += offsets[ i ];
+		final int[] edges = new int[ offsets[ _n ] ];
+		for ( Map.Entry<String,Set<String>> entry : _map.entrySet() ) {
+			int edgeIdx = offsets[ _indices.get( entry.getKey() ) ];
+			for ( String id : entry.getValue() ) edges[ edgeIdx++ ] = _indices.get( id );
+		}
+		return new int[][] { offsets, edges };
+	}
+
+	/**
+	 * @return  inverse of provided CSR relation, built by counting and one fill pass
+	 */
+	private static int[][] invert( int[][] _rows, int _n ) {
+		final int[] offsets = new int[ _n + 1 ];
+		for ( int target : _rows[1] ) offsets[ target + 1 ]++;
+		for ( int i = 0; i < _n; i++ ) offsets[ i + 1 ] += offsets[ i ];
+		final int[] edges = new int[ offsets[ _n ] ];
+		final int[] fill  = Arrays.copyOf( offsets, _n );
+		for ( int i = 0; i < _n; i++ ) {
+			for ( int edge = _rows[0][ i ]; edge < _rows[0][ i + 1 ]; edge++ ) edges[ fill[ _rows[1][ edge ] ]++ ] = i;
+		}
+		return new int[][] { offsets, edges };
+	}
+
+	/**
+	 * Kahn's algorithm over the parent rows. Classes left over all have a parent on or above
+	 * a cycle, following such parents from any of them runs into one.
+	 *
+	 * @throws IOException  naming the classes of one cycle
+	 */
+	private static void checkAcyclic( String[] _ids, int[][] _parentRows, Map<String,String> _nameMap ) throws IOException {
+
+		final int     n        = _ids.length;
+		final int[][] subRows  = invert( _parentRows, n );
+		final int[]   inDegree = new int[ n ];
+		final int[]   queue    = new int[ n ];
+		int tail = 0;
+		for ( int i = 0; i < n; i++ ) {
+			inDegree[ i ] = _parentRows[0][ i + 1 ] - _parentRows[0][ i ];
+			if ( inDegree[ i ] == 0 ) queue[ tail++ ] = i;
+		}
+		for ( int head = 0; head < tail; head++ ) {
+			final int node = queue[ head ];
+			for ( int edge = subRows[0][ node ]; edge < subRows[0][ node + 1 ]; edge++ ) {
+				if ( --inDegree[ subRows[1][ edge ] ] == 0 ) queue[ tail++ ] = subRows[1][ edge ];
+			}
+		}
+		if ( tail == n ) return;
+
+		// walk up unordered parents until a class repeats
+		int node = 0;
+		while ( inDegree[ node ] == 0 ) node++;
+		final int[] position = new int[ n ];
+		Arrays.fill( position, -1 );
+		final List<String> path = new ArrayList<>();
+		while ( position[ node ] < 0 ) {
+			position[ node ] = path.size();
+			path.add( _ids[ node ] );
+			int next = -1;
+			for ( int edge = _parentRows[0][ node ]; edge < _parentRows[0][ node + 1 ]; edge++ ) {
+				if ( inDegree[ _parentRows[1][ edge ] ] > 0 ) {
+					next = _parentRows[1][ edge ];
+					break;
+				}
+			}
+			node = next;
+		}
+		final List<String> cycle = new ArrayList<>( path.subList( position[ node ], path.size() ) );
+		cycle.add( _ids[ node ] );
+		throw new IOException( "is_a hierarchy contains a cycle, " + ( n - tail ) + " classes can not be ordered, cycle: "
+				+ String.join( " is_a ", describe( cycle, _nameMap ) ) );
+	}
+
+	private static List<String> describe( List<String> _ids, Map<String,String> _nameMap ) {
+		final List<String> described = new ArrayList<>();
+		for ( String id : _ids ) {
+			final String name = _nameMap.get( id );
+			described.add( name != null ? id + " (" + name + ")" : id );
+		}
+		return described;
+	}
+}
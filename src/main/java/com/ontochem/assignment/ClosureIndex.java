@@ -0,0 +1,106 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Transitive ancestors and offsprings of all ontology classes as {@link CompressedBitmap}s
+ * over dense class indices, replacing one set of ids per class. Indices are assigned in
+ * depth first preorder of the hierarchy (see {@link ClassHierarchy#closureIndex(int)}), so
+ * offsprings are mostly runs and ancestors short arrays.
+ * <p>
+ * The index is immutable and shared by all threads. Queries combine a closure with a
+ * per-thread <code>long[]</code> bitset of the same indices, see {@link Bits}.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public final class ClosureIndex {
+
+	private final static Logger LOG = Logger.getLogger( ClosureIndex.class.getName() );
+
+	private final String[]            ids;
+	private final Map<String,Integer> indices;
+	private final CompressedBitmap[]  ancestors;
+	private final CompressedBitmap[]  offsprings;
+
+	ClosureIndex( String[] _ids, CompressedBitmap[] _ancestors, CompressedBitmap[] _offsprings ) {
+		ids        = _ids;
+		ancestors  = _ancestors;
+		offsprings = _offsprings;
+		indices    = new HashMap<>( 2 * _ids.length );
+		for ( int i = 0; i < _ids.length; i++ ) indices.put( _ids[ i ], i );
+
+		long ancestorBytes  = 0;
+		long offspringBytes = 0;
+		for ( int i = 0; i < _ids.length; i++ ) {
+			ancestorBytes  += _ancestors[ i ].sizeInBytes();
+			offspringBytes += _offsprings[ i ].sizeInBytes();
+		}
+		LOG.info( "closure index: " + _ids.length + " classes, " + ancestorBytes + " bytes of ancestor closures, "
+				+ offspringBytes + " bytes of offspring closures" );
+	}
+
+	// ---- accessors ---------------------------------------------------------
+
+	public int size() { return ids.length; }
+
+	public String id( int _idx ) { return ids[ _idx ]; }
+
+	/**
+	 * @return  index of provided class id, -1 if unknown
+	 */
+	public int indexOf( String _id ) {
+		final Integer idx = indices.get( _id );
+		return idx != null ? idx : -1;
+	}
+
+	public CompressedBitmap ancestorsOf( int _idx ) { return ancestors[ _idx ]; }
+
+	public CompressedBitmap offspringsOf( int _idx ) { return offsprings[ _idx ]; }
+
+	/**
+	 * @return  <code>true</code> if <code>_ancestor</code> is a transitive parent of <code>_idx</code>
+	 */
+	public boolean isAncestor( int _ancestor, int _idx ) {
+		return ancestors[ _idx ].contains( _ancestor );
+	}
+
+	/**
+	 * @return  <code>true</code> if any ancestor of provided class is set in provided bitset
+	 */
+	public boolean ancestorsIntersect( int _idx, long[] _bits ) {
+		return ancestors[ _idx ].intersects( _bits );
+	}
+
+	/**
+	 * @return  <code>true</code> if any offspring of provided class is set in provided bitset
+	 */
+	public boolean offspringsIntersect( int _idx, long[] _bits ) {
+		return offsprings[ _idx ].intersects( _bits );
+	}
+
+	/**
+	 * @return  bitset of the classes whose id matches provided predicate
+	 */
+	public long[] select( Predicate<String> _predicate ) {
+		final long[] bits = Bits.create( ids.length );
+		for ( int i = 0; i < ids.length; i++ ) {
+			if ( _predicate.test( ids[ i ] ) ) Bits.set( bits, i );
+		}
+		return bits;
+	}
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.isomorphism.Pattern;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtom;
+import org.openscience.cdk.isomorphism.matchers.IQueryAtomContainer;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smarts.SmartsPattern;
+
+import com.actelion.research.chem.StereoMolecule;
+
+import ambit2.smarts.IsomorphismTester;
+import ambit2.smarts.SmartsManager;
+import ambit2.smarts.SmartsParser;
+import ambit2.smarts.groups.GroupMatch;
+
+/**
+ * A single SMARTS query compiled once for the CDK and Ambit substructure search.
+ * <p>
+ * Neither the Ambit {@link SmartsManager} and {@link GroupMatch} nor the CDK {@link Pattern}
+ * may be used by several threads at the same time, therefore each worker thread gets its own matcher
+ * instance which is created on first use and then reused for every molecule.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *       <li>feature signature prefilter</li>
+ *       <li>path fingerprint screen and screen statistics</li>
+ *       <li>cached group matcher for occurrence counting</li>
+ *       <li>occurrence counting stops at the limit instead of enumerating all positions</li>
+ *       <li>stereo specificity flag</li>
+ *       <li>hit rate and match cost statistics</li>
+ *       <li>optional compiled matcher with cross-check against the general matcher</li>
+ *       <li>VF2 matcher for the vf2 engine</li>
+ *       <li>OCL idcode fragments for the ocl engine</li>
+ *       <li>compiled queries searched with the VF2 matcher</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public class CompiledQuery {
+
+	private final static Logger LOG = Logger.getLogger( CompiledQuery.class.getName() );
+
+	private final String           smarts;
+	private final boolean          valid;
+	private final FeatureSignature signature;
+	private final PathFingerprint  fingerprint;
+	private final boolean          stereoSpecific;
+	private final StereoMolecule   oclFragment;
+	private final long[]           oclFragmentIndex;
+
+	/** screening statistics, see {@link #screenStatistics()} */
+	private final LongAdder nSearches          = new LongAdder();
+	private final LongAdder nSignatureScreened = new LongAdder();
+	private final LongAdder nPathScreened      = new LongAdder();
+
+	/** evaluation statistics, see {@link #evaluationStatistics()} */
+	private final LongAdder nEvaluations       = new LongAdder();
+	private final LongAdder nHits              = new LongAdder();
+	private final LongAdder nNanos             = new LongAdder();
+
+	/** cross-check statistics, see {@link #crossCheckStatistics()} */
+	private final LongAdder nCrossChecks       = new LongAdder();
+	private final LongAdder nMismatches        = new LongAdder();
+
+	private final ThreadLocal<Pattern>       cdkPatterns;
+	private final ThreadLocal<SmartsManager> ambitManagers;
+	private final ThreadLocal<GroupCounter>  groupCounters;
+
+	/** set at construction for the vf2 engine or once at ontology load before any search, see {@link #compileMatcher(int)} */
+	private Vf2Matcher      vf2Matcher;
+	private boolean         crossChecked;
+
+	/**
+	 * Compiles provided SMARTS for the given chemistry module. The SMARTS is parsed once
+	 * here to report syntax errors at ontology load time instead of once per molecule.
+	 * An OCL idcode, see {@link OclFragments#isIdcode(String)}, is decoded to a fragment.
+	 *
+	 * @param _smarts
+	 * @param _module  lower case name of chemical library used (e.g. cdk, ambit),
+	 *                 see {@link ChemLib}
+	 */
+	public CompiledQuery( String _smarts, String _module ) {
+
+		smarts        = _smarts;
+		cdkPatterns   = ThreadLocal.withInitial( () -> SmartsPattern.create( smarts ).setPrepare( false ) );
+		ambitManagers = ThreadLocal.withInitial( () -> createAmbitManager( smarts ) );
+		groupCounters = ThreadLocal.withInitial( () -> new GroupCounter( smarts ) );
+
+		final boolean isIdcode = OclFragments.isIdcode( smarts );
+		StereoMolecule fragment      = null;
+		long[]         fragmentIndex = null;
+		boolean isValid = true;
+		try {
+			if ( isIdcode ) {
+				fragment      = OclFragments.parseFragment( smarts );
+				fragmentIndex = OclFragments.index( fragment );
+			// the vf2 and ocl engines search queries they can not compile with Ambit
+			} else if ( ChemLib.CHEMLIB_AMBIT.equals( _module ) || ChemLib.CHEMLIB_VF2.equals( _module )
+					|| ChemLib.CHEMLIB_OCL.equals( _module ) ) {
+				String error = ambitManagers.get().getErrors();
+				if ( ( error != null ) && ( error.length() > 1 ) ) {
+					LOG.warning( "Ambit smarts error: " + error + " smarts: " + smarts );
+					isValid = false;
+				}
+			} else {
+				cdkPatterns.get();
+			}
+		} catch ( Exception e ) {
+			LOG.warning( "ERROR: could not compile smarts: " + smarts + " " + e );
+			isValid = false;
+		}
+		valid            = isValid;
+		oclFragment      = isValid ? fragment : null;
+		oclFragmentIndex = isValid ? fragmentIndex : null;
+
+		final IAtomContainer query = isIdcode ? null : FeatureSignature.parseQuery( smarts );
+		signature   = FeatureSignature.ofQuery( query );
+		fingerprint = PathFingerprint.ofQuery( query );
+		stereoSpecific = FeatureSignature.requiresStereo( query );
+		vf2Matcher     = valid && ChemLib.CHEMLIB_VF2.equals( _module ) ? Vf2Matcher.compile( smarts, Integer.MAX_VALUE ) : null;
+	}
+
+	public String  getSmarts() { return smarts; }
+	public boolean isValid()   { return valid; }
+
+	/**
+	 * @return  features every match of this query needs, used to skip the search
+	 *          for molecules lacking them
+	 */
+	public FeatureSignature getSignature() { return signature; }
+
+	/**
+	 * @return  definite paths and rings of this query
+	 */
+	public PathFingerprint getFingerprint() { return fingerprint; }
+
+	/**
+	 * @return  <code>true</code> if CDK can only match this query in a molecule with
+	 *          stereo elements
+	 */
+	public boolean isStereoSpecific() { return stereoSpecific; }
+
+	/**
+	 * Checks the cheap screens of this query against a molecule and records the outcome.
+	 *
+	 * @param _mol  valid molecule
+	 *
+	 * @return  <code>false</code> if the query can not match provided molecule
+	 *
+	 * @throws Exception
+	 */
+	public boolean passesScreens( PreparedMolecule _mol ) throws Exception {
+		nSearches.increment();
+		if ( !signature.isSatisfiedBy( _mol.getSignature() ) ) {
+			nSignatureScreened.increment();
+			return false;
+		}
+		if ( !fingerprint.isSatisfiedBy( _mol.getFingerprint() ) ) {
+			nPathScreened.increment();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return  number of searches, of searches screened out by the feature signature
+	 *          and of searches screened out by the path fingerprint
+	 */
+	public long[] screenStatistics() {
+		return new long[] { nSearches.sum(), nSignatureScreened.sum(), nPathScreened.sum() };
+	}
+
+	/**
+	 * Records the outcome of one evaluation of this query for a molecule.
+	 *
+	 * @param _hit    <code>true</code> if the query was found
+	 * @param _nanos  time taken including screens
+	 */
+	public void recordEvaluation( boolean _hit, long _nanos ) {
+		nEvaluations.increment();
+		if ( _hit ) nHits.increment();
+		nNanos.add( _nanos );
+	}
+
+	/**
+	 * @return  number of evaluations, of evaluations finding the query and the total
+	 *          time of all evaluations in nanoseconds, see {@link QueryProfile}
+	 */
+	public long[] evaluationStatistics() {
+		return new long[] { nEvaluations.sum(), nHits.sum(), nNanos.sum() };
+	}
+
+	/**
+	 * Compiles this query to a {@link Vf2Matcher} used instead of the general matcher,
+	 * a query the compiler does not support keeps the general matcher. Queries of the vf2
+	 * engine are compiled regardless of their size.
+	 *
+	 * @param _maxAtoms  largest query compiled
+	 *
+	 * @return  <code>true</code> if the query is searched with a VF2 matcher
+	 */
+	boolean compileMatcher( int _maxAtoms ) {
+		if ( vf2Matcher == null && valid ) vf2Matcher = Vf2Matcher.compile( smarts, _maxAtoms );
+		return vf2Matcher != null;
+	}
+
+	/**
+	 * @param _crossCheck  search also with the general matcher and count differing results,
+	 *                     see {@link #crossCheckStatistics()}
+	 */
+	void setCrossChecked( boolean _crossCheck ) {
+		crossChecked = _crossCheck;
+	}
+
+	/**
+	 * @return  VF2 matcher of the vf2 engine or of a compiled query, <code>null</code> if
+	 *          the query is searched by the general matcher
+	 */
+	public Vf2Matcher getVf2Matcher() { return vf2Matcher; }
+
+	/**
+	 * @return  OCL fragment of an idcode query or <code>null</code> for a SMARTS
+	 */
+	public StereoMolecule getOclFragment() { return oclFragment; }
+
+	/**
+	 * @return  fragment fingerprint index of the OCL fragment
+	 */
+	public long[] getOclFragmentIndex() { return oclFragmentIndex; }
+
+	/**
+	 * @return  <code>true</code> if the compiled and VF2 matchers are checked against the
+	 *          general matcher
+	 */
+	public boolean isCrossChecked() { return crossChecked; }
+
+	/**
+	 * Records the outcome of one search with both the compiled and the general matcher.
+	 *
+	 * @param _compiledHit  result of the compiled matcher
+	 * @param _generalHit   result of the general matcher
+	 */
+	public void recordCrossCheck( boolean _compiledHit, boolean _generalHit ) {
+		nCrossChecks.increment();
+		if ( _compiledHit != _generalHit ) nMismatches.increment();
+	}
+
+	/**
+	 * @return  number of cross-checked searches and of searches where the compiled matcher
+	 *          differed from the general matcher
+	 */
+	public long[] crossCheckStatistics() {
+		return new long[] { nCrossChecks.sum(), nMismatches.sum() };
+	}
+
+	/**
+	 * @return  CDK pattern owned by the calling thread, expects a target prepared
+	 *          by {@link PreparedMolecule#getCdkMolecule()}
+	 */
+	public Pattern getCdkPattern() {
+		return cdkPatterns.get();
+	}
+
+	/**
+	 * @return  Ambit SMARTS manager owned by the calling thread, query already set
+	 */
+	public SmartsManager getAmbitManager() {
+		return ambitManagers.get();
+	}
+
+	/**
+	 * @return  Ambit group counter owned by the calling thread, used to count occurrences
+	 */
+	public GroupCounter getGroupCounter() {
+		return groupCounters.get();
+	}
+
+	private static SmartsManager createAmbitManager( String _smarts ) {
+		SmartsManager man = new SmartsManager( SilentChemObjectBuilder.getInstance() );
+		man.setQuery( _smarts );
+		return man;
+	}
+
+	@Override
+	public String toString() {
+		return smarts;
+	}
+
+	// ==== class GroupCounter ================================================
+	/**
+	 * Counts the positions a query is found at like {@link GroupMatch#matchCount(IAtomContainer)},
+	 * i.e. the target atoms the first query atom is mapped to by at least one stereo checked
+	 * isomorphism, but stops at a limit: a caller deciding "at least n" needs n positions,
+	 * not all of them.
+	 * <p>
+	 * A query Ambit can not parse is invalid and found at no position, like with
+	 * {@link GroupMatch}. A single atom query is matched atom by atom as there is no
+	 * isomorphism to search.
+	 */
+	public final static class GroupCounter {
+
+		private final SmartsParser        parser;
+		private final IQueryAtomContainer query;
+		private final IsomorphismTester   isoTester;
+
+		private GroupCounter( String _smarts ) {
+			parser    = new SmartsParser();
+			IQueryAtomContainer parsed = parser.parse( _smarts );
+			parser.setNeededDataFlags();
+			final String error = parser.getErrorMessages();
+			if ( ( error != null ) && !error.trim().isEmpty() ) {
+				LOG.warning( "Ambit smarts error: " + error.trim() + " smarts: " + _smarts + ", query is not counted" );
+				parsed = null;
+			}
+			query     = parsed;
+			isoTester = new IsomorphismTester();
+			isoTester.setFlagCheckStereoElements( true );
+			if ( query != null ) isoTester.setQuery( query );
+		}
+
+		/**
+		 * @return  <code>false</code> if Ambit could not parse the query
+		 */
+		public boolean isValid() {
+			return query != null;
+		}
+
+		/**
+		 * @param _target  molecule with explicit hydrogen atoms, see {@link PreparedMolecule#getAmbitExplicitHMolecule()}
+		 * @param _limit   counting stops at this number
+		 *
+		 * @return  number of positions but at most provided limit, 0 for an invalid query
+		 */
+		public int count( IAtomContainer _target, int _limit ) {
+			if ( query == null ) return 0;
+			SmartsParser.prepareTargetForSMARTSSearch( parser.mNeedNeighbourData, parser.mNeedValenceData,
+					parser.mNeedRingData, parser.mNeedRingData2, parser.mNeedExplicitHData,
+					parser.mNeedParentMoleculeData, _target );
+			int count = 0;
+			if ( query.getAtomCount() == 1 ) {
+				final IQueryAtom queryAtom = (IQueryAtom) query.getAtom( 0 );
+				for ( int i = 0; i < _target.getAtomCount() && count < _limit; i++ ) {
+					if ( queryAtom.matches( _target.getAtom( i ) ) ) count++;
+				}
+				return count;
+			}
+			for ( int i = 0; i < _target.getAtomCount() && count < _limit; i++ ) {
+				if ( isoTester.checkIsomorphismAtPosition( _target, i ) ) count++;
+			}
+			return count;
+		}
+	}
+	// ========================================================================
+}
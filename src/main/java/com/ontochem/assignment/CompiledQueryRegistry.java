@@ -0,0 +1,202 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Registry of all SMARTS queries of an ontology, compiled once at ontology load.
+ * <p>
+ * The registry holds one {@link CompiledQuery} for each plain SMARTS used in the
+ * {@link ClassExpression}s of the ontology. Queries are indexed by their id in the
+ * {@link SmartsTable} of the ontology, queries not seen at load time by their SMARTS.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *       <li>queries indexed by interned SMARTS id</li>
+ *       <li>optional query network</li>
+ *       <li>optional mapping seeds</li>
+ *       <li>optional compiled matchers for small queries</li>
+ *       <li>matchers cross-checked against Ambit, corpus cross-check from the command line</li>
+ *       <li>VF2 matchers of the vf2 engine</li>
+ *       <li>OCL fragments of the ocl engine</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public class CompiledQueryRegistry {
+
+	private final static Logger LOG = Logger.getLogger( CompiledQueryRegistry.class.getName() );
+
+	private final Map<String,CompiledQuery> queryMap = new ConcurrentHashMap<>();
+	private final CompiledQuery[]           queries;
+	private final QueryNetwork              network;
+	private final MappingSeeds              seeds;
+	private final String                    module;
+
+	private CompiledQueryRegistry( int _nQueries, QueryNetwork _network, MappingSeeds _seeds, String _module ) {
+		queries = new CompiledQuery[ _nQueries ];
+		network = _network;
+		seeds   = _seeds;
+		module  = _module;
+	}
+
+	/**
+	 * Compiles all SMARTS interned while the ontology was read.
+	 *
+	 * @param _smartsTable  see {@link OntologyLoader.OntologyData#getSmartsTable()}
+	 * @param _network      shared cores of the queries or <code>null</code> to match every
+	 *                      query on its own, see {@link QueryNetwork}
+	 * @param _seeds        parent queries seeding the CDK search of child queries or
+	 *                      <code>null</code>, see {@link MappingSeeds}
+	 * @param _module       lower case name of chemical library used (e.g. cdk, ambit),
+	 *                      see {@link ChemLib}
+	 * @param _maxCompiledAtoms  largest query compiled to a {@link Vf2Matcher}, 0 to
+	 *                      search all queries with the general matcher
+	 * @param _crossCheck   search compiled and VF2 queries also with Ambit
+	 *
+	 * @return
+	 */
+	public static CompiledQueryRegistry compile( SmartsTable _smartsTable, QueryNetwork _network, MappingSeeds _seeds,
+												 String _module, int _maxCompiledAtoms, boolean _crossCheck ) {
+
+		final CompiledQueryRegistry registry = new CompiledQueryRegistry( _smartsTable.size(), _network, _seeds, _module );
+
+		int countInvalid = 0;
+		for ( int queryId = 0; queryId < _smartsTable.size(); queryId++ ) {
+			final CompiledQuery query = registry.get( _smartsTable.smarts( queryId ) );
+			registry.queries[ queryId ] = query;
+			if ( !query.isValid() ) countInvalid++;
+		}
+		LOG.info( "compiled smarts: " + registry.queryMap.size() + " invalid: " + countInvalid );
+		if ( ChemLib.CHEMLIB_VF2.equals( _module ) ) {
+			int countVf2 = 0;
+			for ( CompiledQuery query : registry.queries ) {
+				if ( query.getVf2Matcher() != null ) countVf2++;
+			}
+			LOG.info( "vf2 matchers: " + countVf2 + " of " + registry.queries.length + " queries, others searched with ambit" );
+		}
+		if ( ChemLib.CHEMLIB_OCL.equals( _module ) ) {
+			int countOcl = 0;
+			for ( CompiledQuery query : registry.queries ) {
+				if ( query.getOclFragment() != null ) countOcl++;
+			}
+			LOG.info( "ocl fragments: " + countOcl + " of " + registry.queries.length + " queries, others searched with ambit" );
+		}
+		if ( _maxCompiledAtoms > 0 ) {
+			int countCompiled = 0;
+			for ( CompiledQuery query : registry.queries ) {
+				if ( query.compileMatcher( _maxCompiledAtoms ) ) countCompiled++;
+			}
+			LOG.info( "compiled matchers: " + countCompiled + " of " + registry.queries.length + " queries" );
+		}
+		if ( _crossCheck ) {
+			for ( CompiledQuery query : registry.queries ) query.setCrossChecked( true );
+			LOG.info( "compiled matchers cross-checked against the ambit matcher" );
+		}
+		return registry;
+	}
+
+	/**
+	 * @param _queryId  id in the {@link SmartsTable} the registry was compiled from
+	 *
+	 * @return
+	 */
+	public CompiledQuery get( int _queryId ) {
+		return queries[ _queryId ];
+	}
+
+	/**
+	 * Returns compiled query for provided plain SMARTS, a query not seen at load time
+	 * is compiled and added.
+	 *
+	 * @param _smarts
+	 *
+	 * @return
+	 */
+	public CompiledQuery get( String _smarts ) {
+		CompiledQuery query = queryMap.get( _smarts );
+		if ( query == null ) query = queryMap.computeIfAbsent( _smarts, smarts -> new CompiledQuery( smarts, module ) );
+		return query;
+	}
+
+	public int size() { return queryMap.size(); }
+
+	/**
+	 * @return  shared cores of the queries or <code>null</code>
+	 */
+	public QueryNetwork getNetwork() { return network; }
+
+	/**
+	 * @return  parent queries seeding child queries or <code>null</code>
+	 */
+	public MappingSeeds getSeeds() { return seeds; }
+
+	/**
+	 * @return  number of queries with an id, ids range from 0 to this number - 1
+	 */
+	public int idCount() { return queries.length; }
+
+	/**
+	 * @return  number of cross-checked searches and of searches where a compiled matcher
+	 *          differed from Ambit, summed over all queries
+	 */
+	public long[] crossCheckStatistics() {
+		final long[] sum = new long[ 2 ];
+		for ( CompiledQuery query : queries ) {
+			final long[] statistics = query.crossCheckStatistics();
+			sum[ 0 ] += statistics[ 0 ];
+			sum[ 1 ] += statistics[ 1 ];
+		}
+		return sum;
+	}
+
+	// ==== command line usage (testing) ======================================
+	/**
+	 * Searches every compiled and VF2 query of an ontology in every compound of a corpus,
+	 * regardless of the class hierarchy, also with Ambit. Queries of up to MAXATOMS atoms
+	 * are compiled, see {@link #compile(SmartsTable, QueryNetwork, MappingSeeds, String, int, boolean)}. Exits with status 2 if a result
+	 * differs, the differing pairs are logged.
+	 */
+	public static void main( String[] _args ) throws Exception {
+		if ( _args.length < 5 || !"crosscheck".equals( _args[0] ) ) {
+			System.err.println( "Cross-check compiled matchers against Ambit over a corpus.\n" +
+					"usage: java " + CompiledQueryRegistry.class.getName() + " crosscheck OBO SMILES CHEMLIB MAXATOMS\n" );
+			System.exit( 1 );
+		}
+		final String module = ChemLib.resolveChemLib( _args[3] );
+		if ( module == null ) {
+			System.err.println( "Unknown chemical library: '" + _args[3] + "'" );
+			System.exit( 1 );
+		}
+		final int maxCompiledAtoms = Integer.parseInt( _args[4] );
+		// the assignment always reads aromatic SMARTS and compounds
+		final OntologyLoader.OntologyData ontData  = OntologyLoader.readObo( _args[1], module, true );
+		final CompiledQueryRegistry       registry = compile( ontData.getSmartsTable(), null, null, module, maxCompiledAtoms, true );
+		final Map<String,String>          smilesMap = SmilesLoader.readSmiles( _args[2], 0, false );
+
+		int nCompounds = 0;
+		for ( Entry<String,String> entry : smilesMap.entrySet() ) {
+			final PreparedMolecule molecule = PreparedMolecule.parse( entry.getValue(), true );
+			if ( !molecule.isValid() ) continue;
+			nCompounds++;
+			for ( CompiledQuery query : registry.queries ) {
+				if ( query.getVf2Matcher() == null ) continue;
+				StructureSearchEngine.searchBySubstructure( molecule, query, module, false );
+			}
+		}
+		final long[] crossCheck = registry.crossCheckStatistics();
+		LOG.info( "cross-check of compiled matchers: " + nCompounds + " compounds, " + crossCheck[ 0 ] + " searches, "
+				+ crossCheck[ 1 ] + " mismatches" );
+		if ( crossCheck[ 1 ] > 0 ) System.exit( 2 );
+	}
+}
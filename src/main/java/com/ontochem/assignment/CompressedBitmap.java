@@ -0,0 +1,353 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable bitset over dense class indices stored in the smallest of three containers,
+ * similar to the containers of a Roaring bitmap:
+ * <ul>
+ *   <li>array: the sorted indices of the set bits, for a few scattered bits such as the
+ *       ancestors of a class</li>
+ *   <li>words: only the non-zero 64 bit words together with the index of each word, for
+ *       many bits in few words</li>
+ *   <li>runs: start and end of each run of set bits, for large subtrees numbered in
+ *       depth first order</li>
+ * </ul>
+ * Ontologies have few enough classes that one container covers the whole index range, so
+ * there are no 2^16 chunks. All containers can be combined with a plain <code>long[]</code>
+ * bitset (see {@link Bits}) without decompressing. A bitmap is never modified and can be
+ * shared by all threads.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *       <li>array and run containers</li>
+ *       <li>binary form for the {@link OntologySnapshot}</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public final class CompressedBitmap {
+
+	private final static byte ARRAY = 0;
+	private final static byte WORDS = 1;
+	private final static byte RUNS  = 2;
+
+	public final static CompressedBitmap EMPTY = new CompressedBitmap( ARRAY, new int[0], null );
+
+	private final byte   container;
+	/** ARRAY: set bits, WORDS: word indices, RUNS: start and exclusive end of each run */
+	private final int[]  keys;
+	/** WORDS only */
+	private final long[] words;
+
+	private CompressedBitmap( byte _container, int[] _keys, long[] _words ) {
+		container = _container;
+		keys      = _keys;
+		words     = _words;
+	}
+
+	/**
+	 * @param _bits  plain bitset, not referenced after the call
+	 *
+	 * @return  compressed copy of provided bitset in the smallest container
+	 */
+	public static CompressedBitmap of( long[] _bits ) {
+		int  nWords = 0;
+		int  nBits  = 0;
+		int  nRuns  = 0;
+		long carry  = 0;
+		for ( long word : _bits ) {
+			if ( word != 0 ) {
+				nWords++;
+				nBits += Long.bitCount( word );
+				// bits set whose lower neighbour is not
+				nRuns += Long.bitCount( word & ~( ( word << 1 ) | carry ) );
+			}
+			carry = word >>> 63;
+		}
+		if ( nWords == 0 ) return EMPTY;
+
+		final long arrayBytes = 4L * nBits;
+		final long wordsBytes = 12L * nWords;
+		final long runsBytes  = 8L * nRuns;
+		if ( arrayBytes <= wordsBytes && arrayBytes <= runsBytes ) {
+			final int[] keys = new int[ nBits ];
+			int keyIdx = 0;
+			for ( int idx = Bits.nextSetBit( _bits, 0 ); idx >= 0; idx = Bits.nextSetBit( _bits, idx + 1 ) ) keys[ keyIdx++ ] = idx;
+			return new CompressedBitmap( ARRAY, keys, null );
+		}
+		if ( wordsBytes <= runsBytes ) {
+			final int[]  wordIndices = new int[ nWords ];
+			final long[] words       = new long[ nWords ];
+			int wordIdx = 0;
+			for ( int i = 0; i < _bits.length; i++ ) {
+				if ( _bits[ i ] != 0 ) {
+					wordIndices[ wordIdx ] = i;
+					words[ wordIdx++ ]     = _bits[ i ];
+				}
+			}
+			return new CompressedBitmap( WORDS, wordIndices, words );
+		}
+		final int[] runs = new int[ 2 * nRuns ];
+		int runIdx = 0;
+		int start  = Bits.nextSetBit( _bits, 0 );
+		while ( start >= 0 ) {
+			final int end = nextClearBit( _bits, start );
+			runs[ runIdx++ ] = start;
+			runs[ runIdx++ ] = end;
+			start = Bits.nextSetBit( _bits, end );
+		}
+		return new CompressedBitmap( RUNS, runs, null );
+	}
+
+	public boolean isEmpty() {
+		return keys.length == 0;
+	}
+
+	public boolean contains( int _idx ) {
+		switch ( container ) {
+			case ARRAY:
+				return Arrays.binarySearch( keys, _idx ) >= 0;
+			case WORDS:
+				final int wordIdx = Arrays.binarySearch( keys, _idx >>> 6 );
+				return wordIdx >= 0 && ( words[ wordIdx ] & ( 1L << _idx ) ) != 0;
+			default:
+				// last run starting at or before the index
+				int low  = 0;
+				int high = keys.length / 2 - 1;
+				while ( low <= high ) {
+					final int middle = ( low + high ) >>> 1;
+					if ( keys[ 2 * middle ] <= _idx ) low = middle + 1;
+					else high = middle - 1;
+				}
+				return high >= 0 && _idx < keys[ 2 * high + 1 ];
+		}
+	}
+
+	public int cardinality() {
+		switch ( container ) {
+			case ARRAY:
+				return keys.length;
+			case WORDS:
+				int count = 0;
+				for ( long word : words ) count += Long.bitCount( word );
+				return count;
+			default:
+				int length = 0;
+				for ( int k = 0; k < keys.length; k += 2 ) length += keys[ k + 1 ] - keys[ k ];
+				return length;
+		}
+	}
+
+	/**
+	 * @return  bytes used by the container arrays, a measure of the memory used
+	 */
+	public long sizeInBytes() {
+		return 4L * keys.length + ( words != null ? 8L * words.length : 0 );
+	}
+
+	/**
+	 * Writes the container kind, the number of keys, the keys and the words if any.
+	 */
+	void writeTo( DataOutputStream _out ) throws IOException {
+		_out.writeByte( container );
+		_out.writeInt( keys.length );
+		for ( int key : keys ) _out.writeInt( key );
+		if ( words != null ) {
+			for ( long word : words ) _out.writeLong( word );
+		}
+	}
+
+	/**
+	 * @param _buffer  big endian buffer holding a bitmap written by {@link #writeTo(DataOutputStream)}
+	 * @param _pos     absolute position of the bitmap, the position of the buffer is not changed
+	 *
+	 * @return
+	 */
+	static CompressedBitmap read( ByteBuffer _buffer, int _pos ) {
+		final byte container = _buffer.get( _pos );
+		final int  nKeys     = _buffer.getInt( _pos + 1 );
+		if ( nKeys == 0 ) return EMPTY;
+		int pos = _pos + 5;
+		final int[] keys = new int[ nKeys ];
+		for ( int k = 0; k < nKeys; k++, pos += 4 ) keys[ k ] = _buffer.getInt( pos );
+		long[] words = null;
+		if ( container == WORDS ) {
+			words = new long[ nKeys ];
+			for ( int k = 0; k < nKeys; k++, pos += 8 ) words[ k ] = _buffer.getLong( pos );
+		}
+		return new CompressedBitmap( container, keys, words );
+	}
+
+	/**
+	 * Calls provided consumer with every set bit in increasing order.
+	 */
+	public void forEach( IntConsumer _consumer ) {
+		switch ( container ) {
+			case ARRAY:
+				for ( int idx : keys ) _consumer.accept( idx );
+				break;
+			case WORDS:
+				for ( int i = 0; i < words.length; i++ ) {
+					long word = words[ i ];
+					while ( word != 0 ) {
+						_consumer.accept( ( keys[ i ] << 6 ) + Long.numberOfTrailingZeros( word ) );
+						word &= word - 1;
+					}
+				}
+				break;
+			default:
+				for ( int k = 0; k < keys.length; k += 2 ) {
+					for ( int idx = keys[ k ]; idx < keys[ k + 1 ]; idx++ ) _consumer.accept( idx );
+				}
+		}
+	}
+
+	/**
+	 * <code>_bits |= this</code>
+	 */
+	public void orInto( long[] _bits ) {
+		switch ( container ) {
+			case ARRAY:
+				for ( int idx : keys ) Bits.set( _bits, idx );
+				break;
+			case WORDS:
+				for ( int i = 0; i < words.length; i++ ) _bits[ keys[ i ] ] |= words[ i ];
+				break;
+			default:
+				for ( int k = 0; k < keys.length; k += 2 ) {
+					final int from = keys[ k ];
+					final int to   = keys[ k + 1 ];
+					for ( int w = from >>> 6; w <= ( to - 1 ) >>> 6; w++ ) _bits[ w ] |= rangeMask( w, from, to );
+				}
+		}
+	}
+
+	/**
+	 * <code>_bits &amp;= ~this</code>
+	 *
+	 * @return  number of bits cleared in provided bitset
+	 */
+	public int andNotInto( long[] _bits ) {
+		int nCleared = 0;
+		switch ( container ) {
+			case ARRAY:
+				for ( int idx : keys ) {
+					if ( Bits.get( _bits, idx ) ) {
+						Bits.clear( _bits, idx );
+						nCleared++;
+					}
+				}
+				break;
+			case WORDS:
+				for ( int i = 0; i < words.length; i++ ) {
+					final long cleared = _bits[ keys[ i ] ] & words[ i ];
+					if ( cleared != 0 ) {
+						nCleared += Long.bitCount( cleared );
+						_bits[ keys[ i ] ] ^= cleared;
+					}
+				}
+				break;
+			default:
+				for ( int k = 0; k < keys.length; k += 2 ) {
+					final int from = keys[ k ];
+					final int to   = keys[ k + 1 ];
+					for ( int w = from >>> 6; w <= ( to - 1 ) >>> 6; w++ ) {
+						final long cleared = _bits[ w ] & rangeMask( w, from, to );
+						if ( cleared != 0 ) {
+							nCleared += Long.bitCount( cleared );
+							_bits[ w ] ^= cleared;
+						}
+					}
+				}
+		}
+		return nCleared;
+	}
+
+	/**
+	 * @return  <code>true</code> if this and provided bitset have a bit in common
+	 */
+	public boolean intersects( long[] _bits ) {
+		switch ( container ) {
+			case ARRAY:
+				for ( int idx : keys ) {
+					if ( Bits.get( _bits, idx ) ) return true;
+				}
+				return false;
+			case WORDS:
+				for ( int i = 0; i < words.length; i++ ) {
+					if ( ( _bits[ keys[ i ] ] & words[ i ] ) != 0 ) return true;
+				}
+				return false;
+			default:
+				for ( int k = 0; k < keys.length; k += 2 ) {
+					final int from = keys[ k ];
+					final int to   = keys[ k + 1 ];
+					for ( int w = from >>> 6; w <= ( to - 1 ) >>> 6; w++ ) {
+						if ( ( _bits[ w ] & rangeMask( w, from, to ) ) != 0 ) return true;
+					}
+				}
+				return false;
+		}
+	}
+
+	/**
+	 * @return  <code>true</code> if every bit of this is set in provided bitset
+	 */
+	public boolean isSubsetOf( long[] _bits ) {
+		switch ( container ) {
+			case ARRAY:
+				for ( int idx : keys ) {
+					if ( !Bits.get( _bits, idx ) ) return false;
+				}
+				return true;
+			case WORDS:
+				for ( int i = 0; i < words.length; i++ ) {
+					if ( ( words[ i ] & ~_bits[ keys[ i ] ] ) != 0 ) return false;
+				}
+				return true;
+			default:
+				for ( int k = 0; k < keys.length; k += 2 ) {
+					final int from = keys[ k ];
+					final int to   = keys[ k + 1 ];
+					for ( int w = from >>> 6; w <= ( to - 1 ) >>> 6; w++ ) {
+						final long mask = rangeMask( w, from, to );
+						if ( ( _bits[ w ] & mask ) != mask ) return false;
+					}
+				}
+				return true;
+		}
+	}
+
+	/**
+	 * @return  bits of word <code>_word</code> within <code>[ _from, _to )</code>
+	 */
+	private static long rangeMask( int _word, int _from, int _to ) {
+		long mask = -1L;
+		if ( _word == _from >>> 6 )       mask &= -1L << _from;
+		if ( _word == ( _to - 1 ) >>> 6 ) mask &= -1L >>> ( 63 - ( ( _to - 1 ) & 63 ) );
+		return mask;
+	}
+
+	private static int nextClearBit( long[] _bits, int _fromIdx ) {
+		int wordIdx = _fromIdx >>> 6;
+		long word = ~_bits[ wordIdx ] & ( -1L << _fromIdx );
+		while ( true ) {
+			if ( word != 0 ) return ( wordIdx << 6 ) + Long.numberOfTrailingZeros( word );
+			if ( ++wordIdx == _bits.length ) return _bits.length << 6;
+			word = ~_bits[ wordIdx ];
+		}
+	}
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.Arrays;
+
+import org.openscience.cdk.AtomRef;
+import org.openscience.cdk.BondRef;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.isomorphism.matchers.Expr;
+import org.openscience.cdk.isomorphism.matchers.QueryAtom;
+import org.openscience.cdk.isomorphism.matchers.QueryAtomContainer;
+import org.openscience.cdk.isomorphism.matchers.QueryBond;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smarts.Smarts;
+
+/**
+ * Cheap structural features used to reject a (molecule, query) pair before any
+ * atom-by-atom search is started: element counts, ring atoms, aromatic atoms, triple
+ * bonds and charged atoms.
+ * <p>
+ * A query signature holds what every match definitely needs, derived from the
+ * top level atom and bond expressions of the SMARTS. Only features implied by all
+ * branches of an OR are used, NOT and recursive <code>$(...)</code> environments add
+ * nothing. Hydrogens are ignored as they are implicit in most views of a molecule.
+ * Query atoms map to distinct molecule atoms, so counts over the whole query are
+ * lower bounds for the molecule.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public final class FeatureSignature {
+
+	/** signature of a query that can not be screened, every molecule passes */
+	public final static FeatureSignature NONE = new FeatureSignature( new int[0], 0, 0, 0, 0, 0 );
+
+	private final static int MAX_ELEMENT = 118;
+
+	/** {@link #mask()} layout: one bit per element below 56, one bit for all heavier elements, features */
+	private final static int  MASK_HEAVY_ELEMENT = 56;
+	private final static long MASK_RING          = 1L << 59;
+	private final static long MASK_AROMATIC      = 1L << 60;
+	private final static long MASK_TRIPLE        = 1L << 61;
+	private final static long MASK_CHARGED       = 1L << 62;
+
+	/** query: required count per atomic number, molecule: count per atomic number */
+	private final int[] elementCounts;
+	private final int   ringAtoms;
+	private final int   aromaticAtoms;
+	private final int   tripleBonds;
+	private final int   chargedAtoms;
+	/** query: element of the first atom, 0 if not fixed */
+	private final int   anchorElement;
+	private final long  mask;
+
+	private FeatureSignature( int[] _elementCounts, int _ringAtoms, int _aromaticAtoms, int _tripleBonds, int _chargedAtoms,
+																								int _anchorElement ) {
+		elementCounts = _elementCounts;
+		ringAtoms     = _ringAtoms;
+		aromaticAtoms = _aromaticAtoms;
+		tripleBonds   = _tripleBonds;
+		chargedAtoms  = _chargedAtoms;
+		anchorElement = _anchorElement;
+
+		long bits = 0;
+		for ( int i = 0; i < elementCounts.length; i++ ) {
+			if ( elementCounts[ i ] > 0 ) bits |= 1L << Math.min( i, MASK_HEAVY_ELEMENT );
+		}
+		if ( ringAtoms     > 0 ) bits |= MASK_RING;
+		if ( aromaticAtoms > 0 ) bits |= MASK_AROMATIC;
+		if ( tripleBonds   > 0 ) bits |= MASK_TRIPLE;
+		if ( chargedAtoms  > 0 ) bits |= MASK_CHARGED;
+		mask = bits;
+	}
+
+	/**
+	 * Presence of elements and features as one word. For a query signature
+	 * <code>( query.mask() &amp; ~molecule.mask() ) != 0</code> implies that
+	 * {@link #isSatisfiedBy(FeatureSignature)} is <code>false</code>.
+	 *
+	 * @return
+	 */
+	public long mask() { return mask; }
+
+	/**
+	 * @param _smarts
+	 *
+	 * @return  features every match of provided query has, {@link #NONE} if the SMARTS
+	 *          can not be parsed by CDK
+	 */
+	public static FeatureSignature ofQuery( String _smarts ) {
+		return ofQuery( parseQuery( _smarts ) );
+	}
+
+	/**
+	 * @param _smarts
+	 *
+	 * @return  query graph with atom and bond expressions, <code>null</code> if CDK can
+	 *          not parse the SMARTS
+	 */
+	public static IAtomContainer parseQuery( String _smarts ) {
+		final QueryAtomContainer query = new QueryAtomContainer( SilentChemObjectBuilder.getInstance() );
+		try {
+			return Smarts.parse( query, _smarts ) ? query : null;
+		} catch ( Exception e ) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param _query  query parsed by {@link #parseQuery(String)}, may be <code>null</code>
+	 *
+	 * @return  features every match of provided query has, {@link #NONE} for <code>null</code>
+	 */
+	public static FeatureSignature ofQuery( IAtomContainer _query ) {
+
+		if ( _query == null ) return NONE;
+
+		final int[] elementCounts = new int[ MAX_ELEMENT + 1 ];
+		int ringAtoms     = 0;
+		int aromaticAtoms = 0;
+		int tripleBonds   = 0;
+		int chargedAtoms  = 0;
+		int anchorElement = 0;
+		for ( IAtom atom : _query.atoms() ) {
+			final Expr expr = ( (QueryAtom) AtomRef.deref( atom ) ).getExpression();
+			final int element = requiredElement( expr );
+			if ( element > 1 && element <= MAX_ELEMENT ) {
+				elementCounts[ element ]++;
+				if ( _query.indexOf( atom ) == 0 ) anchorElement = element;
+			}
+			if ( requiresRing( expr ) )     ringAtoms++;
+			if ( requiresAromatic( expr ) ) aromaticAtoms++;
+			if ( requiresCharge( expr ) )   chargedAtoms++;
+		}
+		for ( IBond bond : _query.bonds() ) {
+			if ( requiresTriple( ( (QueryBond) BondRef.deref( bond ) ).getExpression() ) ) tripleBonds++;
+		}
+
+		if ( ringAtoms == 0 && aromaticAtoms == 0 && tripleBonds == 0 && chargedAtoms == 0 && isZero( elementCounts ) ) {
+			return NONE;
+		}
+		return new FeatureSignature( trim( elementCounts ), ringAtoms, aromaticAtoms, tripleBonds, chargedAtoms, anchorElement );
+	}
+
+	/**
+	 * @param _parsed    molecule as parsed, supplies elements, charges and bond orders
+	 * @param _ringPerceived  view with ring flags set
+	 * @param _aromaticViews  all aromatised views, an atom is counted as aromatic if it is
+	 *                        aromatic in any of them
+	 *
+	 * @return  features of provided molecule
+	 */
+	public static FeatureSignature ofMolecule( IAtomContainer _parsed, IAtomContainer _ringPerceived, IAtomContainer... _aromaticViews ) {
+
+		final int[] elementCounts = new int[ MAX_ELEMENT + 1 ];
+		int chargedAtoms = 0;
+		for ( IAtom atom : _parsed.atoms() ) {
+			final Integer element = atom.getAtomicNumber();
+			if ( element != null && element > 1 && element <= MAX_ELEMENT ) elementCounts[ element ]++;
+			final Integer charge = atom.getFormalCharge();
+			if ( charge != null && charge != 0 ) chargedAtoms++;
+		}
+		int tripleBonds = 0;
+		for ( IBond bond : _parsed.bonds() ) {
+			if ( bond.getOrder() == IBond.Order.TRIPLE ) tripleBonds++;
+		}
+		int ringAtoms = 0;
+		for ( IAtom atom : _ringPerceived.atoms() ) {
+			if ( atom.isInRing() ) ringAtoms++;
+		}
+		int aromaticAtoms = 0;
+		for ( int i = 0; i < _parsed.getAtomCount(); i++ ) {
+			boolean isAromatic = _parsed.getAtom( i ).isAromatic();
+			for ( IAtomContainer view : _aromaticViews ) isAromatic |= view.getAtom( i ).isAromatic();
+			if ( isAromatic ) aromaticAtoms++;
+		}
+		return new FeatureSignature( trim( elementCounts ), ringAtoms, aromaticAtoms, tripleBonds, chargedAtoms, 0 );
+	}
+
+	/**
+	 * Upper bound for the number of occurrences of this query, derived from element
+	 * counts alone. Occurrences may overlap, so the bound holds both if occurrences are
+	 * counted as positions of the first query atom (at most the molecule atoms of its
+	 * element) and if they are counted as distinct atom sets (at most
+	 * <code>C( molecule atoms, query atoms )</code> for every element).
+	 *
+	 * @param _molecule  signature of a molecule
+	 *
+	 * @return  maximal number of occurrences, {@link Integer#MAX_VALUE} if not bounded
+	 */
+	public int maxOccurrences( FeatureSignature _molecule ) {
+		if ( !isSatisfiedBy( _molecule ) ) return 0;
+		if ( anchorElement == 0 ) return Integer.MAX_VALUE;
+
+		final int anchorBound = _molecule.elementCount( anchorElement );
+		long setBound = Integer.MAX_VALUE;
+		for ( int i = 0; i < elementCounts.length; i++ ) {
+			if ( elementCounts[ i ] > 0 ) setBound = Math.min( setBound, binomial( _molecule.elementCount( i ), elementCounts[ i ] ) );
+		}
+		return (int) Math.max( anchorBound, setBound );
+	}
+
+	private int elementCount( int _element ) {
+		return _element < elementCounts.length ? elementCounts[ _element ] : 0;
+	}
+
+	/**
+	 * @return  <code>n over k</code>, saturated at {@link Integer#MAX_VALUE}
+	 */
+	private static long binomial( int _n, int _k ) {
+		if ( _n < _k ) return 0;
+		long result = 1;
+		for ( int i = 1; i <= _k; i++ ) {
+			result = result * ( _n - _k + i ) / i;
+			if ( result >= Integer.MAX_VALUE ) return Integer.MAX_VALUE;
+		}
+		return result;
+	}
+
+	/**
+	 * @param _molecule  signature of a molecule
+	 *
+	 * @return  <code>false</code> if the molecule lacks a feature this query requires,
+	 *          the query can then not match
+	 */
+	public boolean isSatisfiedBy( FeatureSignature _molecule ) {
+		if ( this == NONE ) return true;
+		if ( ringAtoms     > _molecule.ringAtoms )     return false;
+		if ( aromaticAtoms > _molecule.aromaticAtoms ) return false;
+		if ( tripleBonds   > _molecule.tripleBonds )   return false;
+		if ( chargedAtoms  > _molecule.chargedAtoms )  return false;
+		if ( elementCounts.length > _molecule.elementCounts.length ) {
+			for ( int i = _molecule.elementCounts.length; i < elementCounts.length; i++ ) {
+				if ( elementCounts[ i ] > 0 ) return false;
+			}
+		}
+		final int n = Math.min( elementCounts.length, _molecule.elementCounts.length );
+		for ( int i = 0; i < n; i++ ) {
+			if ( elementCounts[ i ] > _molecule.elementCounts[ i ] ) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param _query  query parsed by {@link #parseQuery(String)}, may be <code>null</code>
+	 *
+	 * @return  <code>true</code> if a match needs a specified tetrahedral or double bond
+	 *          configuration, <code>@?</code> and <code>/?</code> do not
+	 */
+	public static boolean requiresStereo( IAtomContainer _query ) {
+		if ( _query == null ) return false;
+		for ( IAtom atom : _query.atoms() ) {
+			if ( requiresStereo( ( (QueryAtom) AtomRef.deref( atom ) ).getExpression() ) ) return true;
+		}
+		for ( IBond bond : _query.bonds() ) {
+			if ( requiresStereo( ( (QueryBond) BondRef.deref( bond ) ).getExpression() ) ) return true;
+		}
+		return false;
+	}
+
+	// ---- query expression analysis -------------------------------------------
+
+	private static boolean requiresStereo( Expr _expr ) {
+		switch ( _expr.type() ) {
+			case STEREOCHEMISTRY:
+				return _expr.value() != 0;
+			case AND:
+				return requiresStereo( _expr.left() ) || requiresStereo( _expr.right() );
+			case OR:
+				return requiresStereo( _expr.left() ) && requiresStereo( _expr.right() );
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * @return  atomic number every atom matching the expression has, 0 if not fixed
+	 */
+	static int requiredElement( Expr _expr ) {
+		switch ( _expr.type() ) {
+			case ELEMENT:
+			case ALIPHATIC_ELEMENT:
+			case AROMATIC_ELEMENT:
+				return _expr.value();
+			case AND: {
+				final int left = requiredElement( _expr.left() );
+				return left != 0 ? left : requiredElement( _expr.right() );
+			}
+			case OR: {
+				final int left = requiredElement( _expr.left() );
+				return left == requiredElement( _expr.right() ) ? left : 0;
+			}
+			default:
+				return 0;
+		}
+	}
+
+	private static boolean requiresRing( Expr _expr ) {
+		switch ( _expr.type() ) {
+			case IS_IN_RING:
+			case IS_AROMATIC:
+			case AROMATIC_ELEMENT:
+				return true;
+			case RING_COUNT:
+			case RING_SIZE:
+			case RING_SMALLEST:
+			case RING_BOND_COUNT:
+				return _expr.value() > 0;
+			case AND:
+				return requiresRing( _expr.left() ) || requiresRing( _expr.right() );
+			case OR:
+				return requiresRing( _expr.left() ) && requiresRing( _expr.right() );
+			default:
+				return false;
+		}
+	}
+
+	private static boolean requiresAromatic( Expr _expr ) {
+		switch ( _expr.type() ) {
+			case IS_AROMATIC:
+			case AROMATIC_ELEMENT:
+				return true;
+			case AND:
+				return requiresAromatic( _expr.left() ) || requiresAromatic( _expr.right() );
+			case OR:
+				return requiresAromatic( _expr.left() ) && requiresAromatic( _expr.right() );
+			default:
+				return false;
+		}
+	}
+
+	private static boolean requiresCharge( Expr _expr ) {
+		switch ( _expr.type() ) {
+			case FORMAL_CHARGE:
+				return _expr.value() != 0;
+			case AND:
+				return requiresCharge( _expr.left() ) || requiresCharge( _expr.right() );
+			case OR:
+				return requiresCharge( _expr.left() ) && requiresCharge( _expr.right() );
+			default:
+				return false;
+		}
+	}
+
+	private static boolean requiresTriple( Expr _expr ) {
+		switch ( _expr.type() ) {
+			case ORDER:
+			case ALIPHATIC_ORDER:
+				return _expr.value() == 3;
+			case AND:
+				return requiresTriple( _expr.left() ) || requiresTriple( _expr.right() );
+			case OR:
+				return requiresTriple( _expr.left() ) && requiresTriple( _expr.right() );
+			default:
+				return false;
+		}
+	}
+
+	private static boolean isZero( int[] _counts ) {
+		for ( int count : _counts ) {
+			if ( count != 0 ) return false;
+		}
+		return true;
+	}
+
+	private static int[] trim( int[] _counts ) {
+		int length = _counts.length;
+		while ( length > 0 && _counts[ length - 1 ] == 0 ) length--;
+		return Arrays.copyOf( _counts, length );
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder( "elements:" );
+		for ( int i = 0; i < elementCounts.length; i++ ) {
+			if ( elementCounts[ i ] > 0 ) sb.append( ' ' ).append( i ).append( 'x' ).append( elementCounts[ i ] );
+		}
+		return sb.append( " ring: " ).append( ringAtoms ).append( " aromatic: " ).append( aromaticAtoms )
+				 .append( " triple: " ).append( tripleBonds ).append( " charged: " ).append( chargedAtoms ).toString();
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import com.ontochem.assignment.OntologyLoader.OntologyData;
+
+/**
+ * Selects the classes reported for one molecule from the classes that passed the hierarchy
+ * walk, with bitsets over the indices of a {@link ClosureIndex}:
+ * <ul>
+ *   <li>valid: assigned classes that may be reported and whose ancestors are all assigned,
+ *       <code>assigned &amp; reported</code> with <code>ancestors &sube; assigned</code></li>
+ *   <li>leaves: valid classes without a valid offspring over the child relations, which are
+ *       the has_a relations and need not mirror is_a</li>
+ * </ul>
+ * Classes that are not walked are preset in the assigned bitset, they are implied by their
+ * ancestors. The selector is immutable and used by all worker threads, the bitsets are
+ * allocated once per thread with {@link #newBitset()}.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version, replaces the set based filter of the output loop</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public final class LeafSelector {
+
+	private final ClosureIndex closureIndex;
+	/** closure index of every class of the {@link OntologyGraph}, -1 if not in the hierarchy */
+	private final int[]        closureIndices;
+	private final long[]       uncheckedBits;
+	private final long[]       reportedBits;
+
+	private LeafSelector( ClosureIndex _closureIndex, int[] _closureIndices, long[] _uncheckedBits, long[] _reportedBits ) {
+		closureIndex   = _closureIndex;
+		closureIndices = _closureIndices;
+		uncheckedBits  = _uncheckedBits;
+		reportedBits   = _reportedBits;
+	}
+
+	/**
+	 * @param _closureIndex  ancestor closures of all classes
+	 * @param _graph         compiled ontology whose class indices are passed to {@link #assign(long[], int)}
+	 * @param _unchecked     classes not decided by the walk, regarded as assigned
+	 * @param _reported      classes that may be reported at all
+	 *
+	 * @return
+	 */
+	public static LeafSelector compile( ClosureIndex _closureIndex, OntologyGraph _graph,
+										Predicate<String> _unchecked, Predicate<String> _reported ) {
+		final int[] closureIndices = new int[ _graph.size() ];
+		for ( int i = 0; i < closureIndices.length; i++ ) closureIndices[ i ] = _closureIndex.indexOf( _graph.ocidString( i ) );
+		return new LeafSelector( _closureIndex, closureIndices, _closureIndex.select( _unchecked ), _closureIndex.select( _reported ) );
+	}
+
+	/**
+	 * Selector of the class assignment. Classes without SMARTS are not evaluated, they are
+	 * implied by their ancestors with SMARTS if the walk reaches them. The root and classes
+	 * without SMARTS are never reported, backbone classes are found by structure and treated
+	 * like classes with SMARTS.
+	 *
+	 * @param _closureIndex     ancestor closures of all classes
+	 * @param _graph            compiled ontology
+	 * @param _ontData          class maps of the ontology
+	 * @param _backboneClasses  classes found by lookup, see {@link BackboneIndex}
+	 *
+	 * @return
+	 */
+	public static LeafSelector compile( ClosureIndex _closureIndex, OntologyGraph _graph,
+										OntologyData _ontData, Set<String> _backboneClasses ) {
+		final Map<String,ClassExpression> expressionMap = _ontData.getOcidExpressionMap();
+		final Map<String,Set<String>>     parentMap     = _ontData.getOcidParentMap();
+		final Map<String,List<String>>    smartsMap     = _ontData.getOcidSmartsMap();
+		return compile( _closureIndex, _graph,
+				ocidClass -> !expressionMap.containsKey( ocidClass ) && !_backboneClasses.contains( ocidClass )
+						  && _graph.isWalked( ocidClass ),
+				ocidClass -> !parentMap.getOrDefault( ocidClass, Collections.<String>emptySet() ).isEmpty()
+						  && ( !smartsMap.getOrDefault( ocidClass, Collections.<String>emptyList() ).isEmpty()
+								|| _backboneClasses.contains( ocidClass ) ) );
+	}
+
+	/**
+	 * @return  empty bitset over the closure indices
+	 */
+	public long[] newBitset() {
+		return Bits.create( closureIndex.size() );
+	}
+
+	/**
+	 * Starts the selection of a molecule.
+	 */
+	public void reset( long[] _assigned ) {
+		System.arraycopy( uncheckedBits, 0, _assigned, 0, _assigned.length );
+	}
+
+	/**
+	 * @param _graphIdx  class of the {@link OntologyGraph} that passed the walk
+	 */
+	public void assign( long[] _assigned, int _graphIdx ) {
+		final int idx = closureIndices[ _graphIdx ];
+		if ( idx >= 0 ) Bits.set( _assigned, idx );
+	}
+
+	/**
+	 * @param _assigned  assigned classes, see {@link #reset(long[])} and {@link #assign(long[], int)}
+	 * @param _valid     overwritten with the valid classes
+	 * @param _leaves    overwritten with the leaves
+	 *
+	 * @return  ids of the valid classes and of the leaves
+	 */
+	public Selection select( long[] _assigned, long[] _valid, long[] _leaves ) {
+		Bits.clearAll( _valid );
+		for ( int w = 0; w < _assigned.length; w++ ) {
+			long word = _assigned[ w ] & reportedBits[ w ];
+			while ( word != 0 ) {
+				final int idx = ( w << 6 ) + Long.numberOfTrailingZeros( word );
+				if ( closureIndex.ancestorsOf( idx ).isSubsetOf( _assigned ) ) Bits.set( _valid, idx );
+				word &= word - 1;
+			}
+		}
+		Bits.clearAll( _leaves );
+		for ( int idx = Bits.nextSetBit( _valid, 0 ); idx >= 0; idx = Bits.nextSetBit( _valid, idx + 1 ) ) {
+			if ( !closureIndex.offspringsIntersect( idx, _valid ) ) Bits.set( _leaves, idx );
+		}
+		return new Selection( ids( _valid ), ids( _leaves ) );
+	}
+
+	private Set<String> ids( long[] _bits ) {
+		if ( Bits.isEmpty( _bits ) ) return Collections.emptySet();
+		final Set<String> ids = new LinkedHashSet<>();
+		for ( int idx = Bits.nextSetBit( _bits, 0 ); idx >= 0; idx = Bits.nextSetBit( _bits, idx + 1 ) ) ids.add( closureIndex.id( idx ) );
+		return ids;
+	}
+
+	// ==== class Selection ===================================================
+	/**
+	 * Classes reported for one molecule, in hierarchy order.
+	 */
+	public final static class Selection {
+
+		private final Set<String> classes;
+		private final Set<String> leaves;
+
+		private Selection( Set<String> _classes, Set<String> _leaves ) {
+			classes = _classes;
+			leaves  = _leaves;
+		}
+
+		/**
+		 * @return  all valid classes
+		 */
+		public Set<String> getClasses() { return classes; }
+
+		/**
+		 * @return  valid classes without a valid offspring
+		 */
+		public Set<String> getLeaves()  { return leaves; }
+	}
+	// ========================================================================
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.openscience.cdk.AtomRef;
+import org.openscience.cdk.BondRef;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.isomorphism.AtomMatcher;
+import org.openscience.cdk.isomorphism.BondMatcher;
+import org.openscience.cdk.isomorphism.Pattern;
+import org.openscience.cdk.isomorphism.VentoFoggia;
+import org.openscience.cdk.isomorphism.matchers.Expr;
+import org.openscience.cdk.isomorphism.matchers.QueryAtom;
+import org.openscience.cdk.isomorphism.matchers.QueryBond;
+
+/**
+ * Seeds the CDK search of a child class SMARTS with the atom mappings of a parent class
+ * SMARTS. As is_a means substructure in the ontologies, a child query usually contains
+ * the query of its parent.
+ * <p>
+ * At load time every query of a class is checked against the queries of its is_a
+ * parents: a parent query seeds a child query if it embeds into it, that is each parent
+ * atom maps onto a distinct child atom whose expression implies the parent atom
+ * expression, and bonds likewise. Every match of the child then contains a match of the
+ * parent, so a child atom can only be matched to a molecule atom the embedded parent
+ * atom is mapped to in some parent match. These images are collected once per molecule
+ * and kept with the query results of the molecule, see {@link MatchContext.Memo}; the
+ * child search only considers them as candidates for the embedded atoms.
+ * <p>
+ * Queries with stereochemistry or disconnected components neither seed nor are seeded as
+ * their matches are filtered after the search. A parent with more than {@link #MAX_MAPPINGS}
+ * mappings gives no seed and the child is searched unconstrained.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *       <li>child queries with stereochemistry or components are not seeded</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public class MappingSeeds {
+
+	private final static Logger LOG = Logger.getLogger( MappingSeeds.class.getName() );
+
+	/** parent mappings enumerated per molecule before seeding is given up */
+	private final static int MAX_MAPPINGS = 256;
+
+	/** backtracking steps allowed for one embedding check */
+	private final static int MAX_EMBEDDING_STEPS = 100000;
+
+	/** seed query id per query id, -1 if a query is not seeded */
+	private final int[]                 sourceIds;
+	/** child atom index per parent atom index of the seed, per seeded query id */
+	private final int[][]               embeddings;
+	private final ThreadLocal<Seeded>[] seededPatterns;
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private MappingSeeds( int _nQueries ) {
+		sourceIds      = new int[ _nQueries ];
+		embeddings     = new int[ _nQueries ][];
+		seededPatterns = new ThreadLocal[ _nQueries ];
+		Arrays.fill( sourceIds, -1 );
+	}
+
+	/**
+	 * @param _queryId  see {@link SmartsTable}
+	 *
+	 * @return  id of the parent query seeding provided query or -1
+	 */
+	public int sourceOf( int _queryId ) {
+		return _queryId < sourceIds.length ? sourceIds[ _queryId ] : -1;
+	}
+
+	/**
+	 * Checks for each query of each class which query of its is_a parents embeds into it.
+	 *
+	 * @param _ocidExpressionMap  see {@link OntologyLoader.OntologyData#getOcidExpressionMap()}
+	 * @param _ocidParentMap      is_a parents of each class
+	 * @param _smartsTable        see {@link OntologyLoader.OntologyData#getSmartsTable()}
+	 *
+	 * @return
+	 */
+	public static MappingSeeds compile( Map<String,ClassExpression> _ocidExpressionMap, Map<String,Set<String>> _ocidParentMap,
+																					SmartsTable _smartsTable ) {
+
+		final int            nQueries = _smartsTable.size();
+		final MappingSeeds   seeds    = new MappingSeeds( nQueries );
+		final IAtomContainer[] parsed = new IAtomContainer[ nQueries ];
+		final boolean[]      isParsed = new boolean[ nQueries ];
+		int nChecked = 0;
+		int nSeeded  = 0;
+
+		for ( Map.Entry<String,ClassExpression> entry : _ocidExpressionMap.entrySet() ) {
+			final Set<String> parents = _ocidParentMap.get( entry.getKey() );
+			if ( parents == null ) continue;
+
+			final Set<String> parentSmarts = new LinkedHashSet<>();
+			for ( String parent : parents ) {
+				final ClassExpression parentExpression = _ocidExpressionMap.get( parent );
+				if ( parentExpression != null ) parentExpression.collectSmarts( parentSmarts );
+			}
+			if ( parentSmarts.isEmpty() ) continue;
+
+			final Set<String> childSmarts = new LinkedHashSet<>();
+			entry.getValue().collectSmarts( childSmarts );
+
+			for ( String smarts : childSmarts ) {
+				final int childId = _smartsTable.idOf( smarts );
+				// the seeded search bypasses the stereo filter and component grouping of the child
+				if ( childId < 0 || seeds.sourceIds[ childId ] >= 0 || !canSeed( smarts ) ) continue;
+				final IAtomContainer child = parse( childId, _smartsTable, parsed, isParsed );
+				if ( child == null ) continue;
+
+				int   bestSource    = -1;
+				int[] bestEmbedding = null;
+				for ( String seedSmarts : parentSmarts ) {
+					final int sourceId = _smartsTable.idOf( seedSmarts );
+					if ( sourceId < 0 || sourceId == childId || !canSeed( seedSmarts ) ) continue;
+					final IAtomContainer source = parse( sourceId, _smartsTable, parsed, isParsed );
+					if ( source == null || source.getAtomCount() > child.getAtomCount() ) continue;
+					if ( bestEmbedding != null && source.getAtomCount() <= bestEmbedding.length ) continue;
+					nChecked++;
+					final int[] embedding = embed( source, child );
+					if ( embedding != null ) {
+						bestSource    = sourceId;
+						bestEmbedding = embedding;
+					}
+				}
+				if ( bestEmbedding != null ) {
+					seeds.sourceIds[ childId ]  = bestSource;
+					seeds.embeddings[ childId ] = bestEmbedding;
+					final int[] embedding = bestEmbedding;
+					seeds.seededPatterns[ childId ] = ThreadLocal.withInitial( () -> new Seeded( smarts, embedding ) );
+					nSeeded++;
+				}
+			}
+		}
+		LOG.info( "mapping seeds: " + nSeeded + " of " + nQueries + " queries seeded by a parent query, "
+				+ nChecked + " embeddings checked" );
+		return seeds;
+	}
+
+	/**
+	 * @param _mol      molecule prepared for CDK
+	 * @param _queryId  seeded query, see {@link #sourceOf(int)}
+	 * @param _source   query seeding provided query
+	 *
+	 * @return  bitset of molecule atoms per source atom the source atom is mapped to in
+	 *          any match, <code>null</code> if the source has too many matches
+	 *
+	 * @throws Exception
+	 */
+	public long[][] images( PreparedMolecule _mol, int _queryId, CompiledQuery _source ) throws Exception {
+		final IAtomContainer target = _mol.getCdkMolecule();
+		final long[][] images = new long[ embeddings[ _queryId ].length ][];
+		for ( int i = 0; i < images.length; i++ ) images[ i ] = Bits.create( target.getAtomCount() );
+		int nMappings = 0;
+		for ( int[] mapping : _source.getCdkPattern().matchAll( target ).limit( MAX_MAPPINGS + 1 ) ) {
+			if ( ++nMappings > MAX_MAPPINGS ) return null;
+			for ( int i = 0; i < mapping.length; i++ ) Bits.set( images[ i ], mapping[ i ] );
+		}
+		return images;
+	}
+
+	/**
+	 * @param _queryId  seeded query, see {@link #sourceOf(int)}
+	 * @param _images   see {@link #images(PreparedMolecule, int, CompiledQuery)}
+	 *
+	 * @return  CDK pattern of provided query owned by the calling thread, restricted to
+	 *          provided images until the next call
+	 */
+	public Pattern seededPattern( int _queryId, long[][] _images ) {
+		final Seeded seeded = seededPatterns[ _queryId ].get();
+		seeded.matcher.images = _images;
+		return seeded.pattern;
+	}
+
+	private static IAtomContainer parse( int _queryId, SmartsTable _smartsTable, IAtomContainer[] _parsed, boolean[] _isParsed ) {
+		if ( !_isParsed[ _queryId ] ) {
+			_parsed[ _queryId ]   = FeatureSignature.parseQuery( _smartsTable.smarts( _queryId ) );
+			_isParsed[ _queryId ] = true;
+		}
+		return _parsed[ _queryId ];
+	}
+
+	/**
+	 * @return  <code>false</code> for queries whose matches are filtered after the search
+	 */
+	private static boolean canSeed( String _smarts ) {
+		return _smarts.indexOf( '.' ) < 0 && _smarts.indexOf( '@' ) < 0 && _smarts.indexOf( '/' ) < 0
+				&& _smarts.indexOf( '\\' ) < 0;
+	}
+
+	/**
+	 * @return  child atom index per source atom index or <code>null</code> if no
+	 *          embedding was found
+	 */
+	private static int[] embed( IAtomContainer _source, IAtomContainer _child ) {
+		final int[]     embedding = new int[ _source.getAtomCount() ];
+		final boolean[] used      = new boolean[ _child.getAtomCount() ];
+		final int[]     steps     = new int[ 1 ];
+		Arrays.fill( embedding, -1 );
+		return embed( _source, _child, 0, embedding, used, steps ) ? embedding : null;
+	}
+
+	private static boolean embed( IAtomContainer _source, IAtomContainer _child, int _atomIdx, int[] _embedding,
+																boolean[] _used, int[] _steps ) {
+		if ( _atomIdx == _source.getAtomCount() ) return true;
+		final IAtom sourceAtom = _source.getAtom( _atomIdx );
+		final Expr  sourceExpr = ( (QueryAtom) AtomRef.deref( sourceAtom ) ).getExpression();
+		for ( int childIdx = 0; childIdx < _child.getAtomCount(); childIdx++ ) {
+			if ( _used[ childIdx ] ) continue;
+			if ( ++_steps[ 0 ] > MAX_EMBEDDING_STEPS ) return false;
+			final IAtom childAtom = _child.getAtom( childIdx );
+			if ( !implies( ( (QueryAtom) AtomRef.deref( childAtom ) ).getExpression(), sourceExpr ) ) continue;
+
+			// bonds to source atoms already embedded must be present in the child
+			boolean bondsMatch = true;
+			for ( IBond bond : _source.getConnectedBondsList( sourceAtom ) ) {
+				final int otherIdx = _source.indexOf( bond.getOther( sourceAtom ) );
+				if ( otherIdx >= _atomIdx ) continue;
+				final IBond childBond = _child.getBond( childAtom, _child.getAtom( _embedding[ otherIdx ] ) );
+				if ( childBond == null || !implies( ( (QueryBond) BondRef.deref( childBond ) ).getExpression(),
+													( (QueryBond) BondRef.deref( bond ) ).getExpression() ) ) {
+					bondsMatch = false;
+					break;
+				}
+			}
+			if ( !bondsMatch ) continue;
+
+			_embedding[ _atomIdx ] = childIdx;
+			_used[ childIdx ]      = true;
+			if ( embed( _source, _child, _atomIdx + 1, _embedding, _used, _steps ) ) return true;
+			_used[ childIdx ]      = false;
+			_embedding[ _atomIdx ] = -1;
+		}
+		return false;
+	}
+
+	/**
+	 * Conservative implication of query expressions, <code>false</code> if unsure.
+	 *
+	 * @return  <code>true</code> if everything matching provided child expression also
+	 *          matches provided source expression
+	 */
+	static boolean implies( Expr _child, Expr _source ) {
+		if ( _source.type() == Expr.Type.TRUE || _child.equals( _source ) ) return true;
+		switch ( _source.type() ) {
+			case AND:
+				return implies( _child, _source.left() ) && implies( _child, _source.right() );
+			case OR:
+				if ( implies( _child, _source.left() ) || implies( _child, _source.right() ) ) return true;
+				break;
+			case ELEMENT:
+				if ( ( _child.type() == Expr.Type.ALIPHATIC_ELEMENT || _child.type() == Expr.Type.AROMATIC_ELEMENT )
+						&& _child.value() == _source.value() ) return true;
+				break;
+			case SINGLE_OR_AROMATIC:
+				if ( _child.type() == Expr.Type.IS_AROMATIC
+						|| ( ( _child.type() == Expr.Type.ALIPHATIC_ORDER || _child.type() == Expr.Type.ORDER ) && _child.value() == 1 ) ) return true;
+				break;
+			case SINGLE_OR_DOUBLE:
+				if ( ( _child.type() == Expr.Type.ALIPHATIC_ORDER || _child.type() == Expr.Type.ORDER )
+						&& ( _child.value() == 1 || _child.value() == 2 ) ) return true;
+				break;
+			case ORDER:
+				if ( _child.type() == Expr.Type.ALIPHATIC_ORDER && _child.value() == _source.value() ) return true;
+				break;
+			default:
+				break;
+		}
+		switch ( _child.type() ) {
+			case AND:
+				return implies( _child.left(), _source ) || implies( _child.right(), _source );
+			case OR:
+				return implies( _child.left(), _source ) && implies( _child.right(), _source );
+			default:
+				return false;
+		}
+	}
+
+	// ==== class Seeded ======================================================
+	/**
+	 * CDK pattern of a seeded query with its atom matcher, the query is parsed per thread
+	 * as recursive SMARTS keep search state in the query.
+	 */
+	private final static class Seeded {
+
+		private final SeedMatcher matcher;
+		private final Pattern     pattern;
+
+		private Seeded( String _smarts, int[] _embedding ) {
+			final IAtomContainer     query       = FeatureSignature.parseQuery( _smarts );
+			final Map<IAtom,Integer> sourceAtoms = new IdentityHashMap<>();
+			for ( int i = 0; i < _embedding.length; i++ ) sourceAtoms.put( query.getAtom( _embedding[ i ] ), i );
+			matcher = new SeedMatcher( sourceAtoms );
+			pattern = VentoFoggia.findSubstructure( query, matcher, BondMatcher.forQuery() );
+		}
+	}
+
+	// ==== class SeedMatcher =================================================
+	/**
+	 * Query atom matcher accepting an embedded atom only on the images of its source atom.
+	 */
+	private final static class SeedMatcher extends AtomMatcher {
+
+		private final AtomMatcher        queryMatcher = AtomMatcher.forQuery();
+		private final Map<IAtom,Integer> sourceAtoms;
+		private long[][]                 images;
+
+		private SeedMatcher( Map<IAtom,Integer> _sourceAtoms ) {
+			sourceAtoms = _sourceAtoms;
+		}
+
+		@Override
+		public boolean matches( IAtom _queryAtom, IAtom _targetAtom ) {
+			final Integer sourceIdx = sourceAtoms.get( _queryAtom );
+			if ( sourceIdx != null && !Bits.get( images[ sourceIdx ], _targetAtom.getIndex() ) ) return false;
+			return queryMatcher.matches( _queryAtom, _targetAtom );
+		}
+	}
+	// ========================================================================
+}
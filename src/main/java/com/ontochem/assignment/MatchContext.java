@@ -0,0 +1,258 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Per molecule state used to evaluate {@link ClassExpression}s against one compound.
+ * A context is confined to the worker thread processing the compound.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *       <li>queries addressed by interned id, results memoized per molecule</li>
+ *       <li>shared cores of the query network are checked first</li>
+ *       <li>child queries seeded with the mappings of a parent query</li>
+ *       <li>hit rate and cost of each evaluation recorded</li>
+ *       <li>compiled queries are not seeded</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public class MatchContext {
+
+	private final static Logger LOG = Logger.getLogger( MatchContext.class.getName() );
+
+	private final static byte UNKNOWN  = 0;
+	private final static byte MATCH    = 1;
+	private final static byte NO_MATCH = 2;
+
+	/** memo entry of a seeding query with too many mappings */
+	private final static long[][] NO_IMAGES = new long[ 0 ][];
+
+	private final PreparedMolecule      molecule;
+	private final CompiledQueryRegistry queryRegistry;
+	private final String                module;
+	private final boolean               verbose;
+	private final Memo                  memo;
+
+	/**
+	 * @param _molecule  compound parsed once for all class checks
+	 * @param _queryRegistry
+	 * @param _module  lower case name of chemical library used (e.g. cdk, ambit),
+	 *                 see {@link ChemLib}
+	 * @param _verbose
+	 * @param _memo    results of the worker thread, cleared by the caller before the
+	 *                 first query of the molecule
+	 */
+	public MatchContext( PreparedMolecule _molecule, CompiledQueryRegistry _queryRegistry, String _module,
+																boolean _verbose, Memo _memo ) {
+		molecule      = _molecule;
+		queryRegistry = _queryRegistry;
+		module        = _module;
+		verbose       = _verbose;
+		memo          = _memo;
+	}
+
+	public PreparedMolecule getMolecule() { return molecule; }
+
+	/**
+	 * @param _queryId  see {@link SmartsTable}
+	 *
+	 * @return  <code>true</code> if query is found with the selected chemistry module
+	 */
+	public boolean matches( int _queryId ) {
+		byte result = memo.matches[ _queryId ];
+		if ( result == UNKNOWN ) {
+			final long start = System.nanoTime();
+			if ( !matchesCore( _queryId ) ) {
+				result = NO_MATCH;
+			} else {
+				result = searchSeeded( _queryId ) > 0 ? MATCH : NO_MATCH;
+			}
+			memo.matches[ _queryId ] = result;
+			queryRegistry.get( _queryId ).recordEvaluation( result == MATCH, System.nanoTime() - start );
+		} else {
+			memo.nReused++;
+		}
+		return result == MATCH;
+	}
+
+	/**
+	 * @param _queryId  see {@link SmartsTable}
+	 *
+	 * @return  <code>true</code> if stereospecific query is found, stereochemistry is
+	 *          implemented in cdk and not in ambit; a molecule without stereo elements
+	 *          can not match a query specifying a configuration
+	 */
+	public boolean matchesStereo( int _queryId ) {
+		byte result = memo.stereoMatches[ _queryId ];
+		if ( result == UNKNOWN ) {
+			final long start = System.nanoTime();
+			final CompiledQuery query = queryRegistry.get( _queryId );
+			if ( molecule.isValid() && !molecule.hasStereoElements() && query.isStereoSpecific() ) {
+				result = NO_MATCH;
+			} else if ( !matchesCore( _queryId ) ) {
+				result = NO_MATCH;
+			} else {
+				result = search( query, ChemLib.CHEMLIB_CDK ) > 0 ? MATCH : NO_MATCH;
+			}
+			memo.stereoMatches[ _queryId ] = result;
+			query.recordEvaluation( result == MATCH, System.nanoTime() - start );
+		} else {
+			memo.nReused++;
+		}
+		return result == MATCH;
+	}
+
+	/**
+	 * @param _queryId  see {@link SmartsTable}
+	 *
+	 * @return  upper bound for the number of positions the query can be found at, derived
+	 *          without matching, see {@link FeatureSignature#maxOccurrences(FeatureSignature)}
+	 */
+	public int maxCount( int _queryId ) {
+		if ( !molecule.isValid() ) return Integer.MAX_VALUE;
+		try {
+			return queryRegistry.get( _queryId ).getSignature().maxOccurrences( molecule.getSignature() );
+		} catch ( Exception e ) {
+			return Integer.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * @param _queryId  see {@link SmartsTable}
+	 * @param _limit    counting stops at this number
+	 *
+	 * @return  number of positions the query is found at but at most provided limit,
+	 *          multiplicity is only handled by Ambit; -1 on error
+	 */
+	public int count( int _queryId, int _limit ) {
+		// a count below its limit is exact, a count reaching it answers all lower limits
+		final int countLimit = memo.countLimits[ _queryId ];
+		if ( countLimit > 0 ) {
+			final int count = memo.counts[ _queryId ];
+			if ( count < countLimit || _limit <= countLimit ) {
+				memo.nReused++;
+				return Math.min( count, _limit );
+			}
+		}
+		int count;
+		if ( !matchesCore( _queryId ) ) return 0;
+		final long start = System.nanoTime();
+		try {
+			count = StructureSearchEngine.searchBySubstructureAmbitAllInstances( molecule, queryRegistry.get( _queryId ), _limit, verbose );
+		} catch ( Exception e ) {
+			LOG.info( "ERROR: error in processing smarts multiplicity: " + e ) ;
+			count = -1;
+		}
+		queryRegistry.get( _queryId ).recordEvaluation( count > 0, System.nanoTime() - start );
+		if ( _limit > 0 ) {
+			memo.counts[ _queryId ]      = count;
+			memo.countLimits[ _queryId ] = _limit;
+		}
+		return count;
+	}
+
+	/**
+	 * @return  <code>false</code> if the query has a shared core, see {@link QueryNetwork},
+	 *          and the core is not found, the query can then not be found either
+	 */
+	private boolean matchesCore( int _queryId ) {
+		final QueryNetwork network = queryRegistry.getNetwork();
+		if ( network == null ) return true;
+		final int coreId = network.coreOf( _queryId );
+		return coreId < 0 || matches( coreId );
+	}
+
+	/**
+	 * Searches a query seeded by the mappings of a parent query, see {@link MappingSeeds},
+	 * unseeded and compiled queries are searched as usual.
+	 */
+	private int searchSeeded( int _queryId ) {
+		final MappingSeeds seeds    = queryRegistry.getSeeds();
+		final int          sourceId = seeds == null ? -1 : seeds.sourceOf( _queryId );
+		if ( sourceId < 0 || !molecule.isValid() || queryRegistry.get( _queryId ).getVf2Matcher() != null ) {
+			return search( queryRegistry.get( _queryId ), module );
+		}
+
+		try {
+			long[][] images = memo.images[ sourceId ];
+			if ( images == null ) {
+				images = seeds.images( molecule, _queryId, queryRegistry.get( sourceId ) );
+				memo.images[ sourceId ] = images != null ? images : NO_IMAGES;
+			}
+			if ( images == null || images == NO_IMAGES ) return search( queryRegistry.get( _queryId ), module );
+			return StructureSearchEngine.searchBySubstructureCdk( molecule, queryRegistry.get( _queryId ),
+																	seeds.seededPattern( _queryId, images ) );
+		} catch ( Exception e ) {
+			LOG.info( "ERROR: SubStructureSearchEngine Error " + e );
+		}
+		return -1;
+	}
+
+	/**
+	 * perform atom-by-atom-search (ABAS) given a query and the target
+	 */
+	private int search( CompiledQuery _query, String _module ) {
+		try {
+			return StructureSearchEngine.searchBySubstructure( molecule, _query, _module, verbose );
+		} catch ( Exception e ) {
+			LOG.info( "ERROR: SubStructureSearchEngine Error " + e );
+		}
+		return -1;
+	}
+
+	// ==== class Memo ========================================================
+	/**
+	 * Search results of one molecule indexed by query id, so a query shared by several
+	 * classes is searched only once per molecule. Allocated once per worker thread and
+	 * cleared between molecules.
+	 */
+	public final static class Memo {
+
+		private final byte[]     matches;
+		private final byte[]     stereoMatches;
+		private final int[]      counts;
+		private final int[]      countLimits;
+		/** atom images of seeding queries, see {@link MappingSeeds} */
+		private final long[][][] images;
+		private long             nReused;
+
+		/**
+		 * @param _nQueries  see {@link CompiledQueryRegistry#idCount()}
+		 */
+		public Memo( int _nQueries ) {
+			matches       = new byte[ _nQueries ];
+			stereoMatches = new byte[ _nQueries ];
+			counts        = new int[ _nQueries ];
+			countLimits   = new int[ _nQueries ];
+			images        = new long[ _nQueries ][][];
+		}
+
+		public void clear() {
+			Arrays.fill( matches, UNKNOWN );
+			Arrays.fill( stereoMatches, UNKNOWN );
+			Arrays.fill( countLimits, 0 );
+			Arrays.fill( images, null );
+		}
+
+		/**
+		 * @return  number of query results taken from the memo since the last call,
+		 *          the counter is reset
+		 */
+		public long takeReused() {
+			final long reused = nReused;
+			nReused = 0;
+			return reused;
+		}
+	}
+	// ========================================================================
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import com.actelion.research.chem.IDCodeParser;
+import com.actelion.research.chem.Molecule;
+import com.actelion.research.chem.SSSearcherWithIndex;
+import com.actelion.research.chem.SmilesParser;
+import com.actelion.research.chem.StereoMolecule;
+
+/**
+ * OpenChemLib fragment search of the <code>ocl</code> engine, see {@link ChemLib}.
+ * <p>
+ * Classes of the backbones ontology carry their structure as OCL idcode. The idcodes
+ * are interned in the {@link SmartsTable} like SMARTS, tagged with {@link #IDCODE_PREFIX}
+ * so they never collide with a SMARTS, and are decoded once into query fragments with a
+ * fragment fingerprint index. A molecule is decoded and indexed once as well. The search
+ * first compares the indexes and only runs the atom by atom check of
+ * {@link SSSearcherWithIndex} if every fragment feature is present in the molecule.
+ * <p>
+ * A {@link SSSearcherWithIndex} keeps state, each thread uses its own.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public final class OclFragments {
+
+	/** tag of idcode queries in the {@link SmartsTable} */
+	public final static String IDCODE_PREFIX = "idcode:";
+
+	private final static ThreadLocal<SSSearcherWithIndex> SEARCHERS = ThreadLocal.withInitial( SSSearcherWithIndex::new );
+
+	private OclFragments() {}
+
+	/**
+	 * @param _query  SMARTS or tagged idcode from the {@link SmartsTable}
+	 *
+	 * @return  <code>true</code> if provided query is an idcode
+	 */
+	public static boolean isIdcode( String _query ) {
+		return _query.startsWith( IDCODE_PREFIX );
+	}
+
+	/**
+	 * @param _query  tagged idcode, see {@link #isIdcode(String)}
+	 *
+	 * @return  query fragment, helper arrays computed so that several threads can read it
+	 */
+	public static StereoMolecule parseFragment( String _query ) {
+		final StereoMolecule fragment = new IDCodeParser().getCompactMolecule( _query.substring( IDCODE_PREFIX.length() ) );
+		fragment.setFragment( true );
+		fragment.ensureHelperArrays( Molecule.cHelperParities );
+		return fragment;
+	}
+
+	/**
+	 * @param _smiles
+	 *
+	 * @return  molecule parsed by OCL
+	 *
+	 * @throws Exception
+	 */
+	public static StereoMolecule parseMolecule( String _smiles ) throws Exception {
+		final StereoMolecule molecule = new StereoMolecule();
+		new SmilesParser().parse( molecule, _smiles );
+		molecule.ensureHelperArrays( Molecule.cHelperParities );
+		return molecule;
+	}
+
+	/**
+	 * @param _molecule  fragment or molecule
+	 *
+	 * @return  fragment fingerprint index
+	 */
+	public static long[] index( StereoMolecule _molecule ) {
+		return SEARCHERS.get().createLongIndex( _molecule );
+	}
+
+	/**
+	 * @param _fragment       see {@link #parseFragment(String)}
+	 * @param _fragmentIndex
+	 * @param _molecule       see {@link #parseMolecule(String)}
+	 * @param _moleculeIndex
+	 *
+	 * @return  <code>true</code> if the fragment is found in the molecule
+	 */
+	public static boolean isFragmentInMolecule( StereoMolecule _fragment, long[] _fragmentIndex,
+												StereoMolecule _molecule, long[] _moleculeIndex ) {
+		final SSSearcherWithIndex searcher = SEARCHERS.get();
+		searcher.setFragment( _fragment, _fragmentIndex );
+		searcher.setMolecule( _molecule, _moleculeIndex );
+		return searcher.isFragmentIndexInMoleculeIndex() && searcher.isFragmentInMolecule();
+	}
+}
@@ -0,0 +1,700 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * Ontology compiled into a dense, integer indexed graph. Class ids (OCIDs) are stored
+ * as <code>long</code>, parent and child edges as compressed sparse rows: the parents
+ * of class <code>i</code> are <code>parents[ parentOffsets[i] .. parentOffsets[i+1] )</code>,
+ * the children likewise.
+ * <p>
+ * Classes are indexed in topological order of the is_a relation, every parent has a
+ * lower index than the class itself. Scanning a bitset of classes in index order
+ * therefore visits parents before their children. has_a relations are not part of
+ * the order, they usually mirror is_a but some ontologies contain has_a cycles.
+ * <p>
+ * The hierarchy walk reaches classes from the root over has_a relations, a class reached
+ * that way is decided once all its is_a parents are assigned. Classes the walk can never
+ * reach, see {@link #isWalked(int)}, are never assigned.
+ * <p>
+ * Classes without SMARTS are only passed through: they are assigned if all their parents
+ * are. The hierarchy walk therefore runs on a contracted evaluation graph in which every
+ * class is linked directly to its nearest ancestors with SMARTS (or the root), and only
+ * classes with SMARTS and the root have evaluation children, restricted to walked classes.
+ * The full graph is kept for output and ancestor checks.
+ * <p>
+ * For every class with SMARTS the transitive evaluation descendants are precomputed as a
+ * {@link CompressedBitmap}: a class can only be assigned if all its parents are, so a
+ * failed class rules out its whole subtree.
+ * <p>
+ * As an is_a relationship defines a substructure relationship, a class also inherits the
+ * structural requirements of its ancestors. The elements and features required by the
+ * class SMARTS (see {@link ClassExpression#requiredFeatures()}) are accumulated down the
+ * hierarchy into one mask per class.
+ * <p>
+ * The graph is immutable and shared by all worker threads.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *       <li>descendant closures of SMARTS classes</li>
+ *       <li>hereditary required feature masks</li>
+ *       <li>contracted evaluation graph without pass-through classes</li>
+ *       <li>evaluation children restricted to classes reached over has_a relations</li>
+ *       <li>transitive reduction of is_a relations and evaluation edges</li>
+ *       <li>graph restored from an ontology snapshot without compiling it again</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public class OntologyGraph {
+
+	private final static Logger LOG = Logger.getLogger( OntologyGraph.class.getName() );
+
+	private final long[]            ocids;
+	private final long[]            sortedOcids;
+	private final int[]             sortedIndices;
+	private final int[]             parentOffsets;
+	private final int[]             parents;
+	private final int[]             childOffsets;
+	private final int[]             children;
+	private final int[]             evalParentOffsets;
+	private final int[]             evalParents;
+	private final int[]             evalChildOffsets;
+	private final int[]             evalChildren;
+	private final long[]            walked;
+	private final ClassExpression[] expressions;
+	private final CompressedBitmap[] descendants;
+	private final long[]            requiredFeatures;
+	private final int               root;
+
+	private OntologyGraph( long[] _ocids, long[] _sortedOcids, int[] _sortedIndices,
+						   int[] _parentOffsets, int[] _parents, int[] _childOffsets, int[] _children,
+						   int[][] _evalParentRows, int[][] _evalChildRows, long[] _walked,
+						   ClassExpression[] _expressions, CompressedBitmap[] _descendants,
+						   long[] _requiredFeatures, int _root ) {
+		ocids         = _ocids;
+		sortedOcids   = _sortedOcids;
+		sortedIndices = _sortedIndices;
+		parentOffsets = _parentOffsets;
+		parents       = _parents;
+		childOffsets  = _childOffsets;
+		children      = _children;
+		evalParentOffsets = _evalParentRows[0];
+		evalParents       = _evalParentRows[1];
+		evalChildOffsets  = _evalChildRows[0];
+		evalChildren      = _evalChildRows[1];
+		walked            = _walked;
+		expressions   = _expressions;
+		descendants   = _descendants;
+		requiredFeatures = _requiredFeatures;
+		root          = _root;
+	}
+
+	/**
+	 * Compiles the class maps of an ontology into a graph.
+	 *
+	 * @param _rootId
+	 * @param _ocidClass2parentMap      is_a relations
+	 * @param _ocidClass2childMap       has_a relations or inverse is_a relations
+	 * @param _ocidClass2expressionMap  parsed class SMARTS
+	 *
+	 * @return
+	 *
+	 * @throws IOException  if a class id is not numeric or the is_a relations contain a cycle
+	 */
+	public static OntologyGraph compile( String _rootId,
+										 Map<String,Set<String>> _ocidClass2parentMap,
+										 Map<String,Set<String>> _ocidClass2childMap,
+										 Map<String,ClassExpression> _ocidClass2expressionMap ) throws IOException {
+
+		// all ids referenced anywhere, sorted to allow binary search by OCID
+		final Set<Long> idSet = new TreeSet<>();
+		addIds( idSet, _ocidClass2parentMap );
+		addIds( idSet, _ocidClass2childMap );
+		idSet.add( parseOcid( _rootId ) );
+
+		final long[] sortedOcids = new long[ idSet.size() ];
+		int idx = 0;
+		for ( Long ocid : idSet ) sortedOcids[ idx++ ] = ocid;
+
+		// relations over sorted positions
+		final int[][] sortedParentRows = rows( sortedOcids, _ocidClass2parentMap );
+		final int[][] sortedChildRows  = rows( sortedOcids, _ocidClass2childMap );
+
+		// topological order, sorted position -> class index and back
+		final int[] order = topologicalOrder( sortedOcids, sortedParentRows );
+		final int[] rank  = new int[ order.length ];
+		for ( int i = 0; i < order.length; i++ ) rank[ order[ i ] ] = i;
+
+		final long[] ocids = new long[ sortedOcids.length ];
+		for ( int i = 0; i < order.length; i++ ) ocids[ i ] = sortedOcids[ order[ i ] ];
+
+		final int[][] parentRows = renumber( sortedParentRows, order, rank );
+		final int[][] childRows  = renumber( sortedChildRows, order, rank );
+
+		final ClassExpression[] expressions = new ClassExpression[ ocids.length ];
+		for ( Map.Entry<String,ClassExpression> entry : _ocidClass2expressionMap.entrySet() ) {
+			int sortedIdx = Arrays.binarySearch( sortedOcids, parseOcid( entry.getKey() ) );
+			if ( sortedIdx >= 0 ) expressions[ rank[ sortedIdx ] ] = entry.getValue();
+		}
+
+		final int rootIdx = rank[ Arrays.binarySearch( sortedOcids, parseOcid( _rootId ) ) ];
+		final long[]  walked         = walkedClasses( parentRows, childRows, rootIdx );
+		final int[][] evalParentRows = evaluationParents( parentRows, expressions, rootIdx );
+		final int[][] evalChildRows  = evaluationChildren( evalParentRows, expressions, walked, rootIdx );
+
+		final CompressedBitmap[] descendants = descendantClosures( evalChildRows, expressions );
+
+		// parents precede their children in index order
+		final long[] requiredFeatures = new long[ ocids.length ];
+		int nRequiring = 0;
+		for ( int i = 0; i < ocids.length; i++ ) {
+			long features = expressions[ i ] != null ? expressions[ i ].requiredFeatures() : 0L;
+			for ( int edge = parentRows[0][ i ]; edge < parentRows[0][ i + 1 ]; edge++ ) {
+				features |= requiredFeatures[ parentRows[1][ edge ] ];
+			}
+			requiredFeatures[ i ] = features;
+			if ( features != 0 ) nRequiring++;
+		}
+
+		final OntologyGraph graph = new OntologyGraph( ocids, sortedOcids, rank,
+				parentRows[0], parentRows[1], childRows[0], childRows[1], evalParentRows, evalChildRows, walked,
+				expressions, descendants, requiredFeatures, rootIdx );
+
+		long closureBytes = 0;
+		for ( CompressedBitmap closure : descendants ) closureBytes += closure.sizeInBytes();
+		LOG.info( "compiled ontology graph: " + ocids.length + " classes, "
+				+ graph.parents.length + " parent edges, " + graph.children.length + " child edges, "
+				+ graph.evalChildren.length + " evaluation edges between " + _ocidClass2expressionMap.size() + " classes with SMARTS, "
+				+ ( ocids.length - Bits.cardinality( walked ) ) + " classes not reached over has_a relations, "
+				+ closureBytes + " bytes of descendant closures, " + nRequiring + " classes with required features" );
+		return graph;
+	}
+
+	/**
+	 * Graph as compiled before, see {@link OntologySnapshot#ontologyGraph(Map)}. Relations,
+	 * closures and feature masks are taken as they are, only the expressions are looked up,
+	 * they may have been reordered since.
+	 *
+	 * @param _ocids                    class ids in topological order
+	 * @param _parentRows               CSR offsets and targets of the reduced is_a relations
+	 * @param _childRows                CSR offsets and targets of the child relations
+	 * @param _evalParentRows           CSR offsets and targets of the evaluation parents
+	 * @param _evalChildRows            CSR offsets and targets of the evaluation children
+	 * @param _walked                   see {@link #isWalked(int)}
+	 * @param _descendants              see {@link #descendants(int)}
+	 * @param _requiredFeatures         see {@link #requiredFeatures(int)}
+	 * @param _root
+	 * @param _ocidClass2expressionMap  parsed class SMARTS
+	 *
+	 * @return
+	 *
+	 * @throws IOException  if a class id is not numeric
+	 */
+	static OntologyGraph of( long[] _ocids, int[][] _parentRows, int[][] _childRows,
+							 int[][] _evalParentRows, int[][] _evalChildRows, long[] _walked,
+							 CompressedBitmap[] _descendants, long[] _requiredFeatures, int _root,
+							 Map<String,ClassExpression> _ocidClass2expressionMap ) throws IOException {
+
+		final long[] sortedOcids = _ocids.clone();
+		Arrays.sort( sortedOcids );
+		final int[] sortedIndices = new int[ _ocids.length ];
+		for ( int i = 0; i < _ocids.length; i++ ) sortedIndices[ Arrays.binarySearch( sortedOcids, _ocids[ i ] ) ] = i;
+
+		final ClassExpression[] expressions = new ClassExpression[ _ocids.length ];
+		for ( Map.Entry<String,ClassExpression> entry : _ocidClass2expressionMap.entrySet() ) {
+			int sortedIdx = Arrays.binarySearch( sortedOcids, parseOcid( entry.getKey() ) );
+			if ( sortedIdx >= 0 ) expressions[ sortedIndices[ sortedIdx ] ] = entry.getValue();
+		}
+		return new OntologyGraph( _ocids, sortedOcids, sortedIndices,
+				_parentRows[0], _parentRows[1], _childRows[0], _childRows[1], _evalParentRows, _evalChildRows, _walked,
+				expressions, _descendants, _requiredFeatures, _root );
+	}
+
+	// ---- accessors ---------------------------------------------------------
+
+	public int  size()  { return ocids.length; }
+	public int  root()  { return root; }
+
+	public long   ocid( int _idx )   { return ocids[ _idx ]; }
+	public String ocidString( int _idx ) { return Long.toString( ocids[ _idx ] ); }
+
+	/**
+	 * @param _ocid
+	 *
+	 * @return  dense index of provided class, negative if unknown
+	 */
+	public int indexOf( long _ocid ) {
+		final int sortedIdx = Arrays.binarySearch( sortedOcids, _ocid );
+		return sortedIdx >= 0 ? sortedIndices[ sortedIdx ] : -1;
+	}
+
+	/**
+	 * @return  parsed SMARTS of provided class or <code>null</code> if it has none
+	 */
+	public ClassExpression expression( int _idx ) { return expressions[ _idx ]; }
+
+	public int parentStart( int _idx ) { return parentOffsets[ _idx ]; }
+	public int parentEnd( int _idx )   { return parentOffsets[ _idx + 1 ]; }
+	public int parent( int _edge )     { return parents[ _edge ]; }
+
+	public int childStart( int _idx )  { return childOffsets[ _idx ]; }
+	public int childEnd( int _idx )    { return childOffsets[ _idx + 1 ]; }
+	public int child( int _edge )      { return children[ _edge ]; }
+
+	public boolean hasChildEdges()     { return children.length > 0; }
+
+	/** nearest ancestors with SMARTS, or the root, of any class */
+	public int evalParentStart( int _idx ) { return evalParentOffsets[ _idx ]; }
+	public int evalParentEnd( int _idx )   { return evalParentOffsets[ _idx + 1 ]; }
+	public int evalParent( int _edge )     { return evalParents[ _edge ]; }
+
+	/** classes with SMARTS having provided class as nearest ancestor with SMARTS */
+	public int evalChildStart( int _idx )  { return evalChildOffsets[ _idx ]; }
+	public int evalChildEnd( int _idx )    { return evalChildOffsets[ _idx + 1 ]; }
+	public int evalChild( int _edge )      { return evalChildren[ _edge ]; }
+
+	/**
+	 * @return  <code>true</code> if provided class is part of the hierarchy walk, the root
+	 *          and classes with SMARTS
+	 */
+	public boolean isEvaluated( int _idx ) { return _idx == root || expressions[ _idx ] != null; }
+
+	/**
+	 * @return  <code>true</code> if the hierarchy walk can reach provided class: it is linked
+	 *          to the root by has_a relations over walked classes and all its is_a parents
+	 *          are walked
+	 */
+	public boolean isWalked( int _idx ) { return Bits.get( walked, _idx ); }
+
+	/**
+	 * @return  see {@link #isWalked(int)}, <code>false</code> for unknown or non-numeric ids
+	 */
+	public boolean isWalked( String _ocid ) {
+		try {
+			final int idx = indexOf( parseOcid( _ocid ) );
+			return idx >= 0 && isWalked( idx );
+		} catch ( IOException e ) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return  transitive evaluation descendants of provided class, excluding the class itself;
+	 *          empty for classes without SMARTS as those never fail on their own
+	 */
+	public CompressedBitmap descendants( int _idx ) { return descendants[ _idx ]; }
+
+	/**
+	 * @return  elements and features, see {@link FeatureSignature#mask()}, required by
+	 *          provided class and all its ancestors
+	 */
+	public long requiredFeatures( int _idx ) { return requiredFeatures[ _idx ]; }
+
+	/**
+	 * Removes every is_a relation implied by other is_a relations of the same class: a parent
+	 * that is also an ancestor of another parent. The ancestors of every class are unchanged.
+	 *
+	 * @param _ocidClass2parentMap  is_a relations, reduced in place
+	 *
+	 * @return  number of removed relations
+	 *
+	 * @throws IOException  if a class id is not numeric or the is_a relations contain a cycle
+	 */
+	public static int reduceTransitively( Map<String,Set<String>> _ocidClass2parentMap ) throws IOException {
+
+		final Set<Long> idSet = new TreeSet<>();
+		addIds( idSet, _ocidClass2parentMap );
+		final long[] sortedOcids = new long[ idSet.size() ];
+		int idx = 0;
+		for ( Long ocid : idSet ) sortedOcids[ idx++ ] = ocid;
+
+		final int[][] parentRows = rows( sortedOcids, _ocidClass2parentMap );
+		final int[]   order      = topologicalOrder( sortedOcids, parentRows );
+		final int[]   rank       = new int[ order.length ];
+		for ( int i = 0; i < order.length; i++ ) rank[ order[ i ] ] = i;
+
+		final int[][] rows = new int[ sortedOcids.length ][];
+		for ( int i = 0; i < rows.length; i++ ) rows[ i ] = Arrays.copyOfRange( parentRows[1], parentRows[0][ i ], parentRows[0][ i + 1 ] );
+
+		final TransitiveReducer reducer = new TransitiveReducer( rows, rank );
+		final long[] redundant = Bits.create( sortedOcids.length );
+		int nRemoved = 0;
+		for ( Map.Entry<String,Set<String>> entry : _ocidClass2parentMap.entrySet() ) {
+			final int[] row = rows[ Arrays.binarySearch( sortedOcids, parseOcid( entry.getKey() ) ) ];
+			if ( row.length < 2 ) continue;
+			final int[] reduced = row.clone();
+			final int   nKept   = reducer.reduce( reduced, reduced.length );
+			if ( nKept == row.length ) continue;
+			for ( int parent : row ) Bits.set( redundant, parent );
+			for ( int k = 0; k < nKept; k++ ) Bits.clear( redundant, reduced[ k ] );
+			for ( Iterator<String> it = entry.getValue().iterator(); it.hasNext(); ) {
+				if ( Bits.get( redundant, Arrays.binarySearch( sortedOcids, parseOcid( it.next() ) ) ) ) it.remove();
+			}
+			for ( int parent : row ) Bits.clear( redundant, parent );
+			nRemoved += row.length - nKept;
+		}
+		return nRemoved;
+	}
+
+	// ---- compilation helpers -----------------------------------------------
+
+	/**
+	 * Parses a 12 digit OCID.
+	 *
+	 * @param _id
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	public static long parseOcid( String _id ) throws IOException {
+		try {
+			return Long.parseLong( _id );
+		} catch ( NumberFormatException nfe ) {
+			throw new IOException( "class id is not numeric: '" + _id + "'" );
+		}
+	}
+
+	private static void addIds( Set<Long> _idSet, Map<String,Set<String>> _map ) throws IOException {
+		for ( Map.Entry<String,Set<String>> entry : _map.entrySet() ) {
+			_idSet.add( parseOcid( entry.getKey() ) );
+			for ( String id : entry.getValue() ) _idSet.add( parseOcid( id ) );
+		}
+	}
+
+	/**
+	 * Kahn's algorithm over is_a edges, parent before class.
+	 *
+	 * @return  sorted positions in topological order
+	 *
+	 * @throws IOException  if the is_a relations contain a cycle
+	 */
+	private static int[] topologicalOrder( long[] _sortedOcids, int[][] _parentRows ) throws IOException {
+
+		final int   n        = _sortedOcids.length;
+		final int[] inDegree = new int[ n ];
+		// successors: classes having an is_a to the node
+		final int[] succOffsets = new int[ n + 1 ];
+		for ( int edge = 0; edge < _parentRows[1].length; edge++ ) succOffsets[ _parentRows[1][ edge ] + 1 ]++;
+		for ( int i = 0; i < n; i++ ) succOffsets[ i + 1 ] += succOffsets[ i ];
+		final int[] successors = new int[ succOffsets[ n ] ];
+		final int[] fill       = Arrays.copyOf( succOffsets, n );
+		for ( int i = 0; i < n; i++ ) {
+			for ( int edge = _parentRows[0][ i ]; edge < _parentRows[0][ i + 1 ]; edge++ ) {
+				successors[ fill[ _parentRows[1][ edge ] ]++ ] = i;
+				inDegree[ i ]++;
+			}
+		}
+
+		final int[] order = new int[ n ];
+		int head = 0;
+		int tail = 0;
+		for ( int i = 0; i < n; i++ ) {
+			if ( inDegree[ i ] == 0 ) order[ tail++ ] = i;
+		}
+		while ( head < tail ) {
+			final int node = order[ head++ ];
+			for ( int edge = succOffsets[ node ]; edge < succOffsets[ node + 1 ]; edge++ ) {
+				if ( --inDegree[ successors[ edge ] ] == 0 ) order[ tail++ ] = successors[ edge ];
+			}
+		}
+		if ( tail < n ) {
+			throw new IOException( "is_a hierarchy contains a cycle, " + ( n - tail ) + " classes can not be ordered" );
+		}
+		return order;
+	}
+
+	/**
+	 * @return  CSR rows of provided relation in class index numbering
+	 */
+	private static int[][] renumber( int[][] _sortedRows, int[] _order, int[] _rank ) {
+		final int   n       = _order.length;
+		final int[] offsets = new int[ n + 1 ];
+		final int[] edges   = new int[ _sortedRows[1].length ];
+		int edgeIdx = 0;
+		for ( int i = 0; i < n; i++ ) {
+			offsets[ i ] = edgeIdx;
+			final int sortedIdx = _order[ i ];
+			final int rowStart  = edgeIdx;
+			for ( int edge = _sortedRows[0][ sortedIdx ]; edge < _sortedRows[0][ sortedIdx + 1 ]; edge++ ) {
+				edges[ edgeIdx++ ] = _rank[ _sortedRows[1][ edge ] ];
+			}
+			Arrays.sort( edges, rowStart, edgeIdx );
+		}
+		offsets[ n ] = edgeIdx;
+		return new int[][] { offsets, edges };
+	}
+
+	/**
+	 * Links every class to its nearest ancestors that are evaluated, see {@link #isEvaluated(int)},
+	 * without the links implied by other links. Parents precede their children in index order,
+	 * the links of a parent without SMARTS are therefore known when its children are reached.
+	 *
+	 * @return  CSR rows of the evaluation parents of every class
+	 */
+	private static int[][] evaluationParents( int[][] _parentRows, ClassExpression[] _expressions, int _root ) {
+
+		final int     n    = _expressions.length;
+		final int[][] rows = new int[ n ][];
+		int[]         buffer = new int[ 64 ];
+		final TransitiveReducer reducer = new TransitiveReducer( rows, null );
+		int nEdges = 0;
+		for ( int i = 0; i < n; i++ ) {
+			int size = 0;
+			for ( int edge = _parentRows[0][ i ]; edge < _parentRows[0][ i + 1 ]; edge++ ) {
+				final int parent = _parentRows[1][ edge ];
+				final boolean evaluated = parent == _root || _expressions[ parent ] != null;
+				final int nAdded = evaluated ? 1 : rows[ parent ].length;
+				if ( size + nAdded > buffer.length ) buffer = Arrays.copyOf( buffer, 2 * ( size + nAdded ) );
+				if ( evaluated ) {
+					buffer[ size++ ] = parent;
+				} else {
+					for ( int ancestor : rows[ parent ] ) buffer[ size++ ] = ancestor;
+				}
+			}
+			Arrays.sort( buffer, 0, size );
+			int unique = 0;
+			for ( int k = 0; k < size; k++ ) {
+				if ( unique == 0 || buffer[ k ] != buffer[ unique - 1 ] ) buffer[ unique++ ] = buffer[ k ];
+			}
+			// an ancestor of another evaluation parent is checked through that parent
+			unique = reducer.reduce( buffer, unique );
+			rows[ i ] = Arrays.copyOf( buffer, unique );
+			nEdges += unique;
+		}
+		return flatten( rows, nEdges );
+	}
+
+	/**
+	 * Walked classes, see {@link #isWalked(int)}. Not walking a class can make the has_a
+	 * relations of a class it links to unreachable, so reachability and parents are
+	 * repeated until nothing changes.
+	 *
+	 * @return  bitset of the walked classes
+	 */
+	private static long[] walkedClasses( int[][] _parentRows, int[][] _childRows, int _root ) {
+
+		final int    n       = _parentRows[0].length - 1;
+		final long[] walked  = Bits.create( n );
+		final long[] reached = Bits.create( n );
+		final int[]  queue   = new int[ n ];
+		for ( int i = 0; i < n; i++ ) Bits.set( walked, i );
+		boolean changed = true;
+		while ( changed ) {
+			Bits.clearAll( reached );
+			int head = 0;
+			int tail = 0;
+			queue[ tail++ ] = _root;
+			Bits.set( reached, _root );
+			while ( head < tail ) {
+				final int node = queue[ head++ ];
+				for ( int edge = _childRows[0][ node ]; edge < _childRows[0][ node + 1 ]; edge++ ) {
+					final int child = _childRows[1][ edge ];
+					if ( Bits.get( walked, child ) && !Bits.get( reached, child ) ) {
+						Bits.set( reached, child );
+						queue[ tail++ ] = child;
+					}
+				}
+			}
+			// parents precede their children in index order
+			changed = false;
+			for ( int i = 0; i < n; i++ ) {
+				if ( !Bits.get( walked, i ) ) continue;
+				boolean isWalked = Bits.get( reached, i );
+				for ( int edge = _parentRows[0][ i ]; isWalked && edge < _parentRows[0][ i + 1 ]; edge++ ) {
+					isWalked = Bits.get( walked, _parentRows[1][ edge ] );
+				}
+				if ( !isWalked ) {
+					Bits.clear( walked, i );
+					changed = true;
+				}
+			}
+		}
+		return walked;
+	}
+
+	/**
+	 * @return  CSR rows of the inverted evaluation parents, restricted to evaluated and
+	 *          walked classes
+	 */
+	private static int[][] evaluationChildren( int[][] _evalParentRows, ClassExpression[] _expressions, long[] _walked, int _root ) {
+
+		final int   n       = _expressions.length;
+		final int[] offsets = new int[ n + 1 ];
+		for ( int i = 0; i < n; i++ ) {
+			if ( i != _root && ( _expressions[ i ] == null || !Bits.get( _walked, i ) ) ) continue;
+			for ( int edge = _evalParentRows[0][ i ]; edge < _evalParentRows[0][ i + 1 ]; edge++ ) offsets[ _evalParentRows[1][ edge ] + 1 ]++;
+		}
+		for ( int i = 0; i < n; i++ ) offsets[ i + 1 ] += offsets[ i ];
+		final int[] edges = new int[ offsets[ n ] ];
+		final int[] fill  = Arrays.copyOf( offsets, n );
+		for ( int i = 0; i < n; i++ ) {
+			if ( i != _root && ( _expressions[ i ] == null || !Bits.get( _walked, i ) ) ) continue;
+			for ( int edge = _evalParentRows[0][ i ]; edge < _evalParentRows[0][ i + 1 ]; edge++ ) {
+				edges[ fill[ _evalParentRows[1][ edge ] ]++ ] = i;
+			}
+		}
+		return new int[][] { offsets, edges };
+	}
+
+	/**
+	 * Collects the evaluation descendants of every class with an expression by a depth
+	 * first walk over the evaluation children.
+	 */
+	private static CompressedBitmap[] descendantClosures( int[][] _evalChildRows, ClassExpression[] _expressions ) {
+
+		final int   n = _expressions.length;
+		final CompressedBitmap[] closures = new CompressedBitmap[ n ];
+		final long[] visited = Bits.create( n );
+		final int[]  stack   = new int[ n ];
+		for ( int i = 0; i < n; i++ ) {
+			if ( _expressions[ i ] == null || _evalChildRows[0][ i ] == _evalChildRows[0][ i + 1 ] ) {
+				closures[ i ] = CompressedBitmap.EMPTY;
+				continue;
+			}
+			Bits.clearAll( visited );
+			int top = 0;
+			stack[ top++ ] = i;
+			while ( top > 0 ) {
+				final int node = stack[ --top ];
+				for ( int edge = _evalChildRows[0][ node ]; edge < _evalChildRows[0][ node + 1 ]; edge++ ) {
+					final int sub = _evalChildRows[1][ edge ];
+					if ( !Bits.get( visited, sub ) ) {
+						Bits.set( visited, sub );
+						stack[ top++ ] = sub;
+					}
+				}
+			}
+			closures[ i ] = CompressedBitmap.of( visited );
+		}
+		return closures;
+	}
+
+	private static int[][] flatten( int[][] _rows, int _nEdges ) {
+		final int[] offsets = new int[ _rows.length + 1 ];
+		final int[] edges   = new int[ _nEdges ];
+		int edgeIdx = 0;
+		for ( int i = 0; i < _rows.length; i++ ) {
+			offsets[ i ] = edgeIdx;
+			System.arraycopy( _rows[ i ], 0, edges, edgeIdx, _rows[ i ].length );
+			edgeIdx += _rows[ i ].length;
+		}
+		offsets[ _rows.length ] = edgeIdx;
+		return new int[][] { offsets, edges };
+	}
+
+	/**
+	 * @return  CSR offsets and targets for provided relation map
+	 */
+	private static int[][] rows( long[] _ocids, Map<String,Set<String>> _map ) throws IOException {
+
+		final int[][] targets = new int[ _ocids.length ][];
+		int nEdges = 0;
+		for ( Map.Entry<String,Set<String>> entry : _map.entrySet() ) {
+			final int[] row = new int[ entry.getValue().size() ];
+			int edgeIdx = 0;
+			for ( String id : entry.getValue() ) row[ edgeIdx++ ] = Arrays.binarySearch( _ocids, parseOcid( id ) );
+			Arrays.sort( row );
+			targets[ Arrays.binarySearch( _ocids, parseOcid( entry.getKey() ) ) ] = row;
+			nEdges += row.length;
+		}
+
+		final int[] offsets = new int[ _ocids.length + 1 ];
+		final int[] edges   = new int[ nEdges ];
+		int edgeIdx = 0;
+		for ( int i = 0; i < _ocids.length; i++ ) {
+			offsets[ i ] = edgeIdx;
+			if ( targets[ i ] != null ) {
+				System.arraycopy( targets[ i ], 0, edges, edgeIdx, targets[ i ].length );
+				edgeIdx += targets[ i ].length;
+			}
+		}
+		offsets[ _ocids.length ] = edgeIdx;
+		return new int[][] { offsets, edges };
+	}
+
+	// ==== class TransitiveReducer ===========================================
+	/**
+	 * Drops the parents of a class that are reached from another of its parents. Parents are
+	 * visited by decreasing topological rank, an ancestor always ranks below its descendants.
+	 * The upward search from a kept parent stops below the lowest ranked parent.
+	 */
+	private final static class TransitiveReducer {
+
+		private final int[][] rows;
+		private final int[]   rank;
+		private final int[]   stamp;
+		private int           generation = 0;
+		private int[]         stack      = new int[ 64 ];
+
+		/**
+		 * @param _rows  parents of every class, rows still to be reduced are only read
+		 *               through their ancestors, which the reduction does not change
+		 * @param _rank  topological rank of every class, <code>null</code> if the index is the rank
+		 */
+		private TransitiveReducer( int[][] _rows, int[] _rank ) {
+			rows  = _rows;
+			rank  = _rank;
+			stamp = new int[ _rows.length ];
+		}
+
+		private int rank( int _idx ) {
+			return rank != null ? rank[ _idx ] : _idx;
+		}
+
+		/**
+		 * @param _row   distinct parents of one class, reordered
+		 * @param _size
+		 *
+		 * @return  number of kept parents, which are moved to the start of the row
+		 */
+		private int reduce( int[] _row, int _size ) {
+			if ( _size < 2 ) return _size;
+			// insertion sort by decreasing rank, rows are short
+			for ( int k = 1; k < _size; k++ ) {
+				final int parent = _row[ k ];
+				int j = k - 1;
+				while ( j >= 0 && rank( _row[ j ] ) < rank( parent ) ) {
+					_row[ j + 1 ] = _row[ j ];
+					j--;
+				}
+				_row[ j + 1 ] = parent;
+			}
+			final int minRank = rank( _row[ _size - 1 ] );
+			generation++;
+			int nKept = 0;
+			for ( int k = 0; k < _size; k++ ) {
+				final int parent = _row[ k ];
+				if ( stamp[ parent ] == generation ) continue;
+				_row[ nKept++ ] = parent;
+				int top = 0;
+				stack[ top++ ] = parent;
+				while ( top > 0 ) {
+					final int node = stack[ --top ];
+					for ( int ancestor : rows[ node ] ) {
+						if ( stamp[ ancestor ] == generation || rank( ancestor ) < minRank ) continue;
+						stamp[ ancestor ] = generation;
+						if ( top == stack.length ) stack = Arrays.copyOf( stack, 2 * top );
+						stack[ top++ ] = ancestor;
+					}
+				}
+			}
+			return nKept;
+		}
+	}
+}
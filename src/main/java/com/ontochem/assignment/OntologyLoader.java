@@ -7,7 +7,13 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -27,6 +33,18 @@ import java.util.logging.Logger;
  *       <li>initial version</li>
  *     </ul>
  *   </li>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>SMARTS lists are parsed into {@link ClassExpression}s</li>
+ *       <li>SMARTS are interned to a {@link SmartsTable}</li>
+ *       <li>OBO checksum</li>
+ *       <li>idcodes of the backbones ontology read for the ocl module</li>
+ *       <li>SMILES of classes without SMARTS, see {@link BackboneIndex}</li>
+ *       <li>transitive reduction of is_a</li>
+ *       <li>memory mapped ontology snapshots, see {@link OntologySnapshot}</li>
+ *       <li>is_a reduced on a copy, the class maps keep the declared relations</li>
+ *     </ul>
+ *   </li>
  * </ul>
  * 
  * @author lutz.weber@ontochem.com
@@ -43,11 +61,23 @@ public class OntologyLoader {
 	    private final Map<String,List<String>> ocidSmartsMap = new HashMap<>();
 	    private final Map<String,Set<String>>  ocidParentMap = new HashMap<>();
 	    private final Map<String,String>       ocidNameMap   = new HashMap<>();
+	    private final Map<String,ClassExpression> ocidExpressionMap = new HashMap<>();
+	    private final Map<String,String>       ocidBackboneSmilesMap = new HashMap<>();
+	    private final Map<String,String>       ocidIdcodeMap = new HashMap<>();
+	    private final SmartsTable              smartsTable   = new SmartsTable();
 	    
 	    public Map<String, Set<String>>  getOcidChildMap() { return ocidChildMap; }
 	    public Map<String, String>       getOcidNameMap()  { return ocidNameMap; }
 	    public Map<String, Set<String>>  getOcidParentMap() { return ocidParentMap; }
 	    public Map<String, List<String>> getOcidSmartsMap() { return ocidSmartsMap; }
+	    /** parsed SMARTS lists, only classes with SMARTS have an expression */
+	    public Map<String, ClassExpression> getOcidExpressionMap() { return ocidExpressionMap; }
+	    /** structures of the classes without SMARTS, the backbones, see {@link BackboneIndex} */
+	    public Map<String, String>       getOcidBackboneSmilesMap() { return ocidBackboneSmilesMap; }
+	    /** OCL idcodes as read, the ocl module only, see {@link #setOcidIdcode(String, String)} */
+	    public Map<String, String>       getOcidIdcodeMap() { return ocidIdcodeMap; }
+	    /** distinct plain SMARTS of all expressions, see {@link ClassExpression.Match#getQueryId()} */
+	    public SmartsTable getSmartsTable() { return smartsTable; }
 	    
 	    public void setOcidChildren( String _id, Set<String> _children ) {
 	    	ocidChildMap.put( _id, _children );
@@ -60,6 +90,23 @@ public class OntologyLoader {
 	    }
 	    public void setOcidSmarts( String _id, List<String> _smarts ) {
 	    	ocidSmartsMap.put( _id, _smarts );
+	    	final ClassExpression expression = ClassExpression.parse( _smarts, smartsTable );
+	    	if ( expression != null ) ocidExpressionMap.put( _id, expression );
+	    	else ocidExpressionMap.remove( _id );
+	    }
+	    /** SMARTS list with its expression as parsed before, see {@link OntologySnapshot#ontologyData()} */
+	    public void setOcidSmarts( String _id, List<String> _smarts, ClassExpression _expression ) {
+	    	ocidSmartsMap.put( _id, _smarts );
+	    	if ( _expression != null ) ocidExpressionMap.put( _id, _expression );
+	    	else ocidExpressionMap.remove( _id );
+	    }
+	    public void setOcidBackboneSmiles( String _id, String _smiles ) {
+	    	ocidBackboneSmilesMap.put( _id, _smiles );
+	    }
+	    /** adds the OCL idcode of a class to its expression, call after {@link #setOcidSmarts(String, List)} */
+	    public void setOcidIdcode( String _id, String _idcode ) {
+	    	ocidIdcodeMap.put( _id, _idcode );
+	    	ocidExpressionMap.put( _id, ClassExpression.withFragment( ocidExpressionMap.get( _id ), _idcode, smartsTable ) );
 	    }
 	}
 	// ========================================================================
@@ -83,8 +130,13 @@ public class OntologyLoader {
 		
 		final OntologyData ontData = new OntologyData();
 
-		final boolean isModuleCdkOrAmbit = ChemLib.CHEMLIB_CDK.equals( _module.toLowerCase() ) 
-				|| ChemLib.CHEMLIB_AMBIT.equals( _module.toLowerCase() );
+		// the vf2 and ocl engines search SMARTS they do not support with Ambit
+		final boolean isSmartsModule = ChemLib.CHEMLIB_CDK.equals( _module.toLowerCase() ) 
+				|| ChemLib.CHEMLIB_AMBIT.equals( _module.toLowerCase() )
+				|| ChemLib.CHEMLIB_VF2.equals( _module.toLowerCase() )
+				|| ChemLib.CHEMLIB_OCL.equals( _module.toLowerCase() );
+		final boolean isModuleOcl        = ChemLib.CHEMLIB_OCL.equals( _module.toLowerCase() );
+		int           countIdcodes       = 0;
 		final boolean isModuleCA         = ChemLib.CHEMLIB_CA.equals( _module.toLowerCase() );
 		
 		
@@ -101,6 +153,8 @@ public class OntologyLoader {
 	  				final Set<String>  parentSet	= new HashSet<>();
 	  				String name 					= null;
 	  				String id   					= null;
+	  				String idcode					= null;
+	  				String smiles					= null;
 	  				boolean obsolete 				= false;
 	
 	  				String inConceptLine = null;
@@ -129,10 +183,12 @@ public class OntologyLoader {
 				        else if ( "name".equals( tag ) ) 	name = value;
 					    else if ( "is_a".equals( tag ) ) 	parentSet.add( value ); 
 				        else if ( "has_a".equals( tag ) ) 	childSet.add( value );
+				        else if ( "idcode".equals( tag ) && isModuleOcl ) idcode = value;
+				        else if ( "smiles".equals( tag ) ) 	smiles = value;
 				        
 				        else if ( tag.endsWith( "smarts" ) ) {
 				        	String smarts = null;
-    						if ( isModuleCdkOrAmbit ) {
+    						if ( isSmartsModule ) {
     							if ( _aromatic ) {
     								if ( inConceptLine.startsWith("cdk_aromsmarts: ") ) {
     									smarts = inConceptLine.substring(16);
@@ -168,13 +224,105 @@ public class OntologyLoader {
 			  		    if ( childSet != null ) ontData.setOcidChildren( id, childSet );
 			  		    ontData.setOcidParents( id, parentSet );
 			  		    ontData.setOcidSmarts( id, smartsList );
+			  		    if ( idcode != null && !idcode.isEmpty() ) {
+			  		    	ontData.setOcidIdcode( id, idcode );
+			  		    	countIdcodes++;
+			  		    }
+			  		    if ( smiles != null && !smiles.isEmpty() && smartsList.isEmpty() ) ontData.setOcidBackboneSmiles( id, smiles );
 			            obsolete = false;
 	  				}
 	  			}
 	  		}
 		}
+		if ( isModuleOcl ) LOG.info( "read idcodes: " + countIdcodes );
+		LOG.info( "read backbone smiles: " + ontData.getOcidBackboneSmilesMap().size() );
+		logSmartsTable( ontData.getSmartsTable() );
 		return ontData;
 	}
+
+	/**
+	 * Reports how many repeated SMARTS were collapsed, for the OBO and the snapshot path.
+	 */
+	static void logSmartsTable( SmartsTable _smartsTable ) {
+		LOG.info( "interned smarts: " + _smartsTable.occurrences() + " occurrences, " + _smartsTable.size() + " distinct, "
+				+ _smartsTable.duplicates() + " duplicates collapsed" );
+	}
+	
+	/**
+	 * Copies the is_a relations without those implied by other is_a relations, see
+	 * {@link OntologyGraph#reduceTransitively(Map)}. Ancestors, and therefore the assignment
+	 * output, are unchanged, but fewer parents are checked per class and compound. The
+	 * class maps keep the declared relations.
+	 * 
+	 * @param _ontData
+	 * 
+	 * @return  reduced is_a relations
+	 * 
+	 * @throws IOException  if the is_a relations contain a cycle
+	 */
+	public static Map<String,Set<String>> reducedParentMap( OntologyData _ontData ) throws IOException {
+		final Map<String,Set<String>> parentMap = new HashMap<>();
+		int nEdges = 0;
+		for ( Map.Entry<String,Set<String>> entry : _ontData.getOcidParentMap().entrySet() ) {
+			parentMap.put( entry.getKey(), new HashSet<>( entry.getValue() ) );
+			nEdges += entry.getValue().size();
+		}
+		final int nRemoved = OntologyGraph.reduceTransitively( parentMap );
+		LOG.info( "transitive reduction of is_a: removed " + nRemoved + " of " + nEdges + " relations" );
+		return parentMap;
+	}
+	
+	/**
+	 * @param _inObo
+	 *
+	 * @return  hex SHA-256 of the OBO file, identifies the ontology version
+	 *
+	 * @throws IOException
+	 */
+	public static String checksum( String _inObo ) throws IOException {
+		try ( InputStream in = new FileInputStream( new File( _inObo ) ); ) {
+			final MessageDigest digest = MessageDigest.getInstance( "SHA-256" );
+			final byte[] buffer = new byte[ 1 << 16 ];
+			int nRead;
+			while ( ( nRead = in.read( buffer ) ) > 0 ) digest.update( buffer, 0, nRead );
+			final StringBuilder hex = new StringBuilder();
+			for ( byte b : digest.digest() ) hex.append( String.format( "%02x", b ) );
+			return hex.toString();
+		} catch ( NoSuchAlgorithmException e ) {
+			throw new IOException( "no SHA-256 available: " + e.getMessage(), e );
+		}
+	}
+	
+	/**
+	 * Opens a compiled ontology, see {@link OntologySnapshot}. The file is mapped read only
+	 * and classes are decoded when accessed.
+	 * 
+	 * @param _snapshot
+	 * @param _ontologyKey  checksum of the OBO, see {@link #checksum(String)}
+	 * @param _module       lower case name of chemical library used
+	 * @param _aromatic
+	 * 
+	 * @return  snapshot or <code>null</code> if the file does not exist or was compiled from
+	 *          another OBO, for another module or with another format version
+	 * 
+	 * @throws IOException
+	 */
+	public static OntologySnapshot openSnapshot( String _snapshot, String _ontologyKey, String _module, boolean _aromatic ) throws IOException {
+		
+		final File file = new File( _snapshot );
+		if ( !file.exists() ) {
+			LOG.info( "no ontology snapshot yet: " + _snapshot );
+			return null;
+		}
+		// the mapping stays valid after the channel is closed
+		try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ); ) {
+			if ( channel.size() > Integer.MAX_VALUE ) throw new IOException( "ontology snapshot too large: " + _snapshot );
+			final MappedByteBuffer buffer   = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+			final OntologySnapshot snapshot = OntologySnapshot.of( buffer, _ontologyKey, _module, _aromatic );
+			if ( snapshot != null ) LOG.info( "opened ontology snapshot: " + _snapshot + ", " + snapshot.size() + " classes" );
+			return snapshot;
+		}
+	}
 	
 	// ==== command line usage (testing) ======================================
 	public static void main( String[] _args ) throws Exception {
@@ -0,0 +1,748 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.logging.Logger;
+
+import com.ontochem.assignment.OntologyLoader.OntologyData;
+
+/**
+ * Compiled ontology in a versioned binary file, opened memory mapped by
+ * {@link OntologyLoader#openSnapshot(String, String, String, boolean)} instead of parsing the
+ * OBO and building the hierarchy, its closures and the {@link OntologyGraph} again for every run.
+ * <p>
+ * Class ids are stored once, in the order of the {@link ClosureIndex}, and the class maps
+ * refer to classes by that index. Sections follow each other in this order:
+ * <ul>
+ *   <li>header: magic, format version, checksum of the OBO, module, aromaticity, number of
+ *       classes and the root</li>
+ *   <li>class ids, names and flags</li>
+ *   <li>is_a relations as declared in the OBO and child relations as compressed sparse rows</li>
+ *   <li>table of the distinct SMARTS list entries and the SMARTS list of every class as rows into it</li>
+ *   <li>idcodes and backbone SMILES</li>
+ *   <li>ancestor and offspring closures, see {@link CompressedBitmap}</li>
+ *   <li>the {@link SmartsTable} and the {@link ClassExpression} of every class, encoded in
+ *       prefix order as rows of node codes with the SMARTS ids of the leaves</li>
+ *   <li>the graph in its own topological index: root, class ids, the transitively reduced
+ *       is_a relations, child relations, evaluation parents and children, walked classes,
+ *       required features and descendant closures</li>
+ * </ul>
+ * A string section is a count, offsets into its UTF-8 bytes and the bytes, a bitmap section
+ * the same for the serialized bitmaps, a long section a count and the values. Opening only
+ * walks the section headers, the maps, closures and graph are then decoded in one pass by
+ * {@link #ontologyData()}, {@link #closureIndex()} and {@link #ontologyGraph(Map)}. No SMARTS
+ * is parsed and no relation reduced, the distinct SMARTS are only compiled to queries by the
+ * {@link CompiledQueryRegistry}. The SMARTS lists depend on the module, so a snapshot is only
+ * used with the module, aromaticity and OBO checksum it was compiled with.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *       <li>format version 2, declared is_a relations instead of reduced ones</li>
+ *       <li>format version 3, class expressions and the compiled ontology graph</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public final class OntologySnapshot {
+
+	private final static Logger LOG = Logger.getLogger( OntologySnapshot.class.getName() );
+
+	private final static int  MAGIC   = 0x4F435350;	// "OCSP"
+	private final static int  VERSION = 3;
+
+	/** class has a stanza in the OBO, not only referenced */
+	private final static byte DEFINED     = 1;
+	/** class is a key of the child map */
+	private final static byte CHILD_ENTRY = 2;
+
+	/** node codes of the class expressions, a leaf is followed by its SMARTS id */
+	private final static int  MATCH      = 0;
+	/** followed by the mode, the threshold and the SMARTS id */
+	private final static int  COUNT      = 1;
+	private final static int  NOT        = 2;
+	/** followed by the number of operands */
+	private final static int  AND        = 3;
+	/** followed by the number of operands */
+	private final static int  OR         = 4;
+	/** followed by the stereo match and the plain expression */
+	private final static int  STEREO_AND = 5;
+
+	private final ByteBuffer    buffer;
+	private final int           nClasses;
+	private final int           root;
+	private final StringSection ids;
+	private final StringSection names;
+	private final int           flagsPos;
+	private final RowSection    parents;
+	private final RowSection    children;
+	private final StringSection smartsTable;
+	private final RowSection    classSmarts;
+	private final StringSection idcodes;
+	private final StringSection backboneSmiles;
+	private final BitmapSection ancestors;
+	private final BitmapSection offsprings;
+	private final int           nOccurrences;
+	private final StringSection queryTable;
+	private final RowSection    expressions;
+	private final int           graphRoot;
+	private final LongSection   graphOcids;
+	private final RowSection    graphParents;
+	private final RowSection    graphChildren;
+	private final RowSection    evalParents;
+	private final RowSection    evalChildren;
+	private final LongSection   walked;
+	private final LongSection   requiredFeatures;
+	private final BitmapSection descendants;
+
+	/**
+	 * @param _buffer  whole snapshot, header already checked
+	 * @param _pos     position after the header
+	 */
+	private OntologySnapshot( ByteBuffer _buffer, int _nClasses, int _root, int _pos ) {
+		buffer         = _buffer;
+		nClasses       = _nClasses;
+		root           = _root;
+		ids            = new StringSection( _buffer, _pos );
+		names          = new StringSection( _buffer, ids.end );
+		flagsPos       = names.end + 4;
+		parents        = new RowSection( _buffer, flagsPos + _buffer.getInt( names.end ) );
+		children       = new RowSection( _buffer, parents.end );
+		smartsTable    = new StringSection( _buffer, children.end );
+		classSmarts    = new RowSection( _buffer, smartsTable.end );
+		idcodes        = new StringSection( _buffer, classSmarts.end );
+		backboneSmiles = new StringSection( _buffer, idcodes.end );
+		ancestors      = new BitmapSection( _buffer, backboneSmiles.end );
+		offsprings     = new BitmapSection( _buffer, ancestors.end );
+		nOccurrences   = _buffer.getInt( offsprings.end );
+		queryTable     = new StringSection( _buffer, offsprings.end + 4 );
+		expressions    = new RowSection( _buffer, queryTable.end );
+		graphRoot      = _buffer.getInt( expressions.end );
+		graphOcids     = new LongSection( _buffer, expressions.end + 4 );
+		graphParents   = new RowSection( _buffer, graphOcids.end );
+		graphChildren  = new RowSection( _buffer, graphParents.end );
+		evalParents    = new RowSection( _buffer, graphChildren.end );
+		evalChildren   = new RowSection( _buffer, evalParents.end );
+		walked         = new LongSection( _buffer, evalChildren.end );
+		requiredFeatures = new LongSection( _buffer, walked.end );
+		descendants    = new BitmapSection( _buffer, requiredFeatures.end );
+		if ( descendants.end != _buffer.limit() ) {
+			throw new IllegalStateException( "ontology snapshot ends at " + descendants.end + " of " + _buffer.limit() + " bytes" );
+		}
+	}
+
+	/**
+	 * @param _buffer       mapped snapshot file
+	 * @param _ontologyKey  checksum of the OBO, see {@link OntologyLoader#checksum(String)}
+	 * @param _module
+	 * @param _aromatic
+	 *
+	 * @return  snapshot or <code>null</code> if it is of another format version or was
+	 *          compiled from another OBO or for another module
+	 *
+	 * @throws IOException  if the file is no ontology snapshot
+	 */
+	static OntologySnapshot of( ByteBuffer _buffer, String _ontologyKey, String _module, boolean _aromatic ) throws IOException {
+		try {
+			if ( _buffer.getInt( 0 ) != MAGIC ) throw new IOException( "no ontology snapshot" );
+			if ( _buffer.getInt( 4 ) != VERSION ) {
+				LOG.info( "ontology snapshot has format version " + _buffer.getInt( 4 ) + ", expected " + VERSION );
+				return null;
+			}
+			int pos = 8;
+			final String key = readString( _buffer, pos );
+			pos += 4 + _buffer.getInt( pos );
+			final String module = readString( _buffer, pos );
+			pos += 4 + _buffer.getInt( pos );
+			final boolean aromatic = _buffer.get( pos++ ) != 0;
+			if ( !key.equals( _ontologyKey ) ) {
+				LOG.info( "ontology snapshot is stale, compiled from another ontology version" );
+				return null;
+			}
+			if ( !module.equals( _module ) || aromatic != _aromatic ) {
+				LOG.info( "ontology snapshot was compiled for module " + module + ( aromatic ? " aromatic" : "" ) );
+				return null;
+			}
+			final int nClasses = _buffer.getInt( pos );
+			final int root     = _buffer.getInt( pos + 4 );
+			return new OntologySnapshot( _buffer, nClasses, root, pos + 8 );
+		} catch ( IndexOutOfBoundsException | IllegalStateException e ) {
+			throw new IOException( "truncated ontology snapshot: " + e.getMessage(), e );
+		}
+	}
+
+	/**
+	 * Writes the snapshot to a temporary file first and moves it in place, so that jobs
+	 * running in parallel never map a partly written snapshot.
+	 *
+	 * @param _filename
+	 * @param _ontologyKey   checksum of the OBO, see {@link OntologyLoader#checksum(String)}
+	 * @param _module
+	 * @param _aromatic
+	 * @param _ontData       ontology as read from the OBO, with the child map generated if
+	 *                       necessary and the declared is_a relations, class expressions are
+	 *                       written in their current operand order
+	 * @param _rootId
+	 * @param _closureIndex  closures of the classes of <code>_ontData</code>
+	 * @param _graph         compiled from <code>_ontData</code> with the reduced is_a relations,
+	 *                       see {@link OntologyLoader#reducedParentMap(OntologyData)}
+	 *
+	 * @throws IOException
+	 */
+	public static void write( String _filename, String _ontologyKey, String _module, boolean _aromatic,
+							  OntologyData _ontData, String _rootId, ClosureIndex _closureIndex, OntologyGraph _graph ) throws IOException {
+
+		final int      n   = _closureIndex.size();
+		final String[] ids = new String[ n ];
+		for ( int i = 0; i < n; i++ ) ids[ i ] = _closureIndex.id( i );
+
+		final Map<String,Set<String>>  parentMap = _ontData.getOcidParentMap();
+		final Map<String,Set<String>>  childMap  = _ontData.getOcidChildMap();
+		final Map<String,List<String>> smartsMap = _ontData.getOcidSmartsMap();
+		final Map<String,Integer>      smartsIds = new LinkedHashMap<>();
+		final String[] names   = new String[ n ];
+		final byte[]   flags   = new byte[ n ];
+		final int[][]  parentRows = new int[ n ][];
+		final int[][]  childRows  = new int[ n ][];
+		final int[][]  smartsRows = new int[ n ][];
+		final String[] idcodes = new String[ n ];
+		final String[] smiles  = new String[ n ];
+		final int[][]  expressionRows = new int[ n ][];
+		final List<Integer> codes = new ArrayList<>();
+		for ( int i = 0; i < n; i++ ) {
+			names[ i ]      = _ontData.getOcidNameMap().get( ids[ i ] );
+			flags[ i ]      = (byte) ( ( parentMap.containsKey( ids[ i ] ) ? DEFINED : 0 ) | ( childMap.containsKey( ids[ i ] ) ? CHILD_ENTRY : 0 ) );
+			parentRows[ i ] = indices( parentMap.get( ids[ i ] ), _closureIndex );
+			childRows[ i ]  = indices( childMap.get( ids[ i ] ), _closureIndex );
+			final List<String> smartsList = smartsMap.getOrDefault( ids[ i ], Collections.<String>emptyList() );
+			smartsRows[ i ] = new int[ smartsList.size() ];
+			for ( int k = 0; k < smartsList.size(); k++ ) {
+				smartsRows[ i ][ k ] = smartsIds.computeIfAbsent( smartsList.get( k ), smarts -> smartsIds.size() );
+			}
+			idcodes[ i ] = _ontData.getOcidIdcodeMap().get( ids[ i ] );
+			smiles[ i ]  = _ontData.getOcidBackboneSmilesMap().get( ids[ i ] );
+			codes.clear();
+			final ClassExpression expression = _ontData.getOcidExpressionMap().get( ids[ i ] );
+			if ( expression != null ) encode( expression, codes );
+			expressionRows[ i ] = new int[ codes.size() ];
+			for ( int k = 0; k < codes.size(); k++ ) expressionRows[ i ][ k ] = codes.get( k );
+		}
+		final SmartsTable smartsTable = _ontData.getSmartsTable();
+		final String[]    querySmarts = new String[ smartsTable.size() ];
+		for ( int k = 0; k < querySmarts.length; k++ ) querySmarts[ k ] = smartsTable.smarts( k );
+
+		final int    g        = _graph.size();
+		final long[] ocids    = new long[ g ];
+		final long[] walkedBits = Bits.create( g );
+		final long[] features = new long[ g ];
+		for ( int i = 0; i < g; i++ ) {
+			ocids[ i ]    = _graph.ocid( i );
+			features[ i ] = _graph.requiredFeatures( i );
+			if ( _graph.isWalked( i ) ) Bits.set( walkedBits, i );
+		}
+
+		final File file      = new File( _filename );
+		final File writeFile = new File( _filename + ".tmp" );
+		try ( DataOutputStream out = new DataOutputStream(
+		                               new BufferedOutputStream(
+		                                 new FileOutputStream( writeFile ) ) ); ) {
+			out.writeInt( MAGIC );
+			out.writeInt( VERSION );
+			writeString( out, _ontologyKey );
+			writeString( out, _module );
+			out.writeByte( _aromatic ? 1 : 0 );
+			out.writeInt( n );
+			out.writeInt( _closureIndex.indexOf( _rootId ) );
+			writeStrings( out, ids );
+			writeStrings( out, names );
+			out.writeInt( n );
+			out.write( flags );
+			writeRows( out, parentRows );
+			writeRows( out, childRows );
+			writeStrings( out, smartsIds.keySet().toArray( new String[ 0 ] ) );
+			writeRows( out, smartsRows );
+			writeStrings( out, idcodes );
+			writeStrings( out, smiles );
+			writeBitmaps( out, n, i -> _closureIndex.ancestorsOf( i ) );
+			writeBitmaps( out, n, i -> _closureIndex.offspringsOf( i ) );
+			out.writeInt( smartsTable.occurrences() );
+			writeStrings( out, querySmarts );
+			writeRows( out, expressionRows );
+			out.writeInt( _graph.root() );
+			writeLongs( out, ocids );
+			writeRows( out, rows( g, _graph::parentStart, _graph::parentEnd, _graph::parent ) );
+			writeRows( out, rows( g, _graph::childStart, _graph::childEnd, _graph::child ) );
+			writeRows( out, rows( g, _graph::evalParentStart, _graph::evalParentEnd, _graph::evalParent ) );
+			writeRows( out, rows( g, _graph::evalChildStart, _graph::evalChildEnd, _graph::evalChild ) );
+			writeLongs( out, walkedBits );
+			writeLongs( out, features );
+			writeBitmaps( out, g, _graph::descendants );
+		}
+		Files.move( writeFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		LOG.info( "wrote ontology snapshot: " + _filename + ", " + n + " classes, " + smartsIds.size() + " distinct smarts list entries, "
+				+ querySmarts.length + " distinct queries, " + file.length() + " bytes" );
+	}
+
+	/**
+	 * Reads the OBO, checks and indexes its hierarchy, compiles the graph and writes the snapshot, the steps
+	 * {@link AssignCompounds#runAssignment(AssignCompounds.AssignmentParameters)} runs
+	 * before it walks the first compound.
+	 *
+	 * @param _inObo
+	 * @param _snapshot  name of the snapshot file written
+	 * @param _module    lower case name of chemical library used
+	 * @param _aromatic
+	 * @param _nThreads  threads for the closures
+	 *
+	 * @throws IOException
+	 */
+	public static void compile( String _inObo, String _snapshot, String _module, boolean _aromatic, int _nThreads ) throws IOException {
+		final String       ontologyKey = OntologyLoader.checksum( _inObo );
+		final OntologyData ontData     = OntologyLoader.readObo( _inObo, _module, _aromatic );
+		final ClassHierarchy hierarchy = ClassHierarchy.build( ontData.getOcidParentMap(), ontData.getOcidChildMap(), ontData.getOcidNameMap() );
+		if ( hierarchy.isChildMapDerived() ) ontData.getOcidChildMap().putAll( hierarchy.childMap() );
+		final ClosureIndex  closureIndex = hierarchy.closureIndex( _nThreads );
+		final OntologyGraph graph        = OntologyGraph.compile( hierarchy.root(), OntologyLoader.reducedParentMap( ontData ),
+																  ontData.getOcidChildMap(), ontData.getOcidExpressionMap() );
+		write( _snapshot, ontologyKey, _module, _aromatic, ontData, hierarchy.root(), closureIndex, graph );
+	}
+
+	// ---- accessors ---------------------------------------------------------
+
+	public int size() { return nClasses; }
+
+	public String id( int _idx ) { return ids.get( _idx ); }
+
+	/**
+	 * @return  name of provided class, <code>null</code> if it has none
+	 */
+	public String name( int _idx ) { return names.get( _idx ); }
+
+	public String rootId() { return ids.get( root ); }
+
+	/**
+	 * Builds the maps as {@link OntologyLoader#readObo(String, String, boolean)} does,
+	 * with the child map generated if necessary. The {@link SmartsTable} and the class
+	 * expressions are restored with the same SMARTS ids, nothing is parsed.
+	 *
+	 * @return
+	 */
+	public OntologyData ontologyData() {
+		final OntologyData ontData = new OntologyData();
+		final String[]     idArray = new String[ nClasses ];
+		for ( int i = 0; i < nClasses; i++ ) idArray[ i ] = ids.get( i );
+		final String[]     smartsArray = new String[ smartsTable.count ];
+		for ( int k = 0; k < smartsArray.length; k++ ) smartsArray[ k ] = smartsTable.get( k );
+		final String[]     querySmarts = new String[ queryTable.count ];
+		for ( int k = 0; k < querySmarts.length; k++ ) querySmarts[ k ] = queryTable.get( k );
+		ontData.getSmartsTable().restore( querySmarts, nOccurrences );
+		final ExpressionDecoder decoder = new ExpressionDecoder( expressions, querySmarts );
+
+		for ( int i = 0; i < nClasses; i++ ) {
+			final byte flags = buffer.get( flagsPos + i );
+			if ( ( flags & CHILD_ENTRY ) != 0 ) ontData.setOcidChildren( idArray[ i ], idSet( children, i, idArray ) );
+			if ( ( flags & DEFINED ) == 0 ) continue;
+			final String name = names.get( i );
+			if ( name != null ) ontData.setOcidName( idArray[ i ], name );
+			ontData.setOcidParents( idArray[ i ], idSet( parents, i, idArray ) );
+			final List<String> smartsList = new ArrayList<>( classSmarts.end( i ) - classSmarts.start( i ) );
+			for ( int edge = classSmarts.start( i ); edge < classSmarts.end( i ); edge++ ) smartsList.add( smartsArray[ classSmarts.target( edge ) ] );
+			ontData.setOcidSmarts( idArray[ i ], smartsList, decoder.decode( i ) );
+			// the expression already holds the fragment of the idcode
+			final String idcode = idcodes.get( i );
+			if ( idcode != null ) ontData.getOcidIdcodeMap().put( idArray[ i ], idcode );
+			final String smiles = backboneSmiles.get( i );
+			if ( smiles != null ) ontData.setOcidBackboneSmiles( idArray[ i ], smiles );
+		}
+		OntologyLoader.logSmartsTable( ontData.getSmartsTable() );
+		return ontData;
+	}
+
+	/**
+	 * @return  closures of all classes, decoded from the snapshot
+	 */
+	public ClosureIndex closureIndex() {
+		final String[]           idArray       = new String[ nClasses ];
+		final CompressedBitmap[] ancestorArray  = new CompressedBitmap[ nClasses ];
+		final CompressedBitmap[] offspringArray = new CompressedBitmap[ nClasses ];
+		for ( int i = 0; i < nClasses; i++ ) {
+			idArray[ i ]        = ids.get( i );
+			ancestorArray[ i ]  = ancestors.get( i );
+			offspringArray[ i ] = offsprings.get( i );
+		}
+		return new ClosureIndex( idArray, ancestorArray, offspringArray );
+	}
+
+	/**
+	 * Graph as compiled when the snapshot was written, with the transitively reduced is_a
+	 * relations.
+	 *
+	 * @param _ocidClass2expressionMap  class expressions, see {@link #ontologyData()}, possibly
+	 *                                  reordered since
+	 *
+	 * @return
+	 *
+	 * @throws IOException
+	 */
+	public OntologyGraph ontologyGraph( Map<String,ClassExpression> _ocidClass2expressionMap ) throws IOException {
+		final CompressedBitmap[] descendantArray = new CompressedBitmap[ graphOcids.count ];
+		for ( int i = 0; i < descendantArray.length; i++ ) descendantArray[ i ] = descendants.get( i );
+		final OntologyGraph graph = OntologyGraph.of( graphOcids.toArray(), graphParents.toArrays(), graphChildren.toArrays(),
+				evalParents.toArrays(), evalChildren.toArrays(), walked.toArray(), descendantArray, requiredFeatures.toArray(),
+				graphRoot, _ocidClass2expressionMap );
+		LOG.info( "restored ontology graph: " + graph.size() + " classes" );
+		return graph;
+	}
+
+	private static Set<String> idSet( RowSection _rows, int _idx, String[] _idArray ) {
+		final Set<String> idSet = new HashSet<>();
+		for ( int edge = _rows.start( _idx ); edge < _rows.end( _idx ); edge++ ) idSet.add( _idArray[ _rows.target( edge ) ] );
+		return idSet;
+	}
+
+	// ==== sections ==========================================================
+	/**
+	 * Count, offsets of each string into the bytes and the UTF-8 bytes, an empty string
+	 * stands for <code>null</code>.
+	 */
+	private final static class StringSection {
+
+		private final ByteBuffer buffer;
+		private final int        count;
+		private final int        offsetsPos;
+		private final int        bytesPos;
+		private final int        end;
+
+		private StringSection( ByteBuffer _buffer, int _pos ) {
+			buffer     = _buffer;
+			count      = _buffer.getInt( _pos );
+			offsetsPos = _pos + 4;
+			bytesPos   = offsetsPos + 4 * ( count + 1 );
+			end        = bytesPos + _buffer.getInt( offsetsPos + 4 * count );
+		}
+
+		private String get( int _idx ) {
+			final int from = buffer.getInt( offsetsPos + 4 * _idx );
+			final int to   = buffer.getInt( offsetsPos + 4 * _idx + 4 );
+			if ( from == to ) return null;
+			return readBytes( buffer, bytesPos + from, to - from );
+		}
+	}
+
+	/**
+	 * Compressed sparse rows, number of rows, offsets and targets.
+	 */
+	private final static class RowSection {
+
+		private final ByteBuffer buffer;
+		private final int        nRows;
+		private final int        offsetsPos;
+		private final int        targetsPos;
+		private final int        end;
+
+		private RowSection( ByteBuffer _buffer, int _pos ) {
+			buffer     = _buffer;
+			nRows      = _buffer.getInt( _pos );
+			offsetsPos = _pos + 4;
+			targetsPos = offsetsPos + 4 * ( nRows + 1 );
+			end        = targetsPos + 4 * _buffer.getInt( offsetsPos + 4 * nRows );
+		}
+
+		private int start( int _row )   { return buffer.getInt( offsetsPos + 4 * _row ); }
+		private int end( int _row )     { return buffer.getInt( offsetsPos + 4 * _row + 4 ); }
+		private int target( int _edge ) { return buffer.getInt( targetsPos + 4 * _edge ); }
+
+		/**
+		 * @return  offsets and targets, as used by {@link OntologyGraph}
+		 */
+		private int[][] toArrays() {
+			final int[] offsets = new int[ nRows + 1 ];
+			ints( buffer, offsetsPos ).get( offsets );
+			final int[] targets = new int[ offsets[ nRows ] ];
+			ints( buffer, targetsPos ).get( targets );
+			return new int[][] { offsets, targets };
+		}
+	}
+
+	/**
+	 * Count and values.
+	 */
+	private final static class LongSection {
+
+		private final ByteBuffer buffer;
+		private final int        count;
+		private final int        valuesPos;
+		private final int        end;
+
+		private LongSection( ByteBuffer _buffer, int _pos ) {
+			buffer    = _buffer;
+			count     = _buffer.getInt( _pos );
+			valuesPos = _pos + 4;
+			end       = valuesPos + 8 * count;
+		}
+
+		private long[] toArray() {
+			final long[] values = new long[ count ];
+			final ByteBuffer view = buffer.duplicate();
+			view.position( valuesPos );
+			final LongBuffer longs = view.slice().asLongBuffer();
+			longs.get( values );
+			return values;
+		}
+	}
+
+	/**
+	 * Decodes the class expressions, a node code followed by its arguments and operands.
+	 */
+	private final static class ExpressionDecoder {
+
+		private final RowSection rows;
+		private final String[]   smarts;
+		private int              edge;
+
+		private ExpressionDecoder( RowSection _rows, String[] _smarts ) {
+			rows   = _rows;
+			smarts = _smarts;
+		}
+
+		/**
+		 * @return  expression of provided class, <code>null</code> if it has none
+		 */
+		private ClassExpression decode( int _idx ) {
+			if ( rows.start( _idx ) == rows.end( _idx ) ) return null;
+			edge = rows.start( _idx );
+			return next();
+		}
+
+		private ClassExpression next() {
+			final int code = rows.target( edge++ );
+			switch ( code ) {
+				case MATCH:
+					final int queryId = rows.target( edge++ );
+					return new ClassExpression.Match( smarts[ queryId ], queryId );
+				case COUNT:
+					final ClassExpression.Count.Mode mode = ClassExpression.Count.Mode.values()[ rows.target( edge++ ) ];
+					final int threshold    = rows.target( edge++ );
+					final int countQueryId = rows.target( edge++ );
+					return new ClassExpression.Count( mode, threshold, smarts[ countQueryId ], countQueryId );
+				case NOT:
+					return new ClassExpression.Not( next() );
+				case AND:
+					return new ClassExpression.And( operands() );
+				case OR:
+					return new ClassExpression.Or( operands() );
+				case STEREO_AND:
+					final ClassExpression.Match stereo = (ClassExpression.Match) next();
+					return new ClassExpression.StereoAnd( stereo, next() );
+				default:
+					throw new IllegalStateException( "unknown class expression code " + code );
+			}
+		}
+
+		private List<ClassExpression> operands() {
+			final int nOperands = rows.target( edge++ );
+			final List<ClassExpression> operands = new ArrayList<>( nOperands );
+			for ( int k = 0; k < nOperands; k++ ) operands.add( next() );
+			return operands;
+		}
+	}
+
+	/**
+	 * Count, offsets of each bitmap into the bytes and the bitmaps as written by
+	 * {@link CompressedBitmap#writeTo(DataOutputStream)}.
+	 */
+	private final static class BitmapSection {
+
+		private final ByteBuffer buffer;
+		private final int        offsetsPos;
+		private final int        bytesPos;
+		private final int        end;
+
+		private BitmapSection( ByteBuffer _buffer, int _pos ) {
+			buffer     = _buffer;
+			final int count = _buffer.getInt( _pos );
+			offsetsPos = _pos + 4;
+			bytesPos   = offsetsPos + 4 * ( count + 1 );
+			end        = bytesPos + _buffer.getInt( offsetsPos + 4 * count );
+		}
+
+		private CompressedBitmap get( int _idx ) {
+			return CompressedBitmap.read( buffer, bytesPos + buffer.getInt( offsetsPos + 4 * _idx ) );
+		}
+	}
+	// ========================================================================
+
+	/**
+	 * @return  ints from provided position on, read through a view so that the position of
+	 *          the buffer shared by all sections is not moved
+	 */
+	private static IntBuffer ints( ByteBuffer _buffer, int _pos ) {
+		final ByteBuffer view = _buffer.duplicate();
+		view.position( _pos );
+		return view.slice().asIntBuffer();
+	}
+
+	// ---- write helpers -----------------------------------------------------
+
+	/**
+	 * Appends provided expression in prefix order, see the node codes.
+	 */
+	private static void encode( ClassExpression _expression, List<Integer> _codes ) {
+		if ( _expression instanceof ClassExpression.Match ) {
+			_codes.add( MATCH );
+			_codes.add( ( (ClassExpression.Match) _expression ).getQueryId() );
+		} else if ( _expression instanceof ClassExpression.Count ) {
+			final ClassExpression.Count count = (ClassExpression.Count) _expression;
+			_codes.add( COUNT );
+			_codes.add( count.getMode().ordinal() );
+			_codes.add( count.getThreshold() );
+			_codes.add( count.getQueryId() );
+		} else if ( _expression instanceof ClassExpression.Not ) {
+			_codes.add( NOT );
+			encode( ( (ClassExpression.Not) _expression ).getOperand(), _codes );
+		} else if ( _expression instanceof ClassExpression.And ) {
+			final List<ClassExpression> operands = ( (ClassExpression.And) _expression ).getOperands();
+			_codes.add( AND );
+			_codes.add( operands.size() );
+			for ( ClassExpression operand : operands ) encode( operand, _codes );
+		} else if ( _expression instanceof ClassExpression.Or ) {
+			final List<ClassExpression> operands = ( (ClassExpression.Or) _expression ).getOperands();
+			_codes.add( OR );
+			_codes.add( operands.size() );
+			for ( ClassExpression operand : operands ) encode( operand, _codes );
+		} else if ( _expression instanceof ClassExpression.StereoAnd ) {
+			_codes.add( STEREO_AND );
+			encode( ( (ClassExpression.StereoAnd) _expression ).getStereo(), _codes );
+			encode( ( (ClassExpression.StereoAnd) _expression ).getPlain(), _codes );
+		} else {
+			throw new IllegalArgumentException( "class expression can not be written: " + _expression.getClass().getName() );
+		}
+	}
+
+	/**
+	 * @return  rows of a relation of the {@link OntologyGraph}
+	 */
+	private static int[][] rows( int _n, IntUnaryOperator _start, IntUnaryOperator _end, IntUnaryOperator _target ) {
+		final int[][] rows = new int[ _n ][];
+		for ( int i = 0; i < _n; i++ ) {
+			final int start = _start.applyAsInt( i );
+			rows[ i ] = new int[ _end.applyAsInt( i ) - start ];
+			for ( int k = 0; k < rows[ i ].length; k++ ) rows[ i ][ k ] = _target.applyAsInt( start + k );
+		}
+		return rows;
+	}
+
+	private static void writeLongs( DataOutputStream _out, long[] _values ) throws IOException {
+		_out.writeInt( _values.length );
+		for ( long value : _values ) _out.writeLong( value );
+	}
+
+	private static int[] indices( Set<String> _ids, ClosureIndex _closureIndex ) {
+		if ( _ids == null ) return new int[ 0 ];
+		final int[] indices = new int[ _ids.size() ];
+		int k = 0;
+		for ( String id : _ids ) indices[ k++ ] = _closureIndex.indexOf( id );
+		return indices;
+	}
+
+	private static void writeString( DataOutputStream _out, String _str ) throws IOException {
+		final byte[] bytes = _str.getBytes( StandardCharsets.UTF_8 );
+		_out.writeInt( bytes.length );
+		_out.write( bytes );
+	}
+
+	private static String readString( ByteBuffer _buffer, int _pos ) {
+		return readBytes( _buffer, _pos + 4, _buffer.getInt( _pos ) );
+	}
+
+	/**
+	 * @return  UTF-8 string at provided position, read through a view so that the position
+	 *          of the buffer shared by all sections is not moved
+	 */
+	private static String readBytes( ByteBuffer _buffer, int _pos, int _length ) {
+		final byte[]     bytes = new byte[ _length ];
+		final ByteBuffer view  = _buffer.duplicate();
+		view.position( _pos );
+		view.get( bytes );
+		return new String( bytes, StandardCharsets.UTF_8 );
+	}
+
+	private static void writeStrings( DataOutputStream _out, String[] _strings ) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		_out.writeInt( _strings.length );
+		_out.writeInt( 0 );
+		for ( String str : _strings ) {
+			if ( str != null ) bytes.write( str.getBytes( StandardCharsets.UTF_8 ) );
+			_out.writeInt( bytes.size() );
+		}
+		bytes.writeTo( _out );
+	}
+
+	private static void writeRows( DataOutputStream _out, int[][] _rows ) throws IOException {
+		_out.writeInt( _rows.length );
+		int offset = 0;
+		_out.writeInt( offset );
+		for ( int[] row : _rows ) {
+			offset += row.length;
+			_out.writeInt( offset );
+		}
+		for ( int[] row : _rows ) {
+			for ( int target : row ) _out.writeInt( target );
+		}
+	}
+
+	private static void writeBitmaps( DataOutputStream _out, int _n, IntFunction<CompressedBitmap> _bitmaps ) throws IOException {
+		final ByteArrayOutputStream bytes     = new ByteArrayOutputStream();
+		final DataOutputStream      bitmapOut = new DataOutputStream( bytes );
+		_out.writeInt( _n );
+		_out.writeInt( 0 );
+		for ( int i = 0; i < _n; i++ ) {
+			_bitmaps.apply( i ).writeTo( bitmapOut );
+			_out.writeInt( bytes.size() );
+		}
+		bytes.writeTo( _out );
+	}
+
+	// ==== command line usage ================================================
+	public static void main( String[] _args ) throws Exception {
+		if ( _args.length < 4 || !"compile".equals( _args[0] ) ) {
+			System.err.println( "Compile an ontology snapshot.\n" +
+					"usage: java " + OntologySnapshot.class.getName() + " compile OBO SNAPSHOT CHEMLIB [THREADCOUNT]\n" );
+			System.exit( 1 );
+		}
+		final String module = ChemLib.resolveChemLib( _args[3] );
+		if ( module == null ) {
+			System.err.println( "Unknown chemical library: '" + _args[3] + "'" );
+			System.exit( 1 );
+		}
+		final int nThreads = _args.length > 4 ? Integer.parseInt( _args[4] ) : Runtime.getRuntime().availableProcessors();
+		// the assignment always reads aromatic SMARTS
+		compile( _args[1], _args[2], module, true, nThreads );
+	}
+}
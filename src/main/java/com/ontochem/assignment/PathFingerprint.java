@@ -0,0 +1,179 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.openscience.cdk.AtomRef;
+import org.openscience.cdk.graph.Cycles;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.isomorphism.matchers.QueryAtom;
+
+/**
+ * Hashed screening fingerprint in the spirit of the Daylight substructure screen. Bits
+ * are set for bonded element pairs and for element paths of three atoms, a separate
+ * word holds the sizes of small rings.
+ * <p>
+ * A query sets bits only for definite features: atoms whose element is fixed by their
+ * expression (see {@link FeatureSignature}) and rings of its own graph. Atoms with
+ * element lists, wildcards or only recursive environments give no bits, so such
+ * queries degrade to no screen. Every query path maps onto a path of the molecule and
+ * every query ring onto a simple cycle of the same size, therefore a query whose bits
+ * are not all set in the molecule fingerprint can not match.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public final class PathFingerprint {
+
+	private final static Logger LOG = Logger.getLogger( PathFingerprint.class.getName() );
+
+	/** fingerprint of a query without definite paths or rings, every molecule passes */
+	public final static PathFingerprint NONE = new PathFingerprint( new long[ 0 ], 0 );
+
+	private final static int N_WORDS       = 16;
+	private final static int N_BITS        = N_WORDS * 64;
+	private final static int MAX_RING_SIZE = 8;
+
+	private final long[] pathBits;
+	private final int    ringSizes;
+
+	private PathFingerprint( long[] _pathBits, int _ringSizes ) {
+		pathBits  = _pathBits;
+		ringSizes = _ringSizes;
+	}
+
+	/**
+	 * @param _query  query parsed by {@link FeatureSignature#parseQuery(String)}, may be
+	 *                <code>null</code>
+	 *
+	 * @return  fingerprint of the definite paths and rings of provided query
+	 */
+	public static PathFingerprint ofQuery( IAtomContainer _query ) {
+
+		if ( _query == null ) return NONE;
+
+		final int[] elements = new int[ _query.getAtomCount() ];
+		for ( int i = 0; i < elements.length; i++ ) {
+			final int element = FeatureSignature.requiredElement(
+					( (QueryAtom) AtomRef.deref( _query.getAtom( i ) ) ).getExpression() );
+			elements[ i ] = element > 1 ? element : 0;
+		}
+
+		final long[] bits = new long[ N_WORDS ];
+		boolean hasBits = setPathBits( _query, elements, bits );
+
+		int ringSizes = 0;
+		try {
+			for ( int[] path : Cycles.sssr( _query ).paths() ) {
+				final int size = path.length - 1;
+				if ( size <= MAX_RING_SIZE ) ringSizes |= 1 << size;
+			}
+		} catch ( Exception e ) {
+			ringSizes = 0;
+		}
+
+		if ( !hasBits && ringSizes == 0 ) return NONE;
+		return new PathFingerprint( bits, ringSizes );
+	}
+
+	/**
+	 * @param _molecule  molecule as parsed
+	 *
+	 * @return  fingerprint of all paths and small rings of provided molecule
+	 */
+	public static PathFingerprint ofMolecule( IAtomContainer _molecule ) {
+
+		final int[] elements = new int[ _molecule.getAtomCount() ];
+		for ( int i = 0; i < elements.length; i++ ) {
+			final Integer element = _molecule.getAtom( i ).getAtomicNumber();
+			elements[ i ] = ( element != null && element > 1 ) ? element : 0;
+		}
+
+		final long[] bits = new long[ N_WORDS ];
+		setPathBits( _molecule, elements, bits );
+
+		int ringSizes = 0;
+		try {
+			for ( int[] path : Cycles.all( MAX_RING_SIZE ).find( _molecule ).paths() ) {
+				ringSizes |= 1 << ( path.length - 1 );
+			}
+		} catch ( Exception e ) {
+			// too many cycles, claim all ring sizes
+			LOG.fine( "ring enumeration skipped: " + e );
+			ringSizes = ~0;
+		}
+		return new PathFingerprint( bits, ringSizes );
+	}
+
+	/**
+	 * @param _molecule  fingerprint of a molecule
+	 *
+	 * @return  <code>false</code> if the molecule lacks a path or ring this query has,
+	 *          the query can then not match
+	 */
+	public boolean isSatisfiedBy( PathFingerprint _molecule ) {
+		if ( this == NONE ) return true;
+		if ( ( ringSizes & ~_molecule.ringSizes ) != 0 ) return false;
+		for ( int i = 0; i < N_WORDS; i++ ) {
+			if ( ( pathBits[ i ] & ~_molecule.pathBits[ i ] ) != 0 ) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Sets bits for all bonds and paths of three atoms with known elements.
+	 *
+	 * @return  <code>true</code> if any bit was set
+	 */
+	private static boolean setPathBits( IAtomContainer _container, int[] _elements, long[] _bits ) {
+		boolean hasBits = false;
+		for ( IBond bond : _container.bonds() ) {
+			final int a = _container.indexOf( bond.getBegin() );
+			final int b = _container.indexOf( bond.getEnd() );
+			if ( _elements[ a ] == 0 || _elements[ b ] == 0 ) continue;
+			set( _bits, hash( Math.min( _elements[ a ], _elements[ b ] ), Math.max( _elements[ a ], _elements[ b ] ), 0 ) );
+			hasBits = true;
+		}
+		for ( IAtom center : _container.atoms() ) {
+			final int c = _container.indexOf( center );
+			if ( _elements[ c ] == 0 ) continue;
+			final List<IAtom> neighbors = _container.getConnectedAtomsList( center );
+			for ( int i = 0; i < neighbors.size(); i++ ) {
+				final int a = _elements[ _container.indexOf( neighbors.get( i ) ) ];
+				if ( a == 0 ) continue;
+				for ( int j = i + 1; j < neighbors.size(); j++ ) {
+					final int b = _elements[ _container.indexOf( neighbors.get( j ) ) ];
+					if ( b == 0 ) continue;
+					set( _bits, hash( Math.min( a, b ), _elements[ c ], Math.max( a, b ) ) );
+					hasBits = true;
+				}
+			}
+		}
+		return hasBits;
+	}
+
+	private static int hash( int _a, int _b, int _c ) {
+		int h = _a * 0x9E3779B1;
+		h = ( h ^ ( h >>> 15 ) ) + _b * 0x85EBCA77;
+		h = ( h ^ ( h >>> 13 ) ) + _c * 0xC2B2AE3D;
+		h ^= h >>> 16;
+		return ( h & 0x7fffffff ) % N_BITS;
+	}
+
+	private static void set( long[] _bits, int _bit ) {
+		_bits[ _bit >>> 6 ] |= 1L << _bit;
+	}
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.openscience.cdk.aromaticity.Aromaticity;
+import org.openscience.cdk.aromaticity.ElectronDonation;
+import org.openscience.cdk.graph.Cycles;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.smarts.SmartsPattern;
+import org.openscience.cdk.tools.manipulator.AtomContainerManipulator;
+
+import com.actelion.research.chem.StereoMolecule;
+
+import ambit2.smarts.SmartsHelper;
+
+/**
+ * A compound parsed, aromatised and ring-perceived once, carrying every view the CDK
+ * and Ambit matchers need. It is created once per compound and used for all class
+ * checks of the hierarchy walk.
+ * <ul>
+ *   <li>Ambit view: aromatised with the Daylight model, used by {@link ambit2.smarts.SmartsManager}</li>
+ *   <li>Ambit explicit H view: hydrogens as atoms, used for multiplicity counting</li>
+ *   <li>CDK view: prepared for {@link SmartsPattern} (aromaticity and ring flags)</li>
+ *   <li>primitive view: arrays copied from the Ambit or CDK view, used by {@link Vf2Matcher}</li>
+ *   <li>OCL view: parsed from the SMILES with its fragment fingerprint index, used by {@link OclFragments}</li>
+ *   <li>backbones: canonical SMILES of the ring systems, used by {@link BackboneIndex}</li>
+ * </ul>
+ * The views are derived from the single parsed container on first use. A prepared molecule
+ * is confined to the worker thread processing the compound.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *       <li>feature signature</li>
+ *       <li>path fingerprint</li>
+ *       <li>primitive array view for compiled matchers</li>
+ *       <li>OCL view</li>
+ *       <li>backbones</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public class PreparedMolecule {
+
+	private final static Logger LOG = Logger.getLogger( PreparedMolecule.class.getName() );
+
+	/** Aromaticity holds no per molecule state and is shared by all threads */
+	private final static Aromaticity AROMATICITY =
+			new Aromaticity( ElectronDonation.daylight(), Cycles.or( Cycles.all(), Cycles.all( 6 ) ) );
+
+	private final String         smiles;
+	private final boolean        aromatic;
+	private final IAtomContainer parsed;
+
+	private IAtomContainer ambitMolecule;
+	private IAtomContainer ambitExplicitHMolecule;
+	private IAtomContainer cdkMolecule;
+	private FeatureSignature signature;
+	private PathFingerprint  fingerprint;
+	private PrimitiveMolecule ambitPrimitiveMolecule;
+	private PrimitiveMolecule cdkPrimitiveMolecule;
+	private StereoMolecule   oclMolecule;
+	private long[]           oclIndex;
+	private Set<String>      backbones;
+
+	private PreparedMolecule( String _smiles, boolean _aromatic, IAtomContainer _parsed ) {
+		smiles   = _smiles;
+		aromatic = _aromatic;
+		parsed   = _parsed;
+	}
+
+	/**
+	 * Parses provided SMILES. A SMILES that can not be parsed gives an invalid molecule
+	 * which does not match any query.
+	 *
+	 * @param _smiles
+	 * @param _aromatic  apply aromaticity to the Ambit view
+	 *
+	 * @return
+	 */
+	public static PreparedMolecule parse( String _smiles, boolean _aromatic ) {
+		IAtomContainer parsed = null;
+		try {
+			parsed = SmartsHelper.getMoleculeFromSmiles( _smiles, false );
+		} catch ( Exception e ) {
+			LOG.info( "ERROR: could not parse smiles: " + _smiles + " " + e );
+		}
+		return new PreparedMolecule( _smiles, _aromatic, parsed );
+	}
+
+	public String  getSmiles() { return smiles; }
+	public boolean isValid()   { return parsed != null; }
+
+	/**
+	 * @return  molecule for Ambit SMARTS search
+	 *
+	 * @throws Exception
+	 */
+	public IAtomContainer getAmbitMolecule() throws Exception {
+		if ( ambitMolecule == null ) {
+			final IAtomContainer mol = copyOfParsed();
+			if ( aromatic ) AROMATICITY.apply( mol );
+			ambitMolecule = mol;
+		}
+		return ambitMolecule;
+	}
+
+	/**
+	 * @return  molecule with explicit hydrogen atoms for Ambit group counting
+	 *
+	 * @throws Exception
+	 */
+	public IAtomContainer getAmbitExplicitHMolecule() throws Exception {
+		if ( ambitExplicitHMolecule == null ) {
+			final IAtomContainer mol = copyOfParsed();
+			AtomContainerManipulator.convertImplicitToExplicitHydrogens( mol );
+			ambitExplicitHMolecule = mol;
+		}
+		return ambitExplicitHMolecule;
+	}
+
+	/**
+	 * @return  molecule prepared for CDK SMARTS search, patterns must not prepare it again
+	 *
+	 * @throws Exception
+	 */
+	public IAtomContainer getCdkMolecule() throws Exception {
+		if ( cdkMolecule == null ) {
+			final IAtomContainer mol = copyOfParsed();
+			SmartsPattern.prepare( mol );
+			cdkMolecule = mol;
+		}
+		return cdkMolecule;
+	}
+
+	/**
+	 * @return  features of this molecule, aromatic atoms are taken from all aromatised views
+	 *
+	 * @throws Exception
+	 */
+	public FeatureSignature getSignature() throws Exception {
+		if ( signature == null ) {
+			signature = FeatureSignature.ofMolecule( parsed, getCdkMolecule(), getCdkMolecule(), getAmbitMolecule() );
+		}
+		return signature;
+	}
+
+	/**
+	 * @param _module  lower case name of chemical library whose view is copied,
+	 *                 see {@link ChemLib}, the vf2 engine uses the Ambit view
+	 *
+	 * @return  molecule for compiled matchers
+	 *
+	 * @throws Exception
+	 */
+	public PrimitiveMolecule getPrimitiveMolecule( String _module ) throws Exception {
+		if ( !ChemLib.CHEMLIB_CDK.equals( _module ) ) {
+			if ( ambitPrimitiveMolecule == null ) ambitPrimitiveMolecule = PrimitiveMolecule.of( getAmbitMolecule() );
+			return ambitPrimitiveMolecule;
+		}
+		if ( cdkPrimitiveMolecule == null ) cdkPrimitiveMolecule = PrimitiveMolecule.of( getCdkMolecule() );
+		return cdkPrimitiveMolecule;
+	}
+
+	/**
+	 * @return  molecule for OCL fragment search
+	 *
+	 * @throws Exception
+	 */
+	public StereoMolecule getOclMolecule() throws Exception {
+		if ( oclMolecule == null ) {
+			if ( parsed == null ) throw new IllegalStateException( "invalid smiles: " + smiles );
+			oclMolecule = OclFragments.parseMolecule( smiles );
+		}
+		return oclMolecule;
+	}
+
+	/**
+	 * @return  fragment fingerprint index of the OCL molecule
+	 *
+	 * @throws Exception
+	 */
+	public long[] getOclIndex() throws Exception {
+		if ( oclIndex == null ) oclIndex = OclFragments.index( getOclMolecule() );
+		return oclIndex;
+	}
+
+	/**
+	 * @return  canonical SMILES of the backbones of this molecule, see
+	 *          {@link BackboneIndex#backbonesOf(IAtomContainer)}, empty if they can not
+	 *          be determined
+	 */
+	public Set<String> getBackbones() {
+		if ( backbones == null ) {
+			try {
+				backbones = parsed != null ? BackboneIndex.backbonesOf( parsed ) : Collections.emptySet();
+			} catch ( Exception e ) {
+				LOG.info( "ERROR: could not compute backbones of: " + smiles + " " + e );
+				backbones = Collections.emptySet();
+			}
+		}
+		return backbones;
+	}
+
+	/**
+	 * @return  paths and small rings of this molecule
+	 */
+	public PathFingerprint getFingerprint() {
+		if ( fingerprint == null ) fingerprint = PathFingerprint.ofMolecule( parsed );
+		return fingerprint;
+	}
+
+	/**
+	 * @return  <code>true</code> if the SMILES specifies any tetrahedral or double bond
+	 *          configuration
+	 */
+	public boolean hasStereoElements() {
+		return parsed != null && parsed.stereoElements().iterator().hasNext();
+	}
+
+	private IAtomContainer copyOfParsed() throws Exception {
+		if ( parsed == null ) throw new IllegalStateException( "invalid smiles: " + smiles );
+		return parsed.clone();
+	}
+
+	@Override
+	public String toString() {
+		return smiles;
+	}
+}
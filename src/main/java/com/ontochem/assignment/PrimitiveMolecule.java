@@ -0,0 +1,201 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.Arrays;
+
+import org.openscience.cdk.graph.Cycles;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+
+/**
+ * Molecule graph held in primitive arrays for matchers that do not work on CDK objects,
+ * see {@link Vf2Matcher}. Atom and bond properties are copied from the view of the
+ * chemistry module the matcher stands in for, so aromaticity and hydrogen counts are
+ * the same as in that module's search.
+ * <p>
+ * Neighbors are stored in compressed rows: the neighbors of atom <code>a</code> are
+ * <code>neighbors[ neighborStart[ a ] ]</code> up to <code>neighborStart[ a + 1 ]</code>,
+ * <code>neighborBonds</code> holds the connecting bond at the same position. Ring atoms
+ * and bonds are those on a cycle, that is bonds which are not bridges of the graph.
+ * Ring counts refer to the smallest set of smallest rings.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *       <li>total degree, valence and ring count</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public final class PrimitiveMolecule {
+
+	final int       nAtoms;
+	final int[]     atomicNumbers;
+	final int[]     charges;
+	final int[]     hydrogenCounts;
+	final int[]     degrees;
+	/** bonds and implicit hydrogens */
+	final int[]     totalDegrees;
+	/** bond orders and implicit hydrogens */
+	final int[]     valences;
+	/** number of SSSR rings an atom is in */
+	final int[]     ringCounts;
+	final boolean[] aromaticAtoms;
+	final boolean[] ringAtoms;
+
+	final int[]     neighborStart;
+	final int[]     neighbors;
+	final int[]     neighborBonds;
+
+	final int[]     bondOrders;
+	final boolean[] aromaticBonds;
+	final boolean[] ringBonds;
+
+	private PrimitiveMolecule( IAtomContainer _container ) {
+
+		nAtoms         = _container.getAtomCount();
+		atomicNumbers  = new int[ nAtoms ];
+		charges        = new int[ nAtoms ];
+		hydrogenCounts = new int[ nAtoms ];
+		degrees        = new int[ nAtoms ];
+		totalDegrees   = new int[ nAtoms ];
+		valences       = new int[ nAtoms ];
+		ringCounts     = new int[ nAtoms ];
+		aromaticAtoms  = new boolean[ nAtoms ];
+		ringAtoms      = new boolean[ nAtoms ];
+
+		final int nBonds = _container.getBondCount();
+		bondOrders    = new int[ nBonds ];
+		aromaticBonds = new boolean[ nBonds ];
+		ringBonds     = new boolean[ nBonds ];
+
+		final int[] bondBegin = new int[ nBonds ];
+		final int[] bondEnd   = new int[ nBonds ];
+		for ( int bondIdx = 0; bondIdx < nBonds; bondIdx++ ) {
+			final IBond bond = _container.getBond( bondIdx );
+			bondBegin[ bondIdx ]     = _container.indexOf( bond.getBegin() );
+			bondEnd[ bondIdx ]       = _container.indexOf( bond.getEnd() );
+			bondOrders[ bondIdx ]    = bond.getOrder() != null && bond.getOrder() != IBond.Order.UNSET ? bond.getOrder().numeric() : 0;
+			aromaticBonds[ bondIdx ] = bond.isAromatic();
+			degrees[ bondBegin[ bondIdx ] ]++;
+			degrees[ bondEnd[ bondIdx ] ]++;
+			valences[ bondBegin[ bondIdx ] ] += bondOrders[ bondIdx ];
+			valences[ bondEnd[ bondIdx ] ]   += bondOrders[ bondIdx ];
+		}
+
+		neighborStart = new int[ nAtoms + 1 ];
+		for ( int atomIdx = 0; atomIdx < nAtoms; atomIdx++ ) neighborStart[ atomIdx + 1 ] = neighborStart[ atomIdx ] + degrees[ atomIdx ];
+		neighbors     = new int[ 2 * nBonds ];
+		neighborBonds = new int[ 2 * nBonds ];
+		final int[] fill = new int[ nAtoms ];
+		for ( int bondIdx = 0; bondIdx < nBonds; bondIdx++ ) {
+			final int a = bondBegin[ bondIdx ];
+			final int b = bondEnd[ bondIdx ];
+			neighbors[ neighborStart[ a ] + fill[ a ] ]       = b;
+			neighborBonds[ neighborStart[ a ] + fill[ a ]++ ] = bondIdx;
+			neighbors[ neighborStart[ b ] + fill[ b ] ]       = a;
+			neighborBonds[ neighborStart[ b ] + fill[ b ]++ ] = bondIdx;
+		}
+
+		for ( int atomIdx = 0; atomIdx < nAtoms; atomIdx++ ) {
+			final IAtom atom = _container.getAtom( atomIdx );
+			atomicNumbers[ atomIdx ]  = atom.getAtomicNumber() != null ? atom.getAtomicNumber() : 0;
+			charges[ atomIdx ]        = atom.getFormalCharge() != null ? atom.getFormalCharge() : 0;
+			aromaticAtoms[ atomIdx ]  = atom.isAromatic();
+			hydrogenCounts[ atomIdx ] = atom.getImplicitHydrogenCount() != null ? atom.getImplicitHydrogenCount() : 0;
+			totalDegrees[ atomIdx ]   = degrees[ atomIdx ] + hydrogenCounts[ atomIdx ];
+			valences[ atomIdx ]      += hydrogenCounts[ atomIdx ];
+		}
+		for ( int atomIdx = 0; atomIdx < nAtoms; atomIdx++ ) {
+			for ( int edge = neighborStart[ atomIdx ]; edge < neighborStart[ atomIdx + 1 ]; edge++ ) {
+				if ( atomicNumbers[ neighbors[ edge ] ] == 1 ) hydrogenCounts[ atomIdx ]++;
+			}
+		}
+		markRingBonds();
+		countRings( _container );
+	}
+
+	/**
+	 * @param _container  molecule as prepared for the chemistry module
+	 *
+	 * @return
+	 */
+	public static PrimitiveMolecule of( IAtomContainer _container ) {
+		return new PrimitiveMolecule( _container );
+	}
+
+	public int atomCount() { return nAtoms; }
+
+	/**
+	 * Counts the SSSR rings of each atom.
+	 */
+	private void countRings( IAtomContainer _container ) {
+		for ( int[] path : Cycles.sssr( _container ).paths() ) {
+			// a closed path repeats its first atom at the end
+			for ( int i = 0; i < path.length - 1; i++ ) ringCounts[ path[ i ] ]++;
+		}
+	}
+
+	/**
+	 * Marks all bonds which are not bridges, and their atoms, as ring members. Bridges
+	 * are found by an iterative depth first search comparing discovery time and low link.
+	 */
+	private void markRingBonds() {
+		final int[]     discovery  = new int[ nAtoms ];
+		final int[]     lowLink    = new int[ nAtoms ];
+		final int[]     parentBond = new int[ nAtoms ];
+		final int[]     nextEdge   = new int[ nAtoms ];
+		final int[]     stack      = new int[ nAtoms ];
+		final boolean[] bridge     = new boolean[ bondOrders.length ];
+		Arrays.fill( discovery, -1 );
+
+		int time = 0;
+		for ( int start = 0; start < nAtoms; start++ ) {
+			if ( discovery[ start ] >= 0 ) continue;
+			int stackSize = 0;
+			stack[ stackSize++ ]  = start;
+			discovery[ start ]    = lowLink[ start ] = time++;
+			parentBond[ start ]   = -1;
+			nextEdge[ start ]     = neighborStart[ start ];
+			while ( stackSize > 0 ) {
+				final int atomIdx = stack[ stackSize - 1 ];
+				if ( nextEdge[ atomIdx ] < neighborStart[ atomIdx + 1 ] ) {
+					final int edge = nextEdge[ atomIdx ]++;
+					final int neighbor = neighbors[ edge ];
+					if ( neighborBonds[ edge ] == parentBond[ atomIdx ] ) continue;
+					if ( discovery[ neighbor ] < 0 ) {
+						discovery[ neighbor ]  = lowLink[ neighbor ] = time++;
+						parentBond[ neighbor ] = neighborBonds[ edge ];
+						nextEdge[ neighbor ]   = neighborStart[ neighbor ];
+						stack[ stackSize++ ]   = neighbor;
+					} else {
+						lowLink[ atomIdx ] = Math.min( lowLink[ atomIdx ], discovery[ neighbor ] );
+					}
+				} else {
+					stackSize--;
+					if ( stackSize > 0 ) {
+						final int parent = stack[ stackSize - 1 ];
+						lowLink[ parent ] = Math.min( lowLink[ parent ], lowLink[ atomIdx ] );
+						if ( lowLink[ atomIdx ] > discovery[ parent ] ) bridge[ parentBond[ atomIdx ] ] = true;
+					}
+				}
+			}
+		}
+
+		for ( int atomIdx = 0; atomIdx < nAtoms; atomIdx++ ) {
+			for ( int edge = neighborStart[ atomIdx ]; edge < neighborStart[ atomIdx + 1 ]; edge++ ) {
+				if ( !bridge[ neighborBonds[ edge ] ] ) {
+					ringBonds[ neighborBonds[ edge ] ] = true;
+					ringAtoms[ atomIdx ] = true;
+				}
+			}
+		}
+	}
+}
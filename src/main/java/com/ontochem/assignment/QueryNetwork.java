@@ -0,0 +1,283 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import org.openscience.cdk.AtomRef;
+import org.openscience.cdk.config.Elements;
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+import org.openscience.cdk.isomorphism.matchers.QueryAtom;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmiFlavor;
+import org.openscience.cdk.smiles.SmilesGenerator;
+
+/**
+ * Network of shared cores over the SMARTS of sibling classes, in the spirit of a Rete
+ * network. Siblings often share a large common core and differ only at the periphery.
+ * <p>
+ * The core of a query is the largest connected part of its atoms with a definite
+ * element (see {@link FeatureSignature}), written as a SMARTS with element atoms and
+ * any bonds. Every match of the query contains a match of its core. A core used by at
+ * least two distinct queries of the children of one class becomes a node of the
+ * network, interned to the {@link SmartsTable} like any other query. During
+ * assignment the core is searched first, once per molecule thanks to the query memo,
+ * and the full query is only searched if its core is found, see {@link MatchContext}.
+ * Results are the same as matching every query on its own.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public class QueryNetwork {
+
+	private final static Logger LOG = Logger.getLogger( QueryNetwork.class.getName() );
+
+	/** smaller cores are already covered by the path fingerprint screen */
+	private final static int MIN_CORE_ATOMS = 4;
+
+	private final static String NO_CORE = "";
+
+	/** core query id per query id, -1 if a query has no shared core */
+	private final int[] coreIds;
+
+	private QueryNetwork( int[] _coreIds ) {
+		coreIds = _coreIds;
+	}
+
+	/**
+	 * @param _queryId  see {@link SmartsTable}
+	 *
+	 * @return  id of the shared core of provided query or -1
+	 */
+	public int coreOf( int _queryId ) {
+		return _queryId < coreIds.length ? coreIds[ _queryId ] : -1;
+	}
+
+	/**
+	 * Factors shared cores out of the SMARTS of sibling classes and interns them to
+	 * provided table.
+	 *
+	 * @param _ocidExpressionMap  see {@link OntologyLoader.OntologyData#getOcidExpressionMap()}
+	 * @param _ocidParentMap      is_a parents of each class
+	 * @param _smartsTable        table of the ontology, see {@link OntologyLoader.OntologyData#getSmartsTable()}
+	 *
+	 * @return
+	 */
+	public static QueryNetwork compile( Map<String,ClassExpression> _ocidExpressionMap, Map<String,Set<String>> _ocidParentMap,
+																					SmartsTable _smartsTable ) {
+
+		final int nQueries = _smartsTable.size();
+
+		// children with expression grouped by parent
+		final Map<String,List<ClassExpression>> siblingMap = new HashMap<>();
+		for ( Map.Entry<String,ClassExpression> entry : _ocidExpressionMap.entrySet() ) {
+			final Set<String> parents = _ocidParentMap.get( entry.getKey() );
+			if ( parents == null ) continue;
+			for ( String parent : parents ) {
+				siblingMap.computeIfAbsent( parent, id -> new ArrayList<>() ).add( entry.getValue() );
+			}
+		}
+
+		final String[] coreKeys   = new String[ nQueries ];
+		final String[] coreSmarts = new String[ nQueries ];
+		final int[]    coreIds    = new int[ nQueries ];
+		Arrays.fill( coreIds, -1 );
+		final Map<String,Integer> coreIdMap = new HashMap<>();
+		int nShared = 0;
+
+		for ( List<ClassExpression> siblings : siblingMap.values() ) {
+			if ( siblings.size() < 2 ) continue;
+
+			final Set<String> smartsSet = new LinkedHashSet<>();
+			for ( ClassExpression expression : siblings ) expression.collectSmarts( smartsSet );
+
+			final Map<String,List<Integer>> queriesByCore = new HashMap<>();
+			for ( String smarts : smartsSet ) {
+				final int queryId = _smartsTable.idOf( smarts );
+				if ( queryId < 0 ) continue;
+				if ( coreKeys[ queryId ] == null ) deriveCore( smarts, queryId, coreKeys, coreSmarts );
+				if ( !coreKeys[ queryId ].isEmpty() ) {
+					queriesByCore.computeIfAbsent( coreKeys[ queryId ], key -> new ArrayList<>() ).add( queryId );
+				}
+			}
+
+			for ( Map.Entry<String,List<Integer>> entry : queriesByCore.entrySet() ) {
+				if ( entry.getValue().size() < 2 ) continue;
+				Integer coreId = coreIdMap.get( entry.getKey() );
+				if ( coreId == null ) {
+					coreId = _smartsTable.intern( coreSmarts[ entry.getValue().get( 0 ) ] );
+					coreIdMap.put( entry.getKey(), coreId );
+				}
+				for ( int queryId : entry.getValue() ) {
+					if ( coreIds[ queryId ] < 0 ) {
+						coreIds[ queryId ] = coreId;
+						nShared++;
+					}
+				}
+			}
+		}
+		LOG.info( "query network: " + coreIdMap.size() + " shared cores for " + nShared + " of " + nQueries + " queries" );
+		return new QueryNetwork( coreIds );
+	}
+
+	/**
+	 * Sets canonical key and SMARTS of the core of provided query, {@link #NO_CORE} if
+	 * the query has no core of sufficient size or is not larger than its core.
+	 */
+	private static void deriveCore( String _smarts, int _queryId, String[] _coreKeys, String[] _coreSmarts ) {
+
+		_coreKeys[ _queryId ] = NO_CORE;
+
+		final IAtomContainer query = FeatureSignature.parseQuery( _smarts );
+		if ( query == null ) return;
+
+		final int   nAtoms   = query.getAtomCount();
+		final int[] elements = new int[ nAtoms ];
+		for ( int i = 0; i < nAtoms; i++ ) {
+			final int element = FeatureSignature.requiredElement(
+					( (QueryAtom) AtomRef.deref( query.getAtom( i ) ) ).getExpression() );
+			elements[ i ] = element > 1 ? element : 0;
+		}
+
+		// largest connected component of atoms with definite element
+		final int[] component = new int[ nAtoms ];
+		Arrays.fill( component, -1 );
+		int bestComponent = -1;
+		int bestSize      = 0;
+		for ( int start = 0; start < nAtoms; start++ ) {
+			if ( elements[ start ] == 0 || component[ start ] >= 0 ) continue;
+			int size = 0;
+			final List<Integer> stack = new ArrayList<>();
+			stack.add( start );
+			component[ start ] = start;
+			while ( !stack.isEmpty() ) {
+				final int atomIdx = stack.remove( stack.size() - 1 );
+				size++;
+				for ( IAtom neighbor : query.getConnectedAtomsList( query.getAtom( atomIdx ) ) ) {
+					final int neighborIdx = query.indexOf( neighbor );
+					if ( elements[ neighborIdx ] != 0 && component[ neighborIdx ] < 0 ) {
+						component[ neighborIdx ] = start;
+						stack.add( neighborIdx );
+					}
+				}
+			}
+			if ( size > bestSize ) {
+				bestSize      = size;
+				bestComponent = start;
+			}
+		}
+		if ( bestSize < MIN_CORE_ATOMS || bestSize >= nAtoms ) return;
+
+		// core as molecule for the canonical key and as SMARTS
+		final IAtomContainer core = SilentChemObjectBuilder.getInstance().newAtomContainer();
+		final int[] coreIdx = new int[ nAtoms ];
+		Arrays.fill( coreIdx, -1 );
+		for ( int i = 0; i < nAtoms; i++ ) {
+			if ( component[ i ] != bestComponent ) continue;
+			final IAtom atom = core.getBuilder().newAtom();
+			atom.setAtomicNumber( elements[ i ] );
+			atom.setSymbol( Elements.ofNumber( elements[ i ] ).symbol() );
+			atom.setImplicitHydrogenCount( 0 );
+			coreIdx[ i ] = core.getAtomCount();
+			core.addAtom( atom );
+		}
+		for ( IBond bond : query.bonds() ) {
+			final int begin = coreIdx[ query.indexOf( bond.getBegin() ) ];
+			final int end   = coreIdx[ query.indexOf( bond.getEnd() ) ];
+			if ( begin >= 0 && end >= 0 ) core.addBond( begin, end, IBond.Order.SINGLE );
+		}
+		try {
+			_coreKeys[ _queryId ]   = new SmilesGenerator( SmiFlavor.Canonical ).create( core );
+			_coreSmarts[ _queryId ] = toSmarts( core );
+		} catch ( Exception e ) {
+			LOG.fine( "no core for " + _smarts + ": " + e );
+			_coreKeys[ _queryId ] = NO_CORE;
+		}
+	}
+
+	/**
+	 * @return  connected core written with <code>[#n]</code> atoms and <code>~</code> bonds
+	 */
+	private static String toSmarts( IAtomContainer _core ) {
+
+		final int nAtoms = _core.getAtomCount();
+		final int[] parent = new int[ nAtoms ];
+		final List<List<Integer>> children = new ArrayList<>();
+		final List<List<Integer>> ringDigits = new ArrayList<>();
+		for ( int i = 0; i < nAtoms; i++ ) {
+			children.add( new ArrayList<>() );
+			ringDigits.add( new ArrayList<>() );
+		}
+		Arrays.fill( parent, -2 );
+
+		// depth first spanning tree, each other bond closes a ring
+		final int[] order = new int[ nAtoms ];
+		int nOrdered = 0;
+		final List<Integer> stack = new ArrayList<>();
+		stack.add( 0 );
+		parent[ 0 ] = -1;
+		int nDigits = 0;
+		final boolean[] closed = new boolean[ _core.getBondCount() ];
+		while ( !stack.isEmpty() ) {
+			final int atomIdx = stack.remove( stack.size() - 1 );
+			order[ nOrdered++ ] = atomIdx;
+			final List<Integer> next = new ArrayList<>();
+			for ( IBond bond : _core.getConnectedBondsList( _core.getAtom( atomIdx ) ) ) {
+				final int bondIdx = _core.indexOf( bond );
+				if ( closed[ bondIdx ] ) continue;
+				closed[ bondIdx ] = true;
+				final int neighborIdx = _core.indexOf( bond.getOther( _core.getAtom( atomIdx ) ) );
+				if ( parent[ neighborIdx ] == -2 ) {
+					parent[ neighborIdx ] = atomIdx;
+					children.get( atomIdx ).add( neighborIdx );
+					next.add( neighborIdx );
+				} else {
+					nDigits++;
+					ringDigits.get( atomIdx ).add( nDigits );
+					ringDigits.get( neighborIdx ).add( nDigits );
+				}
+			}
+			for ( int i = next.size() - 1; i >= 0; i-- ) stack.add( next.get( i ) );
+		}
+
+		final StringBuilder smarts = new StringBuilder();
+		appendAtom( _core, 0, children, ringDigits, smarts );
+		return smarts.toString();
+	}
+
+	private static void appendAtom( IAtomContainer _core, int _atomIdx, List<List<Integer>> _children,
+															List<List<Integer>> _ringDigits, StringBuilder _smarts ) {
+		_smarts.append( "[#" ).append( _core.getAtom( _atomIdx ).getAtomicNumber() ).append( ']' );
+		for ( int digit : _ringDigits.get( _atomIdx ) ) {
+			_smarts.append( '~' ).append( digit < 10 ? String.valueOf( digit ) : "%" + digit );
+		}
+		final Collection<Integer> children = _children.get( _atomIdx );
+		int childIdx = 0;
+		for ( int child : children ) {
+			final boolean branch = ++childIdx < children.size();
+			if ( branch ) _smarts.append( '(' );
+			_smarts.append( '~' );
+			appendAtom( _core, child, _children, _ringDigits, _smarts );
+			if ( branch ) _smarts.append( ')' );
+		}
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Hit rate and mean match cost of each SMARTS as collected by earlier runs, used to
+ * order the operands of {@link ClassExpression}s so that cheap and decisive queries are
+ * evaluated first, see {@link ClassExpression#ordered(QueryProfile)}.
+ * <p>
+ * The profile is a tab separated file keyed to the checksum of the OBO it was collected
+ * with. A profile of another ontology version is ignored. Ordering only changes which
+ * operands short-circuit evaluation skips, never the result.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *       <li>profile replaced atomically</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public class QueryProfile {
+
+	private final static Logger LOG = Logger.getLogger( QueryProfile.class.getName() );
+
+	private final static String ONTOLOGY_TAG = "# ontology\t";
+	private final static String HEADER       = "smarts\tevaluations\thits\tnanos";
+
+	/** evaluations, hits and nanoseconds per SMARTS */
+	private final Map<String,long[]> statisticsMap = new HashMap<>();
+	private final String             ontologyKey;
+	private double                   meanCost = 1.0;
+
+	private QueryProfile( String _ontologyKey ) {
+		ontologyKey = _ontologyKey;
+	}
+
+	/**
+	 * @param _filename
+	 * @param _ontologyKey  checksum of the OBO, see {@link OntologyLoader#checksum(String)}
+	 *
+	 * @return  profile or <code>null</code> if the file does not exist or was collected
+	 *          with another ontology version
+	 *
+	 * @throws IOException
+	 */
+	public static QueryProfile read( String _filename, String _ontologyKey ) throws IOException {
+
+		if ( !new File( _filename ).exists() ) {
+			LOG.info( "no query statistics profile yet: " + _filename );
+			return null;
+		}
+		final QueryProfile profile = new QueryProfile( _ontologyKey );
+
+		try ( BufferedReader in = new BufferedReader(
+		                            new InputStreamReader(
+		                              new FileInputStream( new File( _filename ) ), StandardCharsets.UTF_8 ) ); ) {
+
+			final String keyLine = in.readLine();
+			if ( keyLine == null || !keyLine.equals( ONTOLOGY_TAG + _ontologyKey ) ) {
+				LOG.info( "query statistics profile is stale, collected with another ontology version: " + _filename );
+				return null;
+			}
+			String inLine = null;
+			while ( ( inLine = in.readLine() ) != null ) {
+				if ( inLine.isEmpty() || inLine.equals( HEADER ) ) continue;
+				final String[] fields = inLine.split( "\t" );
+				if ( fields.length != 4 ) throw new IOException( "malformed query statistics profile line: " + inLine );
+				try {
+					profile.statisticsMap.put( fields[ 0 ], new long[] { Long.parseLong( fields[ 1 ] ),
+																		 Long.parseLong( fields[ 2 ] ),
+																		 Long.parseLong( fields[ 3 ] ) } );
+				} catch ( NumberFormatException nfe ) {
+					throw new IOException( "malformed query statistics profile line: " + inLine, nfe );
+				}
+			}
+		}
+
+		long evaluations = 0;
+		long nanos       = 0;
+		for ( long[] statistics : profile.statisticsMap.values() ) {
+			evaluations += statistics[ 0 ];
+			nanos       += statistics[ 2 ];
+		}
+		if ( evaluations > 0 ) profile.meanCost = nanos / (double) evaluations;
+		LOG.info( "read query statistics profile: " + profile.statisticsMap.size() + " smarts" );
+		return profile;
+	}
+
+	/**
+	 * Writes the statistics of this run added to those of provided earlier profile.
+	 *
+	 * @param _filename
+	 * @param _ontologyKey    checksum of the OBO, see {@link OntologyLoader#checksum(String)}
+	 * @param _smartsTable
+	 * @param _queryRegistry
+	 * @param _previous       profile read at start or <code>null</code>
+	 *
+	 * @throws IOException
+	 */
+	public static void write( String _filename, String _ontologyKey, SmartsTable _smartsTable,
+							  CompiledQueryRegistry _queryRegistry, QueryProfile _previous ) throws IOException {
+
+		final Map<String,long[]> statisticsMap = new HashMap<>();
+		if ( _previous != null ) {
+			for ( Map.Entry<String,long[]> entry : _previous.statisticsMap.entrySet() ) {
+				statisticsMap.put( entry.getKey(), entry.getValue().clone() );
+			}
+		}
+		for ( int queryId = 0; queryId < _smartsTable.size(); queryId++ ) {
+			final long[] statistics = _queryRegistry.get( queryId ).evaluationStatistics();
+			if ( statistics[ 0 ] == 0 ) continue;
+			final long[] sum = statisticsMap.computeIfAbsent( _smartsTable.smarts( queryId ), smarts -> new long[ 3 ] );
+			for ( int i = 0; i < sum.length; i++ ) sum[ i ] += statistics[ i ];
+		}
+
+		// a run killed while writing leaves the previous profile intact
+		final File file      = new File( _filename );
+		final File writeFile = new File( _filename + ".tmp" );
+		try ( Writer out = new OutputStreamWriter(
+                             new BufferedOutputStream(
+                               new FileOutputStream( writeFile )
+                             ), StandardCharsets.UTF_8 ); ) {
+			out.append( ONTOLOGY_TAG ).append( _ontologyKey ).append( "\n" );
+			out.append( HEADER ).append( "\n" );
+			for ( Map.Entry<String,long[]> entry : statisticsMap.entrySet() ) {
+				final long[] statistics = entry.getValue();
+				out.append( entry.getKey() )
+				   .append( "\t" ).append( String.valueOf( statistics[ 0 ] ) )
+				   .append( "\t" ).append( String.valueOf( statistics[ 1 ] ) )
+				   .append( "\t" ).append( String.valueOf( statistics[ 2 ] ) )
+				   .append( "\n" );
+			}
+		}
+		Files.move( writeFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+		LOG.info( "wrote query statistics profile: " + statisticsMap.size() + " smarts" );
+	}
+
+	public String getOntologyKey() { return ontologyKey; }
+
+	/**
+	 * @param _smarts
+	 *
+	 * @return  estimated probability the query is found, 0.5 without statistics
+	 */
+	public double hitRate( String _smarts ) {
+		final long[] statistics = statisticsMap.get( _smarts );
+		if ( statistics == null ) return 0.5;
+		return ( statistics[ 1 ] + 1.0 ) / ( statistics[ 0 ] + 2.0 );
+	}
+
+	/**
+	 * @param _smarts
+	 *
+	 * @return  mean time of one evaluation in nanoseconds, the mean over all queries
+	 *          without statistics
+	 */
+	public double cost( String _smarts ) {
+		final long[] statistics = statisticsMap.get( _smarts );
+		if ( statistics == null || statistics[ 0 ] == 0 ) return meanCost;
+		return Math.max( statistics[ 2 ] / (double) statistics[ 0 ], 1.0 );
+	}
+}
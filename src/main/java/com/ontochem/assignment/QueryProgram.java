@@ -0,0 +1,294 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openscience.cdk.AtomRef;
+import org.openscience.cdk.BondRef;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.isomorphism.matchers.Expr;
+import org.openscience.cdk.isomorphism.matchers.QueryAtom;
+import org.openscience.cdk.isomorphism.matchers.QueryBond;
+
+/**
+ * Atom and bond expressions of a SMARTS query compiled to a flat program of integer
+ * opcodes, evaluated against the atoms and bonds of a {@link PrimitiveMolecule}. Each
+ * expression is a postfix program whose boolean stack is held in the bits of a
+ * <code>long</code>. Used by {@link Vf2Matcher}.
+ * <p>
+ * Only element, aromaticity, hydrogen count, charge, degree, valence and ring
+ * primitives combined with AND, OR and NOT are compiled, semantics follow the CDK
+ * {@link Expr}. Hydrogen atoms in the query and the smallest ring size are matched
+ * differently by the modules and are not compiled.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version, moved from the matcher of acyclic queries</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+final class QueryProgram {
+
+	// ---- opcodes, the value of a primitive follows its opcode and is always read
+	// ---- before any other test so that the program counter stays in step -----
+	private final static int OP_TRUE              = 0;
+	private final static int OP_FALSE             = 1;
+	private final static int OP_AND               = 2;
+	private final static int OP_OR                = 3;
+	private final static int OP_NOT               = 4;
+	private final static int OP_ELEMENT           = 5;
+	private final static int OP_ALIPHATIC_ELEMENT = 6;
+	private final static int OP_AROMATIC_ELEMENT  = 7;
+	private final static int OP_AROMATIC          = 8;
+	private final static int OP_ALIPHATIC         = 9;
+	private final static int OP_H_COUNT           = 10;
+	private final static int OP_CHARGE            = 11;
+	private final static int OP_DEGREE            = 12;
+	private final static int OP_RING              = 13;
+	private final static int OP_CHAIN             = 14;
+	private final static int OP_TOTAL_DEGREE      = 15;
+	private final static int OP_VALENCE           = 16;
+	private final static int OP_RING_COUNT        = 17;
+	private final static int OP_BOND_ALIPHATIC_ORDER    = 20;
+	private final static int OP_BOND_ORDER              = 21;
+	private final static int OP_BOND_AROMATIC           = 22;
+	private final static int OP_BOND_ALIPHATIC          = 23;
+	private final static int OP_BOND_SINGLE_OR_AROMATIC = 24;
+	private final static int OP_BOND_SINGLE_OR_DOUBLE   = 25;
+	private final static int OP_BOND_DOUBLE_OR_AROMATIC = 26;
+	private final static int OP_BOND_RING               = 27;
+	private final static int OP_BOND_CHAIN              = 28;
+
+	/** the boolean stack of a program lives in the bits of a long */
+	private final static int MAX_STACK_DEPTH = 63;
+
+	private final int[] code;
+	/** program of query atom i from atomStart[ i ] to atomStart[ i + 1 ] */
+	private final int[] atomStart;
+	/** program of query bond i from bondStart[ i ] to bondStart[ i + 1 ] */
+	private final int[] bondStart;
+
+	private QueryProgram( int[] _code, int[] _atomStart, int[] _bondStart ) {
+		code      = _code;
+		atomStart = _atomStart;
+		bondStart = _bondStart;
+	}
+
+	/**
+	 * @param _query  parsed SMARTS, see {@link FeatureSignature#parseQuery(String)}
+	 *
+	 * @return  program indexed like the atoms and bonds of the query or <code>null</code>
+	 *          if any expression has an unsupported primitive
+	 */
+	static QueryProgram compile( IAtomContainer _query ) {
+
+		final List<Integer> code      = new ArrayList<>();
+		final int[]         atomStart = new int[ _query.getAtomCount() + 1 ];
+		final int[]         bondStart = new int[ _query.getBondCount() + 1 ];
+		for ( int atomIdx = 0; atomIdx < _query.getAtomCount(); atomIdx++ ) {
+			atomStart[ atomIdx ] = code.size();
+			if ( !( AtomRef.deref( _query.getAtom( atomIdx ) ) instanceof QueryAtom ) ) return null;
+			if ( !compileAtom( ( (QueryAtom) AtomRef.deref( _query.getAtom( atomIdx ) ) ).getExpression(), code ) ) return null;
+		}
+		atomStart[ _query.getAtomCount() ] = code.size();
+		for ( int bondIdx = 0; bondIdx < _query.getBondCount(); bondIdx++ ) {
+			bondStart[ bondIdx ] = code.size();
+			if ( !( BondRef.deref( _query.getBond( bondIdx ) ) instanceof QueryBond ) ) return null;
+			if ( !compileBond( ( (QueryBond) BondRef.deref( _query.getBond( bondIdx ) ) ).getExpression(), code ) ) return null;
+		}
+		bondStart[ _query.getBondCount() ] = code.size();
+
+		final int[] codeArray = new int[ code.size() ];
+		for ( int i = 0; i < codeArray.length; i++ ) codeArray[ i ] = code.get( i );
+		for ( int i = 0; i + 1 < atomStart.length; i++ ) {
+			if ( stackDepth( codeArray, atomStart[ i ], atomStart[ i + 1 ] ) > MAX_STACK_DEPTH ) return null;
+		}
+		for ( int i = 0; i + 1 < bondStart.length; i++ ) {
+			if ( stackDepth( codeArray, bondStart[ i ], bondStart[ i + 1 ] ) > MAX_STACK_DEPTH ) return null;
+		}
+		return new QueryProgram( codeArray, atomStart, bondStart );
+	}
+
+	/**
+	 * @param _queryAtom  index of the atom in the query
+	 * @param _mol
+	 * @param _atomIdx    index of the atom in provided molecule
+	 *
+	 * @return  <code>true</code> if the atom expression holds for the molecule atom
+	 */
+	boolean matchesAtom( int _queryAtom, PrimitiveMolecule _mol, int _atomIdx ) {
+		long stack = 0;
+		final int end = atomStart[ _queryAtom + 1 ];
+		for ( int pc = atomStart[ _queryAtom ]; pc < end; pc++ ) {
+			boolean value;
+			switch ( code[ pc ] ) {
+				case OP_TRUE:              value = true; break;
+				case OP_FALSE:             value = false; break;
+				case OP_AND:               stack = ( stack >>> 2 << 1 ) | ( stack & ( stack >>> 1 ) & 1 ); continue;
+				case OP_OR:                stack = ( stack >>> 2 << 1 ) | ( ( stack | ( stack >>> 1 ) ) & 1 ); continue;
+				case OP_NOT:               stack ^= 1; continue;
+				case OP_ELEMENT:           value = _mol.atomicNumbers[ _atomIdx ] == code[ ++pc ]; break;
+				case OP_ALIPHATIC_ELEMENT: value = _mol.atomicNumbers[ _atomIdx ] == code[ ++pc ] && !_mol.aromaticAtoms[ _atomIdx ]; break;
+				case OP_AROMATIC_ELEMENT:  value = _mol.atomicNumbers[ _atomIdx ] == code[ ++pc ] && _mol.aromaticAtoms[ _atomIdx ]; break;
+				case OP_AROMATIC:          value = _mol.aromaticAtoms[ _atomIdx ]; break;
+				case OP_ALIPHATIC:         value = !_mol.aromaticAtoms[ _atomIdx ]; break;
+				case OP_H_COUNT:           value = _mol.hydrogenCounts[ _atomIdx ] == code[ ++pc ]; break;
+				case OP_CHARGE:            value = _mol.charges[ _atomIdx ] == code[ ++pc ]; break;
+				case OP_DEGREE:            value = _mol.degrees[ _atomIdx ] == code[ ++pc ]; break;
+				case OP_RING:              value = _mol.ringAtoms[ _atomIdx ]; break;
+				case OP_CHAIN:             value = !_mol.ringAtoms[ _atomIdx ]; break;
+				case OP_TOTAL_DEGREE:      value = _mol.totalDegrees[ _atomIdx ] == code[ ++pc ]; break;
+				case OP_VALENCE:           value = _mol.valences[ _atomIdx ] == code[ ++pc ]; break;
+				case OP_RING_COUNT:        value = _mol.ringCounts[ _atomIdx ] == code[ ++pc ]; break;
+				default:                   throw new IllegalStateException( "invalid atom opcode: " + code[ pc ] );
+			}
+			stack = ( stack << 1 ) | ( value ? 1 : 0 );
+		}
+		return ( stack & 1 ) != 0;
+	}
+
+	/**
+	 * @param _queryBond  index of the bond in the query
+	 * @param _mol
+	 * @param _bondIdx    index of the bond in provided molecule
+	 *
+	 * @return  <code>true</code> if the bond expression holds for the molecule bond
+	 */
+	boolean matchesBond( int _queryBond, PrimitiveMolecule _mol, int _bondIdx ) {
+		long stack = 0;
+		final int end   = bondStart[ _queryBond + 1 ];
+		final int order = _mol.bondOrders[ _bondIdx ];
+		for ( int pc = bondStart[ _queryBond ]; pc < end; pc++ ) {
+			boolean value;
+			switch ( code[ pc ] ) {
+				case OP_TRUE:                    value = true; break;
+				case OP_FALSE:                   value = false; break;
+				case OP_AND:                     stack = ( stack >>> 2 << 1 ) | ( stack & ( stack >>> 1 ) & 1 ); continue;
+				case OP_OR:                      stack = ( stack >>> 2 << 1 ) | ( ( stack | ( stack >>> 1 ) ) & 1 ); continue;
+				case OP_NOT:                     stack ^= 1; continue;
+				case OP_BOND_ALIPHATIC_ORDER:    value = order == code[ ++pc ] && !_mol.aromaticBonds[ _bondIdx ]; break;
+				case OP_BOND_ORDER:              value = order == code[ ++pc ]; break;
+				case OP_BOND_AROMATIC:           value = _mol.aromaticBonds[ _bondIdx ]; break;
+				case OP_BOND_ALIPHATIC:          value = !_mol.aromaticBonds[ _bondIdx ]; break;
+				case OP_BOND_SINGLE_OR_AROMATIC: value = _mol.aromaticBonds[ _bondIdx ] || order == 1; break;
+				case OP_BOND_SINGLE_OR_DOUBLE:   value = order == 1 || order == 2; break;
+				case OP_BOND_DOUBLE_OR_AROMATIC: value = _mol.aromaticBonds[ _bondIdx ] || order == 2; break;
+				case OP_BOND_RING:               value = _mol.ringBonds[ _bondIdx ]; break;
+				case OP_BOND_CHAIN:              value = !_mol.ringBonds[ _bondIdx ]; break;
+				default:                         throw new IllegalStateException( "invalid bond opcode: " + code[ pc ] );
+			}
+			stack = ( stack << 1 ) | ( value ? 1 : 0 );
+		}
+		return ( stack & 1 ) != 0;
+	}
+
+	/**
+	 * Appends the postfix program of an atom expression.
+	 *
+	 * @return  <code>false</code> if the expression has an unsupported primitive
+	 */
+	private static boolean compileAtom( Expr _expr, List<Integer> _code ) {
+		switch ( _expr.type() ) {
+			case AND:
+			case OR:
+				if ( !compileAtom( _expr.left(), _code ) || !compileAtom( _expr.right(), _code ) ) return false;
+				_code.add( _expr.type() == Expr.Type.AND ? OP_AND : OP_OR );
+				return true;
+			case NOT:
+				if ( !compileAtom( _expr.left(), _code ) ) return false;
+				_code.add( OP_NOT );
+				return true;
+			case TRUE:              _code.add( OP_TRUE ); return true;
+			case FALSE:             _code.add( OP_FALSE ); return true;
+			case IS_AROMATIC:       _code.add( OP_AROMATIC ); return true;
+			case IS_ALIPHATIC:      _code.add( OP_ALIPHATIC ); return true;
+			case IS_IN_RING:        _code.add( OP_RING ); return true;
+			case IS_IN_CHAIN:       _code.add( OP_CHAIN ); return true;
+			case ELEMENT:           return addElement( OP_ELEMENT, _expr.value(), _code );
+			case ALIPHATIC_ELEMENT: return addElement( OP_ALIPHATIC_ELEMENT, _expr.value(), _code );
+			case AROMATIC_ELEMENT:  return addElement( OP_AROMATIC_ELEMENT, _expr.value(), _code );
+			case TOTAL_H_COUNT:     return add( OP_H_COUNT, _expr.value(), _code );
+			case FORMAL_CHARGE:     return add( OP_CHARGE, _expr.value(), _code );
+			case DEGREE:            return add( OP_DEGREE, _expr.value(), _code );
+			case TOTAL_DEGREE:      return add( OP_TOTAL_DEGREE, _expr.value(), _code );
+			case VALENCE:           return add( OP_VALENCE, _expr.value(), _code );
+			case RING_COUNT:        return add( OP_RING_COUNT, _expr.value(), _code );
+			default:                return false;
+		}
+	}
+
+	/**
+	 * Appends the postfix program of a bond expression.
+	 *
+	 * @return  <code>false</code> if the expression has an unsupported primitive
+	 */
+	private static boolean compileBond( Expr _expr, List<Integer> _code ) {
+		switch ( _expr.type() ) {
+			case AND:
+			case OR:
+				if ( !compileBond( _expr.left(), _code ) || !compileBond( _expr.right(), _code ) ) return false;
+				_code.add( _expr.type() == Expr.Type.AND ? OP_AND : OP_OR );
+				return true;
+			case NOT:
+				if ( !compileBond( _expr.left(), _code ) ) return false;
+				_code.add( OP_NOT );
+				return true;
+			case TRUE:               _code.add( OP_TRUE ); return true;
+			case FALSE:              _code.add( OP_FALSE ); return true;
+			case IS_AROMATIC:        _code.add( OP_BOND_AROMATIC ); return true;
+			case IS_ALIPHATIC:       _code.add( OP_BOND_ALIPHATIC ); return true;
+			case SINGLE_OR_AROMATIC: _code.add( OP_BOND_SINGLE_OR_AROMATIC ); return true;
+			case SINGLE_OR_DOUBLE:   _code.add( OP_BOND_SINGLE_OR_DOUBLE ); return true;
+			case DOUBLE_OR_AROMATIC: _code.add( OP_BOND_DOUBLE_OR_AROMATIC ); return true;
+			case IS_IN_RING:         _code.add( OP_BOND_RING ); return true;
+			case IS_IN_CHAIN:        _code.add( OP_BOND_CHAIN ); return true;
+			case ALIPHATIC_ORDER:    return add( OP_BOND_ALIPHATIC_ORDER, _expr.value(), _code );
+			case ORDER:              return add( OP_BOND_ORDER, _expr.value(), _code );
+			default:                 return false;
+		}
+	}
+
+	private static boolean addElement( int _opcode, int _element, List<Integer> _code ) {
+		return _element > 1 && add( _opcode, _element, _code );
+	}
+
+	private static boolean add( int _opcode, int _value, List<Integer> _code ) {
+		_code.add( _opcode );
+		_code.add( _value );
+		return true;
+	}
+
+	private static int stackDepth( int[] _code, int _start, int _end ) {
+		int depth    = 0;
+		int maxDepth = 0;
+		for ( int pc = _start; pc < _end; pc++ ) {
+			switch ( _code[ pc ] ) {
+				case OP_AND:
+				case OP_OR:
+					depth--;
+					break;
+				case OP_NOT:
+					break;
+				case OP_ELEMENT: case OP_ALIPHATIC_ELEMENT: case OP_AROMATIC_ELEMENT: case OP_H_COUNT:
+				case OP_CHARGE: case OP_DEGREE: case OP_TOTAL_DEGREE: case OP_VALENCE: case OP_RING_COUNT:
+				case OP_BOND_ALIPHATIC_ORDER: case OP_BOND_ORDER:
+					pc++;
+					depth++;
+					break;
+				default:
+					depth++;
+					break;
+			}
+			maxDepth = Math.max( maxDepth, depth );
+		}
+		return maxDepth;
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns every distinct plain SMARTS of an ontology to a dense integer id. The ids
+ * index the compiled queries (see {@link CompiledQueryRegistry}) and the per molecule
+ * result memo (see {@link MatchContext.Memo}), so a SMARTS used by several classes or
+ * twice within one class is searched at most once per molecule.
+ * <p>
+ * The table is filled while the ontology is read, or restored from an
+ * {@link OntologySnapshot}, and only read afterwards.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *       <li>restored from an ontology snapshot</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public class SmartsTable {
+
+	private final Map<String,Integer> idMap      = new HashMap<>();
+	private final List<String>        smartsList = new ArrayList<>();
+	private int                       nOccurrences;
+
+	/**
+	 * @param _smarts
+	 *
+	 * @return  id of provided SMARTS, a new id if it has not been seen before
+	 */
+	public int intern( String _smarts ) {
+		nOccurrences++;
+		Integer id = idMap.get( _smarts );
+		if ( id == null ) {
+			id = smartsList.size();
+			idMap.put( _smarts, id );
+			smartsList.add( _smarts );
+		}
+		return id;
+	}
+
+	/**
+	 * Fills an empty table with the SMARTS of a table written before.
+	 *
+	 * @param _smarts        distinct SMARTS in the order of their ids
+	 * @param _nOccurrences  see {@link #occurrences()}
+	 */
+	void restore( String[] _smarts, int _nOccurrences ) {
+		if ( !smartsList.isEmpty() ) throw new IllegalStateException( "SMARTS table already filled" );
+		for ( String smarts : _smarts ) {
+			idMap.put( smarts, smartsList.size() );
+			smartsList.add( smarts );
+		}
+		nOccurrences = _nOccurrences;
+	}
+
+	/**
+	 * @return  id of provided SMARTS or -1 if it was not interned
+	 */
+	public int idOf( String _smarts ) {
+		final Integer id = idMap.get( _smarts );
+		return id != null ? id : -1;
+	}
+
+	/**
+	 * @return  SMARTS with provided id
+	 */
+	public String smarts( int _id ) { return smartsList.get( _id ); }
+
+	/**
+	 * @return  number of distinct SMARTS
+	 */
+	public int size() { return smartsList.size(); }
+
+	/**
+	 * @return  number of interned SMARTS including repetitions
+	 */
+	public int occurrences() { return nOccurrences; }
+
+	/**
+	 * @return  number of repeated SMARTS collapsed into an existing id
+	 */
+	public int duplicates() { return nOccurrences - smartsList.size(); }
+}
@@ -56,6 +56,54 @@ public class StructureSearchEngine {
 		return -1;
 	}
 	
+	/**
+	 * Substructure search with a query compiled at ontology load, see {@link CompiledQueryRegistry}.
+	 * Pairs the {@link FeatureSignature} or the {@link PathFingerprint} rule out are not searched,
+	 * queries with a {@link Vf2Matcher} are searched with it instead of the module's matcher.
+	 */
+	public static int searchBySubstructure( PreparedMolecule _mol, CompiledQuery _query, String _module, boolean _verbose ) throws Exception {
+		try {
+			if ( !_mol.isValid() ) return -1;
+			if ( !_query.passesScreens( _mol ) ) return 0;
+			
+			final Vf2Matcher matcher = _query.getVf2Matcher();
+			if ( matcher != null ) {
+				final boolean found = matcher.matches( _mol.getPrimitiveMolecule( _module.toLowerCase() ) );
+				if ( !_query.isCrossChecked() ) return found ? 1 : 0;
+				return crossCheck( _mol, _query, found, searchBySubstructureAmbit( _mol, _query, _verbose ) );
+			}
+			
+			if ( _module.toLowerCase().equals( "cdk" ) ) return searchBySubstructureCdk( _mol, _query );
+			
+			else if ( _module.toLowerCase().equals( "ambit" ) ) return searchBySubstructureAmbit( _mol, _query, _verbose );
+			
+			else if ( _module.toLowerCase().equals( "vf2" ) ) return searchBySubstructureVf2( _mol, _query, _verbose );
+			
+			else if ( _module.toLowerCase().equals( "ocl" ) ) return searchBySubstructureOcl( _mol, _query, _verbose );
+			
+			else {
+				LOG.warning( "error: chemistry module not found ");
+			}
+				
+		} catch ( Exception e ) {
+			LOG.info( "ERROR: error in searchBySubstructure module " + e );
+		}
+		return -1;
+	}
+	
+	/*
+	 * compares the result of the VF2 matcher with the result of Ambit, a difference
+	 * is logged and counted, the result of the VF2 matcher is returned so a cross-checked
+	 * run assigns the same classes as an unchecked one
+	 */
+	private static int crossCheck( PreparedMolecule _mol, CompiledQuery _query, boolean _found, int _ambit ) {
+		if ( _ambit >= 0 ) {
+			_query.recordCrossCheck( _found, _ambit > 0 );
+			if ( _found != _ambit > 0 ) LOG.warning( "compiled matcher differs from ambit: " + _mol + " smarts: " + _query + " compiled: " + _found );
+		}
+		return _found ? 1 : 0;
+	}
+	
 	/*
 	 * chemaxon substructure searcher
 	 
@@ -104,6 +152,72 @@ public class StructureSearchEngine {
 		}
 	}
 	
+	/*
+	 * CDK SSS substructure searcher with a compiled query and a seeded pattern of it,
+	 * see MappingSeeds, the screens of the query are checked first
+	 */
+	public static int searchBySubstructureCdk( PreparedMolecule _mol, CompiledQuery _query, Pattern _seededPattern ) throws Exception{ 
+		try {
+			if ( !_query.passesScreens( _mol ) ) return 0;
+			if ( _seededPattern.matchAll( _mol.getCdkMolecule() ).atLeast( 1 ) ) return 1;
+			else return 0;
+			
+	    } catch (Exception e) {
+	    	LOG.info( "ERROR: CDK error seeded SSS: " + _mol + " smarts: " + _query );
+			return -1;
+		}
+	}
+	
+	/*
+	 * CDK SSS substructure searcher with a compiled query and a prepared molecule
+	 */
+	public static int searchBySubstructureCdk( PreparedMolecule _mol, CompiledQuery _query ) throws Exception{ 
+		try {
+			// existence only, enumeration stops at the first mapping passing the stereo filter
+			if ( _query.getCdkPattern().matchAll( _mol.getCdkMolecule() ).atLeast( 1 ) ) return 1;
+			else return 0;
+			
+	    } catch (Exception e) {
+	    	LOG.info( "ERROR: CDK error SSS: " + _mol + " smarts: " + _query );
+			return -1;
+		}
+	}
+	
+	/*
+	 * VF2 substructure searcher on the primitive arrays of the Ambit view, queries the
+	 * matcher does not support are searched with Ambit
+	 */
+	public static int searchBySubstructureVf2( PreparedMolecule _mol, CompiledQuery _query, boolean _verbose ) { 
+		try {
+			final Vf2Matcher matcher = _query.getVf2Matcher();
+			if ( matcher == null ) return searchBySubstructureAmbit( _mol, _query, _verbose );
+			final boolean found = matcher.matches( _mol.getPrimitiveMolecule( ChemLib.CHEMLIB_VF2 ) );
+			if ( !_query.isCrossChecked() ) return found ? 1 : 0;
+			return crossCheck( _mol, _query, found, searchBySubstructureAmbit( _mol, _query, _verbose ) );
+			
+	    } catch (Exception e) {
+	    	LOG.info( "ERROR: VF2 error SSS: " + _mol + " smarts: " + _query );
+			return -1;
+		}
+	}
+	
+	/*
+	 * OCL substructure searcher for idcode fragments, the fragment fingerprint indexes are
+	 * compared before the atom by atom search, SMARTS are searched with Ambit
+	 */
+	public static int searchBySubstructureOcl( PreparedMolecule _mol, CompiledQuery _query, boolean _verbose ) { 
+		try {
+			if ( _query.getOclFragment() == null ) return searchBySubstructureAmbit( _mol, _query, _verbose );
+			if ( OclFragments.isFragmentInMolecule( _query.getOclFragment(), _query.getOclFragmentIndex(),
+													 _mol.getOclMolecule(), _mol.getOclIndex() ) ) return 1;
+			else return 0;
+			
+	    } catch (Exception e) {
+	    	LOG.info( "ERROR: OCL error SSS: " + _mol + " idcode: " + _query );
+			return -1;
+		}
+	}
+	
 	/*
 	 * Ambit SSS substructure searcher
 	 */
@@ -135,6 +249,23 @@ public class StructureSearchEngine {
 		return -1;
 	}
 	
+	/*
+	 * Ambit SSS substructure searcher with a compiled query and a prepared molecule, 
+	 * the SmartsManager is reused by the calling thread
+	 */
+	public static int searchBySubstructureAmbit( PreparedMolecule _mol, CompiledQuery _query, boolean _verbose ) { 
+		try {
+			if ( _query.getAmbitManager().searchIn( _mol.getAmbitMolecule() ) ) {
+				if ( _verbose ) System.out.println( "found: " + _query );
+				return 1;
+			} else return 0;
+			
+	    } catch ( Exception e ) {
+	    	LOG.info( "ERROR: Ambit substructure search error: " + _mol + " smarts: " + _query );
+		}
+		return -1;
+	}
+	
 	/*
 	 * Nick Kochev 2022-02-18 GroupMatch
 	 */
@@ -159,6 +290,29 @@ public class StructureSearchEngine {
 		return -1;
     }	 
 
+	/*
+	 * GroupMatch positions on the explicit hydrogen view of a prepared molecule, the group
+	 * counter is reused by the calling thread. Counting stops at _limit: callers deciding
+	 * "at least n" pass n, callers deciding "exactly n" pass n + 1.
+	 */
+	public static int searchBySubstructureAmbitAllInstances( PreparedMolecule _mol, CompiledQuery _query, int _limit, 
+																		boolean _verbose ) throws Exception {
+        
+		final String smarts = _query.getSmarts();
+		try {
+			if ( _mol.isValid() && !_query.passesScreens( _mol ) ) return 0;
+			
+            int posCount = _query.getGroupCounter().count( _mol.getAmbitExplicitHMolecule(), _limit );
+            
+            if ( _verbose ) System.out.println( "Group " + smarts + " found at " + posCount + " positions in " + _mol );
+            return posCount;
+            
+        } catch (Exception e) {
+        	LOG.info( "ERROR: Ambit error all instances processing: " + _mol + " smarts: "+smarts);
+        }
+		return -1;
+    }	 
+
 	/*
 	 * smiles preprocessing using CDK version 2.4.0
 	 */
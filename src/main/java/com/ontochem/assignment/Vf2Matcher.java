@@ -0,0 +1,329 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.Arrays;
+
+import org.openscience.cdk.interfaces.IAtom;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.interfaces.IBond;
+
+/**
+ * VF2 substructure matcher working on the primitive arrays of a {@link PrimitiveMolecule}
+ * instead of CDK objects. It serves the <code>vf2</code> engine, see {@link ChemLib}, and
+ * the compiled queries of the other engines, see {@link CompiledQuery#compileMatcher(int)}.
+ * <p>
+ * The search state of VF2 is the partial mapping with the terminal sets of both graphs,
+ * the unmapped atoms bonded to a mapped atom. The query atoms are ordered once at compile
+ * time: the atom with most bonds first, then always the atom with most bonds to atoms
+ * already ordered. Each atom after the first is therefore in the query terminal set when
+ * it is mapped, and its candidates are the unmapped neighbors of the atom its earlier
+ * neighbor is mapped to. A candidate pair is feasible if
+ * <ul>
+ *   <li>the atom and the bonds to all mapped neighbors match, see {@link QueryProgram}</li>
+ *   <li>the target atom has at least as many unmapped neighbors in the target terminal set
+ *       as the query atom has in the query terminal set</li>
+ *   <li>the target atom has at least as many unmapped neighbors as the query atom</li>
+ * </ul>
+ * The look-ahead rules are those of VF2 for subgraph monomorphism, a query bond needs a
+ * target bond but not the reverse. The query side counts only depend on the order and are
+ * computed at compile time. For each molecule the compatible target atoms of every query
+ * atom are computed first as bitsets, a query atom without candidates ends the search
+ * before any backtracking.
+ * <p>
+ * The search keeps its state in buffers owned by the calling thread which only grow,
+ * so matching does not allocate once the buffers fit the largest molecule seen. Queries
+ * with primitives not supported by {@link QueryProgram}, recursive SMARTS, stereo or
+ * several components are not compiled, see {@link #compile(String, int)}.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *       <li>VF2 look-ahead on the terminal sets, atom limit, replaces the matcher of acyclic queries</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public final class Vf2Matcher {
+
+	private final static ThreadLocal<SearchState> SEARCH_STATES = ThreadLocal.withInitial( SearchState::new );
+
+	private final int          nAtoms;
+	private final QueryProgram program;
+	/** index in the query of the atom at each search position */
+	private final int[]        atoms;
+	/** number of bonds of the atom at each search position */
+	private final int[]        degrees;
+	/** bonds of the atom at each search position to later positions in the terminal set when it is mapped */
+	private final int[]        terminalDegrees;
+	/** bonds of the atom at each search position to later positions */
+	private final int[]        remainingDegrees;
+	/** earlier position bonded to each position, -1 for the first position */
+	private final int[]        parents;
+	/** index in the query of the bond to the parent */
+	private final int[]        parentBonds;
+	/** further bonds to earlier positions, of position p from closureStart[ p ] to closureStart[ p + 1 ] */
+	private final int[]        closureStart;
+	private final int[]        closurePositions;
+	private final int[]        closureBonds;
+
+	private Vf2Matcher( QueryProgram _program, int[] _atoms, int[] _degrees, int[] _terminalDegrees, int[] _remainingDegrees,
+						int[] _parents, int[] _parentBonds, int[] _closureStart, int[] _closurePositions, int[] _closureBonds ) {
+		nAtoms           = _atoms.length;
+		program          = _program;
+		atoms            = _atoms;
+		degrees          = _degrees;
+		terminalDegrees  = _terminalDegrees;
+		remainingDegrees = _remainingDegrees;
+		parents          = _parents;
+		parentBonds      = _parentBonds;
+		closureStart     = _closureStart;
+		closurePositions = _closurePositions;
+		closureBonds     = _closureBonds;
+	}
+
+	/**
+	 * @param _smarts
+	 * @param _maxAtoms  largest query compiled
+	 *
+	 * @return  matcher or <code>null</code> if the query is not supported
+	 */
+	public static Vf2Matcher compile( String _smarts, int _maxAtoms ) {
+
+		if ( _smarts.indexOf( '$' ) >= 0 || _smarts.indexOf( '.' ) >= 0 || _smarts.indexOf( '@' ) >= 0
+				|| _smarts.indexOf( '/' ) >= 0 || _smarts.indexOf( '\\' ) >= 0 ) return null;
+
+		final IAtomContainer query = FeatureSignature.parseQuery( _smarts );
+		if ( query == null || query.getAtomCount() == 0 || query.getAtomCount() > _maxAtoms ) return null;
+		final QueryProgram program = QueryProgram.compile( query );
+		if ( program == null ) return null;
+
+		final int   nAtoms   = query.getAtomCount();
+		final int[] position = new int[ nAtoms ];
+		final int[] nOrderedNeighbors = new int[ nAtoms ];
+		final int[] atoms    = new int[ nAtoms ];
+		final int[] degrees  = new int[ nAtoms ];
+		Arrays.fill( position, -1 );
+
+		for ( int pos = 0; pos < nAtoms; pos++ ) {
+			int next = -1;
+			for ( int atomIdx = 0; atomIdx < nAtoms; atomIdx++ ) {
+				if ( position[ atomIdx ] >= 0 ) continue;
+				if ( pos > 0 && nOrderedNeighbors[ atomIdx ] == 0 ) continue;
+				if ( next < 0 || nOrderedNeighbors[ atomIdx ] > nOrderedNeighbors[ next ]
+						|| ( nOrderedNeighbors[ atomIdx ] == nOrderedNeighbors[ next ]
+							 && query.getConnectedBondsCount( atomIdx ) > query.getConnectedBondsCount( next ) ) ) {
+					next = atomIdx;
+				}
+			}
+			// several components
+			if ( next < 0 ) return null;
+			position[ next ] = pos;
+			atoms[ pos ]     = next;
+			degrees[ pos ]   = query.getConnectedBondsCount( next );
+			for ( IBond bond : query.getConnectedBondsList( query.getAtom( next ) ) ) {
+				nOrderedNeighbors[ query.indexOf( bond.getOther( query.getAtom( next ) ) ) ]++;
+			}
+		}
+
+		final int[] parents          = new int[ nAtoms ];
+		final int[] parentBonds      = new int[ nAtoms ];
+		final int[] terminalDegrees  = new int[ nAtoms ];
+		final int[] remainingDegrees = new int[ nAtoms ];
+		final int[] closureStart     = new int[ nAtoms + 1 ];
+		final int[] closurePositions = new int[ query.getBondCount() ];
+		final int[] closureBonds     = new int[ query.getBondCount() ];
+		// search position from which each position is in the terminal set
+		final int[] terminalFrom     = new int[ nAtoms ];
+		Arrays.fill( terminalFrom, nAtoms );
+		int nClosures = 0;
+		for ( int pos = 0; pos < nAtoms; pos++ ) {
+			parents[ pos ]      = -1;
+			parentBonds[ pos ]  = -1;
+			closureStart[ pos ] = nClosures;
+			final IAtom atom = query.getAtom( atoms[ pos ] );
+			for ( IBond bond : query.getConnectedBondsList( atom ) ) {
+				final int otherPos = position[ query.indexOf( bond.getOther( atom ) ) ];
+				if ( otherPos > pos ) {
+					terminalFrom[ otherPos ] = Math.min( terminalFrom[ otherPos ], pos + 1 );
+					continue;
+				}
+				if ( parents[ pos ] < 0 ) {
+					parents[ pos ]     = otherPos;
+					parentBonds[ pos ] = query.indexOf( bond );
+				} else {
+					closurePositions[ nClosures ] = otherPos;
+					closureBonds[ nClosures++ ]   = query.indexOf( bond );
+				}
+			}
+		}
+		closureStart[ nAtoms ] = nClosures;
+		for ( int pos = 0; pos < nAtoms; pos++ ) {
+			final IAtom atom = query.getAtom( atoms[ pos ] );
+			for ( IBond bond : query.getConnectedBondsList( atom ) ) {
+				final int otherPos = position[ query.indexOf( bond.getOther( atom ) ) ];
+				if ( otherPos <= pos ) continue;
+				remainingDegrees[ pos ]++;
+				if ( terminalFrom[ otherPos ] <= pos ) terminalDegrees[ pos ]++;
+			}
+		}
+
+		return new Vf2Matcher( program, atoms, degrees, terminalDegrees, remainingDegrees,
+							   parents, parentBonds, closureStart, closurePositions, closureBonds );
+	}
+
+	/**
+	 * @param _mol
+	 *
+	 * @return  <code>true</code> if the query is found in provided molecule
+	 */
+	public boolean matches( PrimitiveMolecule _mol ) {
+
+		if ( _mol.nAtoms < nAtoms ) return false;
+		final SearchState state = SEARCH_STATES.get();
+		final int         words = ( _mol.nAtoms + 63 ) >>> 6;
+		state.ensureCapacity( nAtoms, _mol.nAtoms, words );
+
+		// compatible target atoms of each query atom
+		final long[] candidates = state.candidates;
+		for ( int pos = 0; pos < nAtoms; pos++ ) {
+			final int offset = pos * words;
+			long      any    = 0;
+			for ( int word = 0; word < words; word++ ) candidates[ offset + word ] = 0;
+			for ( int atomIdx = 0; atomIdx < _mol.nAtoms; atomIdx++ ) {
+				if ( _mol.degrees[ atomIdx ] < degrees[ pos ] || !program.matchesAtom( atoms[ pos ], _mol, atomIdx ) ) continue;
+				candidates[ offset + ( atomIdx >>> 6 ) ] |= 1L << atomIdx;
+				any = 1;
+			}
+			if ( any == 0 ) return false;
+		}
+
+		final long[] used = state.used;
+		for ( int word = 0; word < words; word++ ) used[ word ] = 0;
+		Arrays.fill( state.terminalDepths, 0, _mol.nAtoms, 0 );
+		for ( int word = 0; word < words; word++ ) {
+			long bits = candidates[ word ];
+			while ( bits != 0 ) {
+				final int atomIdx = ( word << 6 ) + Long.numberOfTrailingZeros( bits );
+				bits &= bits - 1;
+				if ( !isFeasible( 0, _mol, state, atomIdx ) ) continue;
+				if ( map( 0, _mol, state, atomIdx ) ) return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds a pair to the mapping, updates the target terminal set and searches the next
+	 * position. The terminal set is restored on return.
+	 *
+	 * @return  <code>true</code> if the mapping could be completed
+	 */
+	private boolean map( int _pos, PrimitiveMolecule _mol, SearchState _state, int _atomIdx ) {
+		final int[]  terminalDepths = _state.terminalDepths;
+		final long[] used           = _state.used;
+		final int    depth          = _pos + 1;
+		_state.mapping[ _pos ] = _atomIdx;
+		used[ _atomIdx >>> 6 ] |= 1L << _atomIdx;
+		if ( terminalDepths[ _atomIdx ] == 0 ) terminalDepths[ _atomIdx ] = depth;
+		for ( int edge = _mol.neighborStart[ _atomIdx ]; edge < _mol.neighborStart[ _atomIdx + 1 ]; edge++ ) {
+			if ( terminalDepths[ _mol.neighbors[ edge ] ] == 0 ) terminalDepths[ _mol.neighbors[ edge ] ] = depth;
+		}
+
+		final boolean found = extend( _pos + 1, _mol, _state );
+
+		used[ _atomIdx >>> 6 ] &= ~( 1L << _atomIdx );
+		if ( terminalDepths[ _atomIdx ] == depth ) terminalDepths[ _atomIdx ] = 0;
+		for ( int edge = _mol.neighborStart[ _atomIdx ]; edge < _mol.neighborStart[ _atomIdx + 1 ]; edge++ ) {
+			if ( terminalDepths[ _mol.neighbors[ edge ] ] == depth ) terminalDepths[ _mol.neighbors[ edge ] ] = 0;
+		}
+		return found;
+	}
+
+	/**
+	 * Look-ahead of VF2 on the terminal sets before the pair is added.
+	 *
+	 * @return  <code>false</code> if the unmapped neighbors of the target atom can not take
+	 *          the unmapped neighbors of the query atom
+	 */
+	private boolean isFeasible( int _pos, PrimitiveMolecule _mol, SearchState _state, int _atomIdx ) {
+		final long[] used = _state.used;
+		int terminal  = 0;
+		int remaining = 0;
+		for ( int edge = _mol.neighborStart[ _atomIdx ]; edge < _mol.neighborStart[ _atomIdx + 1 ]; edge++ ) {
+			final int neighbor = _mol.neighbors[ edge ];
+			if ( ( used[ neighbor >>> 6 ] & ( 1L << neighbor ) ) != 0 ) continue;
+			remaining++;
+			if ( _state.terminalDepths[ neighbor ] > 0 ) terminal++;
+		}
+		return terminal >= terminalDegrees[ _pos ] && remaining >= remainingDegrees[ _pos ];
+	}
+
+	private boolean extend( int _pos, PrimitiveMolecule _mol, SearchState _state ) {
+
+		if ( _pos == nAtoms ) return true;
+		final long[] used       = _state.used;
+		final long[] candidates = _state.candidates;
+		final int    offset     = _pos * _state.words;
+		final int    parentAtom = _state.mapping[ parents[ _pos ] ];
+
+		for ( int edge = _mol.neighborStart[ parentAtom ]; edge < _mol.neighborStart[ parentAtom + 1 ]; edge++ ) {
+			final int  atomIdx = _mol.neighbors[ edge ];
+			final long bit     = 1L << atomIdx;
+			final int  word    = atomIdx >>> 6;
+			if ( ( used[ word ] & bit ) != 0 || ( candidates[ offset + word ] & bit ) == 0 ) continue;
+			if ( !program.matchesBond( parentBonds[ _pos ], _mol, _mol.neighborBonds[ edge ] ) ) continue;
+			if ( !matchesClosures( _pos, _mol, _state.mapping, atomIdx ) ) continue;
+			if ( !isFeasible( _pos, _mol, _state, atomIdx ) ) continue;
+			if ( map( _pos, _mol, _state, atomIdx ) ) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return  <code>true</code> if the ring closure bonds of provided position to earlier
+	 *          positions are present and match
+	 */
+	private boolean matchesClosures( int _pos, PrimitiveMolecule _mol, int[] _mapping, int _atomIdx ) {
+		for ( int closure = closureStart[ _pos ]; closure < closureStart[ _pos + 1 ]; closure++ ) {
+			final int other = _mapping[ closurePositions[ closure ] ];
+			int bondIdx = -1;
+			for ( int edge = _mol.neighborStart[ _atomIdx ]; edge < _mol.neighborStart[ _atomIdx + 1 ]; edge++ ) {
+				if ( _mol.neighbors[ edge ] == other ) {
+					bondIdx = _mol.neighborBonds[ edge ];
+					break;
+				}
+			}
+			if ( bondIdx < 0 || !program.matchesBond( closureBonds[ closure ], _mol, bondIdx ) ) return false;
+		}
+		return true;
+	}
+
+	// ==== class SearchState =================================================
+	/**
+	 * Buffers of one thread, grown to the largest query and molecule searched.
+	 */
+	private final static class SearchState {
+
+		private long[] candidates     = new long[ 0 ];
+		private long[] used           = new long[ 0 ];
+		private int[]  mapping        = new int[ 0 ];
+		/** search depth at which a target atom entered the terminal set or was mapped, 0 if neither */
+		private int[]  terminalDepths = new int[ 0 ];
+		/** bitset words of the molecule searched */
+		private int    words;
+
+		private void ensureCapacity( int _nQueryAtoms, int _nAtoms, int _words ) {
+			if ( candidates.length < _nQueryAtoms * _words ) candidates = new long[ Math.max( _nQueryAtoms * _words, 2 * candidates.length ) ];
+			if ( used.length < _words )                      used       = new long[ Math.max( _words, 2 * used.length ) ];
+			if ( mapping.length < _nQueryAtoms )             mapping    = new int[ Math.max( _nQueryAtoms, 2 * mapping.length ) ];
+			if ( terminalDepths.length < _nAtoms )           terminalDepths = new int[ Math.max( _nAtoms, 2 * terminalDepths.length ) ];
+			words = _words;
+		}
+	}
+}
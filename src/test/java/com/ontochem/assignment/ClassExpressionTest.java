@@ -0,0 +1,140 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.ontochem.assignment.OntologyLoader.OntologyData;
+
+import junit.framework.TestCase;
+
+/**
+ * Evaluation of parsed SMARTS lists against a context answering from fixed sets of
+ * found queries, no chemistry module involved.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *       <li>NOT entries negated as a whole</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public class ClassExpressionTest extends TestCase {
+
+	private final static String OBO          = "oc_chem_classes_ext_2023-11-20.obo";
+	/** 19-norpregnenes: two entries !query1XXX!query1 and one stereo pair query1XXXquery2 */
+	private final static String NORPREGNENES = "150000000317";
+
+	private static OntologyData ontData;
+
+	private static OntologyData ontology() throws IOException {
+		if ( ontData == null ) ontData = OntologyLoader.readObo( OBO, ChemLib.CHEMLIB_CDK, true );
+		return ontData;
+	}
+
+	/**
+	 * @param _found        SMARTS found with the selected module
+	 * @param _foundStereo  SMARTS found with stereochemistry
+	 */
+	private static MatchContext context( final SmartsTable _table, final Collection<String> _found,
+											final Collection<String> _foundStereo ) {
+		return new MatchContext( null, null, ChemLib.CHEMLIB_CDK, false, null ) {
+			@Override
+			public boolean matches( int _queryId ) { return _found.contains( _table.smarts( _queryId ) ); }
+			@Override
+			public boolean matchesStereo( int _queryId ) { return _foundStereo.contains( _table.smarts( _queryId ) ); }
+			@Override
+			public int maxCount( int _queryId ) { return Integer.MAX_VALUE; }
+			@Override
+			public int count( int _queryId, int _limit ) { return matches( _queryId ) ? 1 : 0; }
+		};
+	}
+
+	/**
+	 * @return  SMARTS before and after the first XXX of an entry, leading <code>!</code> removed
+	 */
+	private static String[] stereoPair( String _entry ) {
+		final List<String> parts = AssignmentUtils.Segmenter( _entry.replaceAll( "^!", "" ), "XXX" );
+		return new String[] { parts.get( 0 ), parts.get( 1 ).replaceAll( "^!", "" ) };
+	}
+
+	/**
+	 * Evaluates 19-norpregnenes for a compound that has the stereo pair of the class
+	 * and the structures of the negated stereo pairs with provided indices.
+	 */
+	private boolean evaluateNorpregnenes( int... _negated ) throws IOException {
+		final List<String> smartsList = ontology().getOcidSmartsMap().get( NORPREGNENES );
+		assertEquals( 3, smartsList.size() );
+		assertTrue( smartsList.get( 0 ).startsWith( "!" ) );
+		assertTrue( smartsList.get( 1 ).startsWith( "!" ) );
+
+		final Set<String> found       = new HashSet<>();
+		final Set<String> foundStereo = new HashSet<>();
+		final String[]    pair        = stereoPair( smartsList.get( 2 ) );
+		foundStereo.add( pair[ 0 ] );
+		found.add( pair[ 1 ] );
+		for ( int i : _negated ) {
+			final String[] negated = stereoPair( smartsList.get( i ) );
+			foundStereo.add( negated[ 0 ] );
+			found.add( negated[ 1 ] );
+		}
+		final SmartsTable table = ontology().getSmartsTable();
+		return ontology().getOcidExpressionMap().get( NORPREGNENES ).evaluate( context( table, found, foundStereo ) );
+	}
+
+	private static boolean evaluate( List<String> _smartsList, String... _found ) {
+		final SmartsTable table = new SmartsTable();
+		final Set<String> found = new HashSet<>( Arrays.asList( _found ) );
+		return ClassExpression.parse( _smartsList, table ).evaluate( context( table, found, Collections.<String>emptySet() ) );
+	}
+
+	public void testNorpregnenesWithoutNegatedStructure() throws IOException {
+		assertTrue( evaluateNorpregnenes() );
+	}
+
+	public void testNorpregnenesWithOneNegatedStructure() throws IOException {
+		// before: the !query2 half was never found, the entry found with stereochemistry
+		// neither excluded nor passed and the other entry passed, the class was assigned
+		assertFalse( evaluateNorpregnenes( 0 ) );
+		assertFalse( evaluateNorpregnenes( 1 ) );
+	}
+
+	public void testNorpregnenesWithBothNegatedStructures() throws IOException {
+		assertFalse( evaluateNorpregnenes( 0, 1 ) );
+	}
+
+	public void testNegatedDotEntry() {
+		final List<String> smartsList = Arrays.asList( "!CO.CN" );
+		assertTrue( evaluate( smartsList ) );
+		assertFalse( evaluate( smartsList, "CO", "CN" ) );
+		// partly found does not exclude, before: the only entry did not pass
+		assertTrue( evaluate( smartsList, "CO" ) );
+		assertTrue( evaluate( Arrays.asList( "!CO.CN", "!CS" ), "CO" ) );
+	}
+
+	public void testOrAndNot() {
+		final List<String> smartsList = Arrays.asList( "CC", "CCl", "!CO" );
+		assertTrue( evaluate( smartsList, "CC" ) );
+		assertTrue( evaluate( smartsList, "CCl" ) );
+		assertFalse( evaluate( smartsList, "CC", "CO" ) );
+		assertFalse( evaluate( smartsList, "CO" ) );
+		assertFalse( evaluate( smartsList ) );
+	}
+
+	public void testCount() {
+		assertTrue( evaluate( Arrays.asList( "1EXACTCO" ), "CO" ) );
+		assertFalse( evaluate( Arrays.asList( "2MORECO" ), "CO" ) );
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openscience.cdk.interfaces.IAtomContainer;
+
+import ambit2.smarts.IsomorphismTester;
+import ambit2.smarts.SmartsParser;
+import ambit2.smarts.groups.GroupMatch;
+
+import junit.framework.TestCase;
+
+/**
+ * Occurrence counting of {@link CompiledQuery.GroupCounter} compared to
+ * {@link GroupMatch#matchCount(IAtomContainer)} for the counted class SMARTS of the
+ * ontology and single atom queries.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public class GroupCounterTest extends TestCase {
+
+	private final static String  OBO     = "oc_chem_classes_ext_2023-11-20.obo";
+	private final static Pattern COUNTED = Pattern.compile( "^!?\\d+(?:EXACT|MORE)(.+)$" );
+
+	private final static List<String> SMILES = Arrays.asList(
+			"OC(=O)CC(O)(CC(=O)O)C(=O)O",
+			"OC(=O)C(O)C(O)C(=O)O",
+			"OC(=O)C(CC(=O)O)(CC(=O)O)CC(=O)O",
+			"OCC(O)CO",
+			"NC(=N)NC(N)=N",
+			"C=CC=CCC=C",
+			"CSCCS",
+			"CN(C)C(C)=O",
+			"Oc1ccccc1C(=O)O",
+			"O.O.O.CC(=O)O",
+			"C[C@H](N)C(=O)O" );
+
+	private final static List<String> SINGLE_ATOM_QUERIES = Arrays.asList( "[#8]", "[OH1]", "[#6;R]", "[#7;R0]" );
+
+	/**
+	 * @return  distinct SMARTS of the EXACT and MORE entries of the ontology, count removed
+	 */
+	private static Set<String> countedQueries() throws IOException {
+		final Set<String> queries = new LinkedHashSet<>();
+		for ( List<String> smartsList : OntologyLoader.readObo( OBO, ChemLib.CHEMLIB_AMBIT, true ).getOcidSmartsMap().values() ) {
+			for ( String smarts : smartsList ) {
+				final Matcher matcher = COUNTED.matcher( smarts );
+				if ( matcher.matches() && !matcher.group( 1 ).contains( "XXX" ) ) queries.add( matcher.group( 1 ) );
+			}
+		}
+		return queries;
+	}
+
+	private static int matchCount( String _smarts, IAtomContainer _target ) {
+		final IsomorphismTester isoTester = new IsomorphismTester();
+		isoTester.setFlagCheckStereoElements( true );
+		return new GroupMatch( _smarts, new SmartsParser(), isoTester ).matchCount( _target );
+	}
+
+	private static void assertSameCounts( List<String> _queries ) throws Exception {
+		for ( String smarts : _queries ) {
+			final CompiledQuery.GroupCounter counter = new CompiledQuery( smarts, ChemLib.CHEMLIB_AMBIT ).getGroupCounter();
+			assertTrue( smarts, counter.isValid() );
+			for ( String smiles : SMILES ) {
+				final IAtomContainer target   = PreparedMolecule.parse( smiles, true ).getAmbitExplicitHMolecule();
+				final int            expected = matchCount( smarts, target );
+				assertEquals( smarts + " in " + smiles, expected, counter.count( target, Integer.MAX_VALUE ) );
+				assertEquals( smarts + " in " + smiles + ", limit 1", Math.min( expected, 1 ), counter.count( target, 1 ) );
+			}
+		}
+	}
+
+	public void testCountedClassQueries() throws Exception {
+		final List<String> queries = new ArrayList<>( countedQueries() );
+		assertTrue( queries.contains( "[#6]-[#6](-[#8H1])=O" ) );
+		assertSameCounts( queries );
+	}
+
+	public void testSingleAtomQueries() throws Exception {
+		assertSameCounts( SINGLE_ATOM_QUERIES );
+	}
+
+	public void testFourCarboxylicAcidGroups() throws Exception {
+		final IAtomContainer target = PreparedMolecule.parse( "OC(=O)C(CC(=O)O)(CC(=O)O)CC(=O)O", true ).getAmbitExplicitHMolecule();
+		assertEquals( 4, new CompiledQuery( "[#6]-[#6](-[#8H1])=O", ChemLib.CHEMLIB_AMBIT ).getGroupCounter().count( target, Integer.MAX_VALUE ) );
+	}
+
+	public void testInvalidQuery() throws Exception {
+		final CompiledQuery.GroupCounter counter = new CompiledQuery( "[#6", ChemLib.CHEMLIB_AMBIT ).getGroupCounter();
+		assertFalse( counter.isValid() );
+		assertEquals( 0, counter.count( PreparedMolecule.parse( "CCO", true ).getAmbitExplicitHMolecule(), Integer.MAX_VALUE ) );
+	}
+}
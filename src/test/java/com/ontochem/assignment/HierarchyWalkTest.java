@@ -0,0 +1,222 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import com.ontochem.assignment.OntologyLoader.OntologyData;
+
+import junit.framework.TestCase;
+
+/**
+ * Hierarchy walk over the contracted evaluation graph with the leaf selection compared to
+ * the original breadth first walk over the class maps with the set based filter of the
+ * output loop, on a hand-built ontology with classes of several parents, a dangling is_a
+ * relation, classes not reached over has_a relations, pass-through classes without SMARTS
+ * and an is_a relation implied by another one. Class SMARTS pass or fail by a hash of the
+ * class id, no chemistry module involved.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public class HierarchyWalkTest extends TestCase {
+
+	private final static String OBO = "src/test/resources/hierarchy_walk.obo";
+
+	private final static String CARBON_CHAINS = "100000000001";
+	private final static String OXYGEN        = "100000000002";
+	private final static String ALCOHOLS      = "100000000003";
+	private final static String PROPANES      = "100000000005";
+	private final static String BUTANOLS      = "100000000007";
+	private final static String AMINES        = "100000000008";
+	private final static String PROPYLAMINES  = "100000000009";
+	private final static String METHYLAMINES  = "100000000010";
+	private final static String CHLORIDES     = "100000000012";
+	private final static String SULFIDES      = "100000000013";
+	private final static String FLUORINATED   = "100000000015";
+
+	/**
+	 * Ontology compiled as by the assignment, with the declared class maps kept for the
+	 * original walk.
+	 */
+	private final static class Compiled {
+
+		private final Map<String,Set<String>>  parentMap = new HashMap<>();
+		private final Map<String,Set<String>>  childMap  = new HashMap<>();
+		private final Map<String,List<String>> smartsMap;
+		private final String                   rootId;
+		private final OntologyGraph            graph;
+		private final LeafSelector             leafSelector;
+
+		private Compiled( String _obo ) throws IOException {
+			final OntologyData ontData = OntologyLoader.readObo( _obo, ChemLib.CHEMLIB_CDK, true );
+			final ClassHierarchy hierarchy = ClassHierarchy.build( ontData.getOcidParentMap(), ontData.getOcidChildMap(), ontData.getOcidNameMap() );
+			if ( hierarchy.isChildMapDerived() ) ontData.getOcidChildMap().putAll( hierarchy.childMap() );
+			for ( Map.Entry<String,Set<String>> entry : ontData.getOcidParentMap().entrySet() ) parentMap.put( entry.getKey(), new HashSet<>( entry.getValue() ) );
+			for ( Map.Entry<String,Set<String>> entry : ontData.getOcidChildMap().entrySet() ) childMap.put( entry.getKey(), new HashSet<>( entry.getValue() ) );
+			smartsMap = ontData.getOcidSmartsMap();
+			rootId    = hierarchy.root();
+
+			final ClosureIndex closureIndex = hierarchy.closureIndex( 1 );
+			final Map<String,Set<String>> reducedParentMap = OntologyLoader.reducedParentMap( ontData );
+			assertFalse( reducedParentMap.equals( parentMap ) );
+			graph        = OntologyGraph.compile( rootId, reducedParentMap, ontData.getOcidChildMap(), ontData.getOcidExpressionMap() );
+			leafSelector = LeafSelector.compile( closureIndex, graph, ontData, Collections.<String>emptySet() );
+		}
+
+		private boolean hasSmarts( String _ocid ) {
+			return !smartsMap.getOrDefault( _ocid, Collections.<String>emptyList() ).isEmpty();
+		}
+
+		/**
+		 * @return  valid classes and leaves of the hierarchy walk and leaf selection
+		 */
+		private LeafSelector.Selection walk( Predicate<String> _passes ) {
+			final AssignmentUtils.TraversalState state = new AssignmentUtils.TraversalState( graph.size(), 0, leafSelector );
+			state.clear();
+			AssignmentUtils.walk( graph, state, ~0L, classIdx -> _passes.test( graph.ocidString( classIdx ) ) );
+			return AssignmentUtils.select( leafSelector, state );
+		}
+
+		/**
+		 * Original assignment: breadth first from the root over has_a relations, a class is
+		 * decided once all its is_a parents are assigned. Valid are assigned classes with
+		 * SMARTS and parents whose ancestors are all assigned, leaves are valid classes
+		 * without a valid offspring.
+		 *
+		 * @return  valid classes and leaves
+		 */
+		private Set<String>[] originalWalk( Predicate<String> _passes ) {
+			final Set<String> assigned = new HashSet<>();
+			Set<String> classIds = Collections.singleton( rootId );
+			while ( !classIds.isEmpty() ) {
+				final Set<String> next = new HashSet<>();
+				for ( String classId : classIds ) {
+					if ( assigned.contains( classId ) ) continue;
+					if ( !assigned.containsAll( parentMap.getOrDefault( classId, Collections.<String>emptySet() ) ) ) continue;
+					if ( hasSmarts( classId ) ? _passes.test( classId ) : !childMap.isEmpty() ) assigned.add( classId );
+					next.addAll( childMap.getOrDefault( classId, Collections.<String>emptySet() ) );
+				}
+				classIds = next;
+			}
+
+			final Set<String> valid = new HashSet<>();
+			for ( String classId : assigned ) {
+				if ( parentMap.getOrDefault( classId, Collections.<String>emptySet() ).isEmpty() || !hasSmarts( classId ) ) continue;
+				if ( assigned.containsAll( closure( classId, parentMap ) ) ) valid.add( classId );
+			}
+			final Set<String> leaves = new HashSet<>();
+			for ( String classId : valid ) {
+				if ( Collections.disjoint( closure( classId, childMap ), valid ) ) leaves.add( classId );
+			}
+			@SuppressWarnings( "unchecked" )
+			final Set<String>[] selection = new Set[] { valid, leaves };
+			return selection;
+		}
+	}
+
+	private static Set<String> closure( String _ocid, Map<String,Set<String>> _relation ) {
+		final Set<String>   closure = new HashSet<>();
+		final Deque<String> queue   = new ArrayDeque<>( Collections.singleton( _ocid ) );
+		while ( !queue.isEmpty() ) {
+			for ( String related : _relation.getOrDefault( queue.poll(), Collections.<String>emptySet() ) ) {
+				if ( closure.add( related ) ) queue.add( related );
+			}
+		}
+		return closure;
+	}
+
+	private static Set<String> set( String... _ocids ) {
+		return new HashSet<>( Arrays.asList( _ocids ) );
+	}
+
+	/**
+	 * @return  <code>true</code> for about <code>_percent</code> of the classes, differently for every seed
+	 */
+	private static Predicate<String> passing( final int _seed, final int _percent ) {
+		return ocid -> {
+			int hash = ( ocid.hashCode() * 31 + _seed ) * 0x9E3779B1;
+			hash ^= hash >>> 15;
+			return Math.floorMod( hash, 100 ) < _percent;
+		};
+	}
+
+	/**
+	 * Compares both walks for all classes passing, none passing and pseudo random subsets.
+	 */
+	private static void assertSameAsOriginal( Compiled _compiled ) {
+		for ( int seed = 0; seed < 500; seed++ ) {
+			final Predicate<String> passes = seed == 0 ? ocid -> true : seed == 1 ? ocid -> false : passing( seed, 30 + seed % 70 );
+			final LeafSelector.Selection selection = _compiled.walk( passes );
+			final Set<String>[]          original  = _compiled.originalWalk( passes );
+			assertEquals( "classes, seed " + seed, original[0], selection.getClasses() );
+			assertEquals( "leaves, seed " + seed,  original[1], selection.getLeaves() );
+		}
+	}
+
+	/**
+	 * @return  copy of the test ontology without has_a relations
+	 */
+	private static String withoutHasA() throws IOException {
+		final List<String> lines = Files.readAllLines( new File( OBO ).toPath(), StandardCharsets.UTF_8 ).stream()
+				.filter( line -> !line.startsWith( "has_a:" ) ).collect( Collectors.toList() );
+		final File obo = File.createTempFile( "hierarchy_walk", ".obo" );
+		obo.deleteOnExit();
+		Files.write( obo.toPath(), lines, StandardCharsets.UTF_8 );
+		return obo.getPath();
+	}
+
+	public void testAllPassing() throws IOException {
+		final LeafSelector.Selection selection = new Compiled( OBO ).walk( ocid -> true );
+		// amines have a dangling parent, methylamines are not reached over has_a relations
+		assertEquals( set( CARBON_CHAINS, OXYGEN, ALCOHOLS, PROPANES, BUTANOLS, CHLORIDES, SULFIDES, FLUORINATED ),
+					  selection.getClasses() );
+		assertEquals( set( BUTANOLS, CHLORIDES, SULFIDES, FLUORINATED ), selection.getLeaves() );
+	}
+
+	public void testFailedParentOfSeveral() throws IOException {
+		// butanols and sulfides have oxygen compounds as an ancestor, propanes do not
+		final LeafSelector.Selection selection = new Compiled( OBO ).walk( ocid -> !OXYGEN.equals( ocid ) );
+		assertEquals( set( CARBON_CHAINS, PROPANES, CHLORIDES ), selection.getClasses() );
+		assertEquals( set( PROPANES, CHLORIDES ), selection.getLeaves() );
+	}
+
+	public void testNeverReached() throws IOException {
+		final Set<String> classes = new Compiled( OBO ).walk( ocid -> true ).getClasses();
+		for ( String ocid : Arrays.asList( AMINES, PROPYLAMINES, METHYLAMINES ) ) assertFalse( ocid, classes.contains( ocid ) );
+	}
+
+	public void testSameAsOriginalWithHasA() throws IOException {
+		assertSameAsOriginal( new Compiled( OBO ) );
+	}
+
+	public void testSameAsOriginalWithDerivedChildren() throws IOException {
+		final Compiled compiled = new Compiled( withoutHasA() );
+		assertTrue( compiled.graph.isWalked( METHYLAMINES ) );
+		assertFalse( compiled.graph.isWalked( AMINES ) );
+		assertSameAsOriginal( compiled );
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import com.actelion.research.chem.StereoMolecule;
+
+import junit.framework.TestCase;
+
+/**
+ * Fragment search of the <code>ocl</code> engine with an idcode of the backbones ontology.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public class OclFragmentsTest extends TestCase {
+
+	/** 4,7-dihydro-1H-indazoles, class 151000030613 of oc_chem_classes_backbones_ext_2024-03-25.obo */
+	private final static String DIHYDROINDAZOLE = OclFragments.IDCODE_PREFIX + "diU@@@aJUUpnFZje@@";
+
+	private static boolean isFound( String _query, String _smiles ) throws Exception {
+		final StereoMolecule fragment = OclFragments.parseFragment( _query );
+		final StereoMolecule molecule = OclFragments.parseMolecule( _smiles );
+		return OclFragments.isFragmentInMolecule( fragment, OclFragments.index( fragment ), molecule, OclFragments.index( molecule ) );
+	}
+
+	public void testIsIdcode() {
+		assertTrue( OclFragments.isIdcode( DIHYDROINDAZOLE ) );
+		assertFalse( OclFragments.isIdcode( "[#6]-[#6]" ) );
+	}
+
+	public void testFragmentOfClassSmiles() throws Exception {
+		assertTrue( isFound( DIHYDROINDAZOLE, "C(C=CC1)C2=C1NN=C2" ) );
+	}
+
+	public void testFragmentInSubstitutedMolecule() throws Exception {
+		assertTrue( isFound( DIHYDROINDAZOLE, "OCC1C=CCC2=C1NN=C2C(=O)O" ) );
+	}
+
+	public void testFragmentNotInMolecule() throws Exception {
+		// aromatic indazole and a tetrahydroindazole lack the ring double bond
+		assertFalse( isFound( DIHYDROINDAZOLE, "c1ccc2[nH]ncc2c1" ) );
+		assertFalse( isFound( DIHYDROINDAZOLE, "C1CCC2=C(C1)NN=C2" ) );
+		assertFalse( isFound( DIHYDROINDAZOLE, "CCO" ) );
+	}
+}
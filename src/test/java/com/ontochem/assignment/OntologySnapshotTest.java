@@ -0,0 +1,248 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+import com.ontochem.assignment.OntologyLoader.OntologyData;
+
+import junit.framework.TestCase;
+
+/**
+ * Ontology compiled to a snapshot and opened again compared to the ontology read from the
+ * OBO: class maps, root, SMARTS table, class expressions, closures and the compiled graph.
+ * A snapshot of a modified OBO or of another module is not used.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public class OntologySnapshotTest extends TestCase {
+
+	private final static String OBO = "src/test/resources/snapshot.obo";
+
+	/**
+	 * Ontology read from the OBO as by the assignment without a snapshot.
+	 */
+	private final static class Compiled {
+
+		private final OntologyData  ontData;
+		private final String        rootId;
+		private final ClosureIndex  closureIndex;
+		private final OntologyGraph graph;
+
+		private Compiled( String _obo, String _module ) throws IOException {
+			ontData = OntologyLoader.readObo( _obo, _module, true );
+			final ClassHierarchy hierarchy = ClassHierarchy.build( ontData.getOcidParentMap(), ontData.getOcidChildMap(), ontData.getOcidNameMap() );
+			if ( hierarchy.isChildMapDerived() ) ontData.getOcidChildMap().putAll( hierarchy.childMap() );
+			rootId       = hierarchy.root();
+			closureIndex = hierarchy.closureIndex( 1 );
+			graph        = OntologyGraph.compile( rootId, OntologyLoader.reducedParentMap( ontData ), ontData.getOcidChildMap(), ontData.getOcidExpressionMap() );
+		}
+	}
+
+	private static String tempFile( String _suffix ) throws IOException {
+		final File file = File.createTempFile( "ontology_snapshot", _suffix );
+		file.deleteOnExit();
+		return file.getPath();
+	}
+
+	/**
+	 * @return  name of a snapshot compiled from provided OBO
+	 */
+	private static String compile( String _obo, String _module ) throws IOException {
+		final String snapshot = tempFile( ".snapshot" );
+		OntologySnapshot.compile( _obo, snapshot, _module, true, 1 );
+		return snapshot;
+	}
+
+	private static OntologySnapshot open( String _snapshot, String _obo, String _module ) throws IOException {
+		return OntologyLoader.openSnapshot( _snapshot, OntologyLoader.checksum( _obo ), _module, true );
+	}
+
+	/**
+	 * @return  expression with its SMARTS ids, <code>null</code> for none
+	 */
+	private static String render( ClassExpression _expression ) {
+		if ( _expression == null ) return null;
+		if ( _expression instanceof ClassExpression.Match ) {
+			final ClassExpression.Match match = (ClassExpression.Match) _expression;
+			return match.getQueryId() + ":" + match.getSmarts();
+		}
+		if ( _expression instanceof ClassExpression.Count ) {
+			final ClassExpression.Count count = (ClassExpression.Count) _expression;
+			return count.getThreshold() + count.getMode().name() + "(" + count.getQueryId() + ":" + count.getSmarts() + ")";
+		}
+		if ( _expression instanceof ClassExpression.Not ) {
+			return "NOT(" + render( ( (ClassExpression.Not) _expression ).getOperand() ) + ")";
+		}
+		if ( _expression instanceof ClassExpression.StereoAnd ) {
+			final ClassExpression.StereoAnd stereoAnd = (ClassExpression.StereoAnd) _expression;
+			return "STEREO(" + render( stereoAnd.getStereo() ) + "," + render( stereoAnd.getPlain() ) + ")";
+		}
+		final List<String> operands = new ArrayList<>();
+		final boolean isAnd = _expression instanceof ClassExpression.And;
+		for ( ClassExpression operand : isAnd ? ( (ClassExpression.And) _expression ).getOperands()
+											  : ( (ClassExpression.Or) _expression ).getOperands() ) {
+			operands.add( render( operand ) );
+		}
+		return ( isAnd ? "AND" : "OR" ) + operands;
+	}
+
+	private static Map<String,String> rendered( Map<String,ClassExpression> _expressionMap ) {
+		final Map<String,String> rendered = new HashMap<>();
+		for ( Map.Entry<String,ClassExpression> entry : _expressionMap.entrySet() ) rendered.put( entry.getKey(), render( entry.getValue() ) );
+		return rendered;
+	}
+
+	/**
+	 * @return  ids of the classes in provided closure
+	 */
+	private static List<String> ids( ClosureIndex _closureIndex, CompressedBitmap _closure ) {
+		final List<String> ids = new ArrayList<>();
+		_closure.forEach( idx -> ids.add( _closureIndex.id( idx ) ) );
+		Collections.sort( ids );
+		return ids;
+	}
+
+	private static List<Integer> row( int _start, int _end, IntUnaryOperator _target ) {
+		final List<Integer> row = new ArrayList<>();
+		for ( int edge = _start; edge < _end; edge++ ) row.add( _target.applyAsInt( edge ) );
+		return row;
+	}
+
+	private static List<Integer> indices( CompressedBitmap _bitmap ) {
+		final List<Integer> indices = new ArrayList<>();
+		_bitmap.forEach( indices::add );
+		return indices;
+	}
+
+	private static void assertSameMaps( String _module ) throws IOException {
+		final Compiled         compiled = new Compiled( OBO, _module );
+		final OntologySnapshot snapshot = open( compile( OBO, _module ), OBO, _module );
+		assertNotNull( snapshot );
+		final OntologyData expected = compiled.ontData;
+		final OntologyData ontData  = snapshot.ontologyData();
+
+		assertEquals( compiled.rootId, snapshot.rootId() );
+		assertEquals( expected.getOcidParentMap(), ontData.getOcidParentMap() );
+		assertEquals( expected.getOcidChildMap(), ontData.getOcidChildMap() );
+		assertEquals( expected.getOcidNameMap(), ontData.getOcidNameMap() );
+		assertEquals( expected.getOcidSmartsMap(), ontData.getOcidSmartsMap() );
+		assertEquals( expected.getOcidBackboneSmilesMap(), ontData.getOcidBackboneSmilesMap() );
+		assertEquals( expected.getOcidIdcodeMap(), ontData.getOcidIdcodeMap() );
+		assertEquals( ChemLib.CHEMLIB_OCL.equals( _module ), ontData.getOcidIdcodeMap().containsKey( "200000000008" ) );
+
+		final SmartsTable expectedTable = expected.getSmartsTable();
+		final SmartsTable smartsTable   = ontData.getSmartsTable();
+		assertEquals( expectedTable.size(), smartsTable.size() );
+		assertEquals( expectedTable.occurrences(), smartsTable.occurrences() );
+		for ( int queryId = 0; queryId < smartsTable.size(); queryId++ ) {
+			assertEquals( expectedTable.smarts( queryId ), smartsTable.smarts( queryId ) );
+			assertEquals( queryId, smartsTable.idOf( smartsTable.smarts( queryId ) ) );
+		}
+		assertEquals( rendered( expected.getOcidExpressionMap() ), rendered( ontData.getOcidExpressionMap() ) );
+	}
+
+	public void testSameMapsCdk() throws IOException {
+		assertSameMaps( ChemLib.CHEMLIB_CDK );
+	}
+
+	public void testSameMapsOcl() throws IOException {
+		// with the idcode fragment in the expression of the dihydroindazoles
+		assertSameMaps( ChemLib.CHEMLIB_OCL );
+	}
+
+	public void testAllExpressionKinds() throws IOException {
+		final Map<String,String> rendered = rendered( open( compile( OBO, ChemLib.CHEMLIB_CDK ), OBO, ChemLib.CHEMLIB_CDK )
+				.ontologyData().getOcidExpressionMap() );
+		assertTrue( rendered.get( "200000000003" ).startsWith( "OR[" ) );
+		assertTrue( rendered.get( "200000000004" ).startsWith( "2EXACT(" ) );
+		assertTrue( rendered.get( "200000000005" ).startsWith( "AND[AND[" ) );
+		assertTrue( rendered.get( "200000000007" ).contains( "STEREO(" ) );
+		assertTrue( rendered.get( "200000000007" ).contains( "NOT(2MORE(" ) );
+		assertFalse( rendered.containsKey( "200000000006" ) );
+	}
+
+	public void testSameClosures() throws IOException {
+		final Compiled     compiled     = new Compiled( OBO, ChemLib.CHEMLIB_CDK );
+		final ClosureIndex closureIndex = open( compile( OBO, ChemLib.CHEMLIB_CDK ), OBO, ChemLib.CHEMLIB_CDK ).closureIndex();
+		final ClosureIndex expected     = compiled.closureIndex;
+		assertEquals( expected.size(), closureIndex.size() );
+		for ( int idx = 0; idx < closureIndex.size(); idx++ ) {
+			final String id          = closureIndex.id( idx );
+			final int    expectedIdx = expected.indexOf( id );
+			assertTrue( id, expectedIdx >= 0 );
+			assertEquals( id, ids( expected, expected.ancestorsOf( expectedIdx ) ), ids( closureIndex, closureIndex.ancestorsOf( idx ) ) );
+			assertEquals( id, ids( expected, expected.offspringsOf( expectedIdx ) ), ids( closureIndex, closureIndex.offspringsOf( idx ) ) );
+		}
+	}
+
+	public void testSameGraph() throws IOException {
+		final Compiled         compiled = new Compiled( OBO, ChemLib.CHEMLIB_CDK );
+		final OntologySnapshot snapshot = open( compile( OBO, ChemLib.CHEMLIB_CDK ), OBO, ChemLib.CHEMLIB_CDK );
+		final OntologyData     ontData  = snapshot.ontologyData();
+		final OntologyGraph    expected = compiled.graph;
+		final OntologyGraph    graph    = snapshot.ontologyGraph( ontData.getOcidExpressionMap() );
+
+		assertEquals( expected.size(), graph.size() );
+		assertEquals( expected.root(), graph.root() );
+		for ( int idx = 0; idx < graph.size(); idx++ ) {
+			final String id = graph.ocidString( idx );
+			assertEquals( expected.ocid( idx ), graph.ocid( idx ) );
+			assertEquals( idx, graph.indexOf( graph.ocid( idx ) ) );
+			assertEquals( id, row( expected.parentStart( idx ), expected.parentEnd( idx ), expected::parent ),
+						  row( graph.parentStart( idx ), graph.parentEnd( idx ), graph::parent ) );
+			assertEquals( id, row( expected.childStart( idx ), expected.childEnd( idx ), expected::child ),
+						  row( graph.childStart( idx ), graph.childEnd( idx ), graph::child ) );
+			assertEquals( id, row( expected.evalParentStart( idx ), expected.evalParentEnd( idx ), expected::evalParent ),
+						  row( graph.evalParentStart( idx ), graph.evalParentEnd( idx ), graph::evalParent ) );
+			assertEquals( id, row( expected.evalChildStart( idx ), expected.evalChildEnd( idx ), expected::evalChild ),
+						  row( graph.evalChildStart( idx ), graph.evalChildEnd( idx ), graph::evalChild ) );
+			assertEquals( id, expected.isWalked( idx ), graph.isWalked( idx ) );
+			assertEquals( id, expected.requiredFeatures( idx ), graph.requiredFeatures( idx ) );
+			assertEquals( id, indices( expected.descendants( idx ) ), indices( graph.descendants( idx ) ) );
+			assertEquals( id, render( expected.expression( idx ) ), render( graph.expression( idx ) ) );
+		}
+		// the redundant is_a of the diols is not in the graph
+		final int diols = graph.indexOf( 200000000004L );
+		assertEquals( 1, graph.parentEnd( diols ) - graph.parentStart( diols ) );
+		assertEquals( 2, ontData.getOcidParentMap().get( "200000000004" ).size() );
+	}
+
+	public void testModifiedOboRejected() throws IOException {
+		final String obo = tempFile( ".obo" );
+		Files.copy( new File( OBO ).toPath(), new File( obo ).toPath(), StandardCopyOption.REPLACE_EXISTING );
+		final String snapshot = compile( obo, ChemLib.CHEMLIB_CDK );
+		assertNotNull( open( snapshot, obo, ChemLib.CHEMLIB_CDK ) );
+
+		Files.write( new File( obo ).toPath(), "\n[Term]\nid: 200000000009\nname: ethers\nis_a: 200000000002 ! oxygen compounds\n".getBytes( StandardCharsets.UTF_8 ),
+					 StandardOpenOption.APPEND );
+		assertNull( open( snapshot, obo, ChemLib.CHEMLIB_CDK ) );
+	}
+
+	public void testOtherModuleRejected() throws IOException {
+		final String snapshot = compile( OBO, ChemLib.CHEMLIB_CDK );
+		assertNull( open( snapshot, OBO, ChemLib.CHEMLIB_AMBIT ) );
+		assertNull( OntologyLoader.openSnapshot( snapshot, OntologyLoader.checksum( OBO ), ChemLib.CHEMLIB_CDK, false ) );
+	}
+}
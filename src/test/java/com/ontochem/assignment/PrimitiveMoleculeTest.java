@@ -0,0 +1,111 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import org.openscience.cdk.exception.InvalidSmilesException;
+import org.openscience.cdk.graph.Cycles;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import junit.framework.TestCase;
+
+/**
+ * Ring atoms and bonds of {@link PrimitiveMolecule}, found as the bonds which are not
+ * bridges, compared to the ring perception of the CDK.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public class PrimitiveMoleculeTest extends TestCase {
+
+	private static IAtomContainer molecule( String _smiles ) throws InvalidSmilesException {
+		return new SmilesParser( SilentChemObjectBuilder.getInstance() ).parseSmiles( _smiles );
+	}
+
+	private static int count( boolean[] _flags ) {
+		int n = 0;
+		for ( boolean flag : _flags ) if ( flag ) n++;
+		return n;
+	}
+
+	/**
+	 * Asserts ring bonds and atoms equal to the CDK ring flags and returns the molecule.
+	 */
+	private static PrimitiveMolecule assertSameAsCdk( String _smiles ) throws InvalidSmilesException {
+		final IAtomContainer mol = molecule( _smiles );
+		final PrimitiveMolecule primitive = PrimitiveMolecule.of( mol );
+		Cycles.markRingAtomsAndBonds( mol );
+		for ( int bondIdx = 0; bondIdx < mol.getBondCount(); bondIdx++ ) {
+			assertEquals( _smiles + " bond " + bondIdx, mol.getBond( bondIdx ).isInRing(), primitive.ringBonds[ bondIdx ] );
+		}
+		for ( int atomIdx = 0; atomIdx < mol.getAtomCount(); atomIdx++ ) {
+			assertEquals( _smiles + " atom " + atomIdx, mol.getAtom( atomIdx ).isInRing(), primitive.ringAtoms[ atomIdx ] );
+		}
+		return primitive;
+	}
+
+	public void testChain() throws InvalidSmilesException {
+		final PrimitiveMolecule hexane = assertSameAsCdk( "CCCCCC" );
+		assertEquals( 0, count( hexane.ringBonds ) );
+		assertEquals( 0, count( hexane.ringAtoms ) );
+		assertSameAsCdk( "CC(C)(C)C(=O)OC" );
+		assertSameAsCdk( "C" );
+	}
+
+	public void testSingleRing() throws InvalidSmilesException {
+		final PrimitiveMolecule toluene = assertSameAsCdk( "Cc1ccccc1" );
+		assertEquals( 6, count( toluene.ringBonds ) );
+		assertEquals( 6, count( toluene.ringAtoms ) );
+		assertFalse( toluene.ringBonds[ 0 ] );
+	}
+
+	public void testFused() throws InvalidSmilesException {
+		final PrimitiveMolecule naphthalene = assertSameAsCdk( "c1ccc2ccccc2c1" );
+		assertEquals( 11, count( naphthalene.ringBonds ) );
+		final PrimitiveMolecule steroid = assertSameAsCdk( "CC12CCC3C(CCC4CC(O)CCC34C)C1CCC2O" );
+		assertEquals( 17, count( steroid.ringAtoms ) );
+		assertEquals( 20, count( steroid.ringBonds ) );
+	}
+
+	public void testSpiro() throws InvalidSmilesException {
+		final PrimitiveMolecule spiro = assertSameAsCdk( "C1CCC2(C1)CCC2" );
+		assertEquals( 9, count( spiro.ringBonds ) );
+		assertEquals( 8, count( spiro.ringAtoms ) );
+		assertSameAsCdk( "OC1CCC2(CC1)OCCO2" );
+	}
+
+	public void testBridged() throws InvalidSmilesException {
+		final PrimitiveMolecule norbornane = assertSameAsCdk( "C1CC2CCC1C2" );
+		assertEquals( 8, count( norbornane.ringBonds ) );
+		assertSameAsCdk( "C1CC2CC1C1CCCC21" );
+	}
+
+	public void testRingsLinkedByChains() throws InvalidSmilesException {
+		// the bonds between the rings are bridges of the graph
+		final PrimitiveMolecule linked = assertSameAsCdk( "C1CC1CCc1ccccc1" );
+		assertEquals( 9, count( linked.ringBonds ) );
+		assertEquals( 9, count( linked.ringAtoms ) );
+		assertSameAsCdk( "c1ccccc1-c1ccccc1" );
+		assertSameAsCdk( "C1CC1.CC.c1ccccc1" );
+	}
+
+	public void testRingCounts() throws InvalidSmilesException {
+		final PrimitiveMolecule naphthalene = PrimitiveMolecule.of( molecule( "c1ccc2ccccc2c1" ) );
+		int nFusion = 0;
+		for ( int atomIdx = 0; atomIdx < naphthalene.atomCount(); atomIdx++ ) {
+			if ( naphthalene.ringCounts[ atomIdx ] == 2 ) nFusion++;
+			else assertEquals( 1, naphthalene.ringCounts[ atomIdx ] );
+		}
+		assertEquals( 2, nFusion );
+	}
+}
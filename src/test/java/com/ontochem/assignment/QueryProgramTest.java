@@ -0,0 +1,172 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.openscience.cdk.AtomRef;
+import org.openscience.cdk.BondRef;
+import org.openscience.cdk.exception.InvalidSmilesException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.isomorphism.matchers.QueryAtom;
+import org.openscience.cdk.isomorphism.matchers.QueryBond;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smarts.SmartsPattern;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import junit.framework.TestCase;
+
+/**
+ * Atom and bond programs of {@link QueryProgram} compared to the CDK expressions they are
+ * compiled from, on molecules prepared for the CDK SMARTS search.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public class QueryProgramTest extends TestCase {
+
+	private final static List<String> SMILES = Arrays.asList(
+			"CC(=O)O",
+			"C[NH3+].[O-]C=O",
+			"c1ccc2ccccc2c1",
+			"C1CCC2(C1)CCC2",
+			"OC1CC2CCC1C2",
+			"Cc1ccncc1CCN(C)C",
+			"C=CC#N",
+			"O=S(=O)(O)c1ccc(Cl)cc1" );
+
+	private static IAtomContainer molecule( String _smiles ) throws InvalidSmilesException {
+		final IAtomContainer mol = new SmilesParser( SilentChemObjectBuilder.getInstance() ).parseSmiles( _smiles );
+		SmartsPattern.prepare( mol );
+		return mol;
+	}
+
+	private static QueryProgram compile( String _smarts ) {
+		final IAtomContainer query = FeatureSignature.parseQuery( _smarts );
+		assertNotNull( _smarts, query );
+		return QueryProgram.compile( query );
+	}
+
+	/**
+	 * Asserts that every atom and bond program of the query agrees with its CDK expression
+	 * for every atom and bond of the test molecules.
+	 */
+	private static void assertSameAsCdk( String _smarts ) throws InvalidSmilesException {
+		final IAtomContainer query   = FeatureSignature.parseQuery( _smarts );
+		final QueryProgram   program = QueryProgram.compile( query );
+		assertNotNull( _smarts, program );
+		for ( String smiles : SMILES ) {
+			final IAtomContainer    mol       = molecule( smiles );
+			final PrimitiveMolecule primitive = PrimitiveMolecule.of( mol );
+			for ( int queryAtom = 0; queryAtom < query.getAtomCount(); queryAtom++ ) {
+				final QueryAtom expr = (QueryAtom) AtomRef.deref( query.getAtom( queryAtom ) );
+				for ( int atomIdx = 0; atomIdx < mol.getAtomCount(); atomIdx++ ) {
+					assertEquals( _smarts + " atom " + queryAtom + ", " + smiles + " atom " + atomIdx,
+								  expr.getExpression().matches( mol.getAtom( atomIdx ) ),
+								  program.matchesAtom( queryAtom, primitive, atomIdx ) );
+				}
+			}
+			for ( int queryBond = 0; queryBond < query.getBondCount(); queryBond++ ) {
+				final QueryBond expr = (QueryBond) BondRef.deref( query.getBond( queryBond ) );
+				for ( int bondIdx = 0; bondIdx < mol.getBondCount(); bondIdx++ ) {
+					assertEquals( _smarts + " bond " + queryBond + ", " + smiles + " bond " + bondIdx,
+								  expr.getExpression().matches( mol.getBond( bondIdx ) ),
+								  program.matchesBond( queryBond, primitive, bondIdx ) );
+				}
+			}
+		}
+	}
+
+	public void testAndOrNot() throws InvalidSmilesException {
+		assertSameAsCdk( "[C,N;!H0]" );
+		assertSameAsCdk( "[!#6&!#7,#8]" );
+		assertSameAsCdk( "[#6;!a]" );
+		assertSameAsCdk( "[!C;!c;!N;!n]" );
+		assertSameAsCdk( "[N,O,S;+0,-1;!H2]" );
+		assertSameAsCdk( "[!!C]" );
+	}
+
+	public void testStackEncoding() throws InvalidSmilesException {
+		// ( a or b ) and ( c or d ), and nested left and right
+		assertSameAsCdk( "[C,c;H3,H1]" );
+		assertSameAsCdk( "[#6,#7,#8,#16,#17;R,H1,H2,H3]" );
+		assertSameAsCdk( "[#6&R,#8&H1,#17]" );
+	}
+
+	public void testHydrogenCount() throws InvalidSmilesException {
+		assertSameAsCdk( "[CH3]" );
+		assertSameAsCdk( "[OH1]" );
+		assertSameAsCdk( "[NH3+]" );
+		assertSameAsCdk( "[#6H0]" );
+	}
+
+	public void testDegreeAndValence() throws InvalidSmilesException {
+		assertSameAsCdk( "[D1]" );
+		assertSameAsCdk( "[D3]" );
+		assertSameAsCdk( "[X4]" );
+		assertSameAsCdk( "[v6]" );
+		assertSameAsCdk( "[C;X3;v4]" );
+	}
+
+	public void testRing() throws InvalidSmilesException {
+		assertSameAsCdk( "[R]" );
+		assertSameAsCdk( "[R0]" );
+		assertSameAsCdk( "[#6;!R]" );
+		assertSameAsCdk( "C@C" );
+		assertSameAsCdk( "C!@C" );
+		assertSameAsCdk( "[#6]-;@[#6]" );
+	}
+
+	public void testRingCount() throws InvalidSmilesException {
+		assertSameAsCdk( "[R1]" );
+		assertSameAsCdk( "[R2]" );
+		assertSameAsCdk( "[c;R2]" );
+	}
+
+	public void testBonds() throws InvalidSmilesException {
+		assertSameAsCdk( "C=O" );
+		assertSameAsCdk( "C#N" );
+		assertSameAsCdk( "c:c" );
+		assertSameAsCdk( "[#6]~[#6]" );
+		assertSameAsCdk( "[#6]-,=[#6]" );
+		assertSameAsCdk( "[#6]!-[#6]" );
+	}
+
+	public void testUnsupported() {
+		// recursive SMARTS, smallest ring size and hydrogen atoms are not compiled
+		assertNull( compile( "[$(CO)]" ) );
+		assertNull( compile( "[r5]" ) );
+		assertNull( compile( "[#1]" ) );
+		assertNotNull( compile( "[#6]" ) );
+	}
+
+	public void testExpectedAtoms() throws InvalidSmilesException {
+		final PrimitiveMolecule acid = PrimitiveMolecule.of( molecule( "CC(=O)O" ) );
+		final QueryProgram      ch3  = compile( "[CH3]" );
+		final QueryProgram      d3   = compile( "[D3]" );
+		final QueryProgram      oh   = compile( "[O;H1,-1]" );
+		for ( int atomIdx = 0; atomIdx < acid.atomCount(); atomIdx++ ) {
+			assertEquals( atomIdx == 0, ch3.matchesAtom( 0, acid, atomIdx ) );
+			assertEquals( atomIdx == 1, d3.matchesAtom( 0, acid, atomIdx ) );
+			assertEquals( atomIdx == 3, oh.matchesAtom( 0, acid, atomIdx ) );
+		}
+		// decalin: the two bridgehead atoms are in two rings
+		final PrimitiveMolecule decalin = PrimitiveMolecule.of( molecule( "C1CCC2CCCCC2C1" ) );
+		final QueryProgram      r2      = compile( "[R2]" );
+		int nR2 = 0;
+		for ( int atomIdx = 0; atomIdx < decalin.atomCount(); atomIdx++ ) {
+			if ( r2.matchesAtom( 0, decalin, atomIdx ) ) nR2++;
+		}
+		assertEquals( 2, nR2 );
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright OntoChem GmbH.
+ */
+package com.ontochem.assignment;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.openscience.cdk.exception.InvalidSmilesException;
+import org.openscience.cdk.interfaces.IAtomContainer;
+import org.openscience.cdk.silent.SilentChemObjectBuilder;
+import org.openscience.cdk.smarts.SmartsPattern;
+import org.openscience.cdk.smiles.SmilesParser;
+
+import junit.framework.TestCase;
+
+/**
+ * Substructure search of {@link Vf2Matcher} compared to the CDK SMARTS search on molecules
+ * prepared for it, for chain, branched, ring and fused ring queries.
+ *
+ * <h3>Changelog</h3>
+ * <ul>
+ *   <li>2026-10-16
+ *     <ul>
+ *       <li>initial version</li>
+ *     </ul>
+ *   </li>
+ * </ul>
+ *
+ * @author agent@local
+ */
+public class Vf2MatcherTest extends TestCase {
+
+	private final static List<String> SMILES = Arrays.asList(
+			"CC(=O)O",
+			"OCC(O)CO",
+			"CC(C)(C)C(=O)OC",
+			"c1ccc2ccccc2c1",
+			"C1CCC2(C1)CCC2",
+			"C1CC2CCC1C2",
+			"CC12CCC3C(CCC4CC(O)CCC34C)C1CCC2O",
+			"Cc1ccncc1CCN(C)C",
+			"C1CC1CCc1ccccc1",
+			"O=S(=O)(O)c1ccc(Cl)cc1",
+			"CCCCCCCC",
+			"C[NH3+].[O-]C=O" );
+
+	private static IAtomContainer molecule( String _smiles ) throws InvalidSmilesException {
+		final IAtomContainer mol = new SmilesParser( SilentChemObjectBuilder.getInstance() ).parseSmiles( _smiles );
+		SmartsPattern.prepare( mol );
+		return mol;
+	}
+
+	/**
+	 * Asserts that the query compiles and finds the same molecules as the CDK.
+	 */
+	private static void assertSameAsCdk( String _smarts ) throws InvalidSmilesException {
+		final Vf2Matcher   matcher = Vf2Matcher.compile( _smarts, Integer.MAX_VALUE );
+		final SmartsPattern pattern = SmartsPattern.create( _smarts );
+		assertNotNull( _smarts, matcher );
+		for ( String smiles : SMILES ) {
+			final IAtomContainer mol = molecule( smiles );
+			assertEquals( _smarts + " in " + smiles, pattern.matches( mol ), matcher.matches( PrimitiveMolecule.of( mol ) ) );
+		}
+	}
+
+	public void testChains() throws InvalidSmilesException {
+		assertSameAsCdk( "[#6]-[#8]" );
+		assertSameAsCdk( "[#6]-[#6](-[#8H1])=O" );
+		assertSameAsCdk( "[#6]-[#6]-[#6]-[#6]-[#6]-[#6]" );
+		assertSameAsCdk( "[#8]-[#6]-[#6](-[#8])-[#6]-[#8]" );
+		assertSameAsCdk( "[#7]~[#6]~[#6]~[#6]" );
+	}
+
+	public void testBranches() throws InvalidSmilesException {
+		// a quaternary carbon needs a target atom of at least four unmapped neighbors
+		assertSameAsCdk( "[#6](-[#6])(-[#6])(-[#6])-[#6]" );
+		assertSameAsCdk( "[#6]-[#6](-[#6])(-[#6])-[#6]=O" );
+		assertSameAsCdk( "[#6;R](-[#6;!R])(-[#6;R])-[#6;R]" );
+	}
+
+	public void testRings() throws InvalidSmilesException {
+		assertSameAsCdk( "[#6]1-[#6]-[#6]-1" );
+		assertSameAsCdk( "[#6]1-[#6]-[#6]-[#6]-[#6]-1" );
+		assertSameAsCdk( "c1ccccc1" );
+		assertSameAsCdk( "c1ccncc1" );
+		assertSameAsCdk( "[#6]1~[#6]~[#6]~[#6]~[#6]~[#6]~1" );
+		assertSameAsCdk( "[#6]1-[#6]-[#6]-[#6]-1" );
+	}
+
+	public void testFusedAndBridgedRings() throws InvalidSmilesException {
+		assertSameAsCdk( "c1ccc2ccccc2c1" );
+		assertSameAsCdk( "[#6]1-[#6]-[#6]2-[#6]-[#6]-[#6]-1-[#6]-2" );
+		assertSameAsCdk( "[#6]12-[#6]-[#6]-[#6]-[#6]-1-[#6]-[#6]-[#6]-[#6]-2" );
+		assertSameAsCdk( "[#6]1-[#6]-[#6]-[#6]2(-[#6]-1)-[#6]-[#6]-[#6]-2" );
+	}
+
+	public void testTerminalLookAhead() throws InvalidSmilesException {
+		// the centre of the query needs three unmapped neighbors, each chain atom of octane
+		// passes the atom and bond tests but has at most two
+		final Vf2Matcher matcher = Vf2Matcher.compile( "[#6](-[#6])(-[#6])-[#6]", Integer.MAX_VALUE );
+		assertFalse( matcher.matches( PrimitiveMolecule.of( molecule( "CCCCCCCC" ) ) ) );
+		assertTrue( matcher.matches( PrimitiveMolecule.of( molecule( "CCC(C)CCCC" ) ) ) );
+		// a ring of four needs a closing bond the chain of four lacks
+		final Vf2Matcher ring = Vf2Matcher.compile( "[#6]1-[#6]-[#6]-[#6]-1", Integer.MAX_VALUE );
+		assertFalse( ring.matches( PrimitiveMolecule.of( molecule( "CCCC" ) ) ) );
+		assertTrue( ring.matches( PrimitiveMolecule.of( molecule( "CC1CCC1" ) ) ) );
+	}
+
+	public void testAtomLimit() {
+		assertNotNull( Vf2Matcher.compile( "[#6]-[#6]-[#8]", 3 ) );
+		assertNull( Vf2Matcher.compile( "[#6]-[#6]-[#8]", 2 ) );
+	}
+
+	public void testUnsupported() {
+		assertNull( Vf2Matcher.compile( "[$([#6]-[#8])]", Integer.MAX_VALUE ) );
+		assertNull( Vf2Matcher.compile( "[#6].[#8]", Integer.MAX_VALUE ) );
+		assertNull( Vf2Matcher.compile( "[C@H](N)C", Integer.MAX_VALUE ) );
+	}
+}